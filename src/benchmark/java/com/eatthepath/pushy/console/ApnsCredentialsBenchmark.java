@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.eatthepath.pushy.console;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApnsCredentialsBenchmark {
+
+    private File certificateFile;
+    private File signingKeyFile;
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    private static final String SIGNING_KEY_FILENAME = "APNsAuthKey_KEYIDKEYID.p8";
+
+    @Setup
+    public void setUp() throws URISyntaxException {
+        certificateFile = new File(ApnsCredentialsBenchmark.class.getResource(CERTIFICATE_FILENAME).toURI());
+        signingKeyFile = new File(ApnsCredentialsBenchmark.class.getResource(SIGNING_KEY_FILENAME).toURI());
+    }
+
+    @Benchmark
+    public ApnsCredentials benchmarkCertificateCredentials() throws Exception {
+        return new ApnsCredentials(certificateFile, CERTIFICATE_PASSWORD);
+    }
+
+    @Benchmark
+    public ApnsCredentials benchmarkSigningKeyCredentials() throws Exception {
+        return new ApnsCredentials(signingKeyFile, "KEYIDKEYID", "TEAMIDTEAM");
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.PushType;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of rendering a push notification response as a row in the results table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationResultFormatterBenchmark {
+
+    private NotificationResultFormatter notificationResultFormatter;
+
+    private PushNotificationResponse<ApnsPushNotification> acceptedResponse;
+    private PushNotificationResponse<ApnsPushNotification> unregisteredResponse;
+
+    @Setup
+    public void setUp() {
+        notificationResultFormatter =
+                new NotificationResultFormatter(ResourceBundle.getBundle("com/eatthepath/pushy/console/pushy-console"));
+
+        final ApnsPushNotification pushNotification = new SimpleApnsPushNotification(
+                "c1d5a1ad7f5b4a0e9e3c8f2b6d4e0a1b2c3d4e5f60718293a4b5c6d7e8f90a1b", "com.example.topic",
+                "{\n    \"aps\": {\n        \"alert\": \"Hello from Pushy Console!\"\n    }\n}",
+                Instant.now(), DeliveryPriority.IMMEDIATE, PushType.ALERT, "collapse-id");
+
+        acceptedResponse = new BenchmarkResponse(pushNotification, true, null, null);
+        unregisteredResponse = new BenchmarkResponse(pushNotification, false, "Unregistered", Instant.now());
+    }
+
+    @Benchmark
+    public NotificationResultRow benchmarkFormatAccepted() {
+        return notificationResultFormatter.format(acceptedResponse);
+    }
+
+    @Benchmark
+    public NotificationResultRow benchmarkFormatUnregistered() {
+        return notificationResultFormatter.format(unregisteredResponse);
+    }
+
+    private static class BenchmarkResponse implements PushNotificationResponse<ApnsPushNotification> {
+
+        private final ApnsPushNotification pushNotification;
+        private final boolean accepted;
+        private final UUID apnsId = UUID.randomUUID();
+        private final String rejectionReason;
+        private final Instant tokenInvalidationTimestamp;
+
+        private BenchmarkResponse(final ApnsPushNotification pushNotification, final boolean accepted,
+                                  final String rejectionReason, final Instant tokenInvalidationTimestamp) {
+
+            this.pushNotification = pushNotification;
+            this.accepted = accepted;
+            this.rejectionReason = rejectionReason;
+            this.tokenInvalidationTimestamp = tokenInvalidationTimestamp;
+        }
+
+        @Override
+        public ApnsPushNotification getPushNotification() {
+            return pushNotification;
+        }
+
+        @Override
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        @Override
+        public UUID getApnsId() {
+            return apnsId;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return accepted ? 200 : 410;
+        }
+
+        @Override
+        public Optional<String> getRejectionReason() {
+            return Optional.ofNullable(rejectionReason);
+        }
+
+        @Override
+        public Optional<Instant> getTokenInvalidationTimestamp() {
+            return Optional.ofNullable(tokenInvalidationTimestamp);
+        }
+    }
+}
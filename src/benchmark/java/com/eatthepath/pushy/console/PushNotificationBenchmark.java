@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushType;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import com.eatthepath.pushy.apns.util.TokenUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work done to build a notification every time a field in the composition form changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PushNotificationBenchmark {
+
+    @Param({
+            "c1d5a1ad7f5b4a0e9e3c8f2b6d4e0a1b2c3d4e5f60718293a4b5c6d7e8f90a1b",
+            "<c1d5a1ad 7f5b4a0e 9e3c8f2b 6d4e0a1b 2c3d4e5f 60718293 a4b5c6d7 e8f90a1b>"
+    })
+    public String deviceToken;
+
+    private static final String TOPIC = "com.example.topic";
+    private static final String PAYLOAD = "{\n    \"aps\": {\n        \"alert\": \"Hello from Pushy Console!\"\n    }\n}";
+
+    @Benchmark
+    public String benchmarkSanitizeTokenString() {
+        return TokenUtil.sanitizeTokenString(deviceToken);
+    }
+
+    @Benchmark
+    public ApnsPushNotification benchmarkBuildPushNotification() {
+        final Instant expiration = Instant.now().plus(Duration.ofDays(1));
+
+        return new SimpleApnsPushNotification(TokenUtil.sanitizeTokenString(deviceToken), TOPIC, PAYLOAD, expiration,
+                DeliveryPriority.IMMEDIATE, PushType.ALERT, StringUtils.trimToNull(null));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+/**
+ * <p>Limits the number of notifications in flight at any one time, adjusting the limit based on how the server
+ * responds. The limiter uses an additive-increase/multiplicative-decrease (AIMD) scheme much like TCP congestion
+ * control:</p>
+ *
+ * <ul>
+ *     <li>It starts in a "slow start" phase, raising its limit by one for each successful notification (which roughly
+ *     doubles the limit with each round trip) until it sees its first sign of congestion.</li>
+ *     <li>After that, it raises its limit by one for each round trip's worth of successful notifications.</li>
+ *     <li>When the server throttles a notification (or a notification fails outright), the limit is cut in half.</li>
+ *     <li>When round-trip latency climbs well above the lowest latency the limiter has seen, the limit is trimmed more
+ *     gently; queues are building up somewhere even though nothing has been rejected yet.</li>
+ * </ul>
+ *
+ * <p>Each permit handed out by {@link #acquire()} is numbered, and the limiter only backs off once for each "window" of
+ * permits; a burst of throttled responses for notifications that were all sent before the limiter first backed off
+ * won't keep cutting the limit.</p>
+ *
+ * <p>Limiters are thread-safe.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private boolean slowStart = true;
+
+    private int inFlight = 0;
+    private long nextPermit = 0;
+    private long recoveryPermit = 0;
+
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private double smoothedLatencyNanos = -1;
+
+    static final int DEFAULT_INITIAL_LIMIT = 10;
+
+    static final long NO_PERMIT = -1;
+
+    private static final double THROTTLED_BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+
+    // How far smoothed latency may rise above the lowest observed latency before we treat it as congestion
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_SMOOTHING_FACTOR = 0.1;
+
+    // Ignore latency increases too small to matter; tiny baselines (from a local mock server, say) are noisy
+    private static final long MIN_LATENCY_INCREASE_NANOS = 1_000_000;
+
+    /**
+     * Constructs a new limiter.
+     *
+     * @param initialLimit the initial number of permits that may be held at once
+     * @param minLimit the lowest the limit may go; must be at least 1
+     * @param maxLimit the highest the limit may go
+     */
+    AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("Minimum limit must be positive.");
+        }
+
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("Maximum limit must not be less than minimum limit.");
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * Waits until the number of permits in use is below the current limit, then takes a permit. Every permit must be
+     * returned by exactly one call to {@link #onSuccess(long, long)}, {@link #onCongestion(long)}, or
+     * {@link #release(long)}.
+     *
+     * @return the permit's number
+     *
+     * @throws InterruptedException if interrupted while waiting for a permit
+     */
+    synchronized long acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+
+        inFlight += 1;
+        return nextPermit++;
+    }
+
+    /**
+     * Takes a permit if the number of permits in use is below the current limit, but does not wait for one otherwise.
+     * Permits acquired this way must be returned just like permits acquired via {@link #acquire()}.
+     *
+     * @return the permit's number, or {@link #NO_PERMIT} if no permit was available
+     */
+    synchronized long tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return NO_PERMIT;
+        }
+
+        inFlight += 1;
+        return nextPermit++;
+    }
+
+    /**
+     * Returns a permit for a notification that was accepted or otherwise handled normally by the server.
+     *
+     * @param permit the permit to return
+     * @param latencyNanos the time, in nanoseconds, between sending the notification and receiving a response
+     */
+    synchronized void onSuccess(final long permit, final long latencyNanos) {
+        recordSuccess(permit, latencyNanos);
+        releaseAndNotify();
+    }
+
+    /**
+     * Adjusts the limit for a notification that was handled normally by the server, but does not return the
+     * notification's permit. Callers that retry notifications may use this method to report the outcome of each attempt
+     * while holding a permit until the notification reaches its final outcome.
+     *
+     * @param permit the permit under which the notification was sent
+     * @param latencyNanos the time, in nanoseconds, between sending the notification and receiving a response
+     */
+    synchronized void recordSuccess(final long permit, final long latencyNanos) {
+        // Let the baseline drift upward slowly so a lasting change in network conditions doesn't pin the limit at its
+        // minimum forever
+        minLatencyNanos = Math.min(latencyNanos,
+                minLatencyNanos == Long.MAX_VALUE ? Long.MAX_VALUE : minLatencyNanos + (minLatencyNanos >> 10));
+
+        smoothedLatencyNanos = smoothedLatencyNanos < 0 ? latencyNanos :
+                (LATENCY_SMOOTHING_FACTOR * latencyNanos) + ((1 - LATENCY_SMOOTHING_FACTOR) * smoothedLatencyNanos);
+
+        if (smoothedLatencyNanos > Math.max(minLatencyNanos * LATENCY_TOLERANCE, minLatencyNanos + MIN_LATENCY_INCREASE_NANOS)) {
+            backOff(permit, LATENCY_BACKOFF_RATIO);
+        } else {
+            limit = Math.min(maxLimit, slowStart ? limit + 1 : limit + (1 / limit));
+        }
+    }
+
+    /**
+     * Returns a permit for a notification that the server throttled or that could not be sent at all.
+     *
+     * @param permit the permit to return
+     */
+    synchronized void onCongestion(final long permit) {
+        recordCongestion(permit);
+        releaseAndNotify();
+    }
+
+    /**
+     * Adjusts the limit for a notification that the server throttled or that could not be sent at all, but does not
+     * return the notification's permit.
+     *
+     * @param permit the permit under which the notification was sent
+     *
+     * @see #recordSuccess(long, long)
+     */
+    synchronized void recordCongestion(final long permit) {
+        backOff(permit, THROTTLED_BACKOFF_RATIO);
+    }
+
+    /**
+     * Returns a permit without adjusting the limit, as when a notification was rejected for reasons that have nothing
+     * to do with load (a bad device token, for example) or when the limit has already been adjusted via
+     * {@link #recordSuccess(long, long)} or {@link #recordCongestion(long)}.
+     *
+     * @param permit the permit to return
+     */
+    synchronized void release(final long permit) {
+        releaseAndNotify();
+    }
+
+    private void backOff(final long permit, final double ratio) {
+        // Only back off once for notifications sent before the last time we backed off
+        if (permit >= recoveryPermit) {
+            limit = Math.max(minLimit, limit * ratio);
+            slowStart = false;
+            recoveryPermit = nextPermit;
+        }
+    }
+
+    private void releaseAndNotify() {
+        inFlight -= 1;
+        notifyAll();
+    }
+
+    /**
+     * Returns the current limit on the number of permits that may be held at once.
+     *
+     * @return the current limit
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of permits currently held.
+     *
+     * @return the number of permits currently held
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
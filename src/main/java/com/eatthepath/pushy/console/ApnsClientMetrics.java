@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClient;
+import com.eatthepath.pushy.apns.ApnsClientMetricsListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Collects metrics from any number of APNs clients. Round-trip times (from the moment a notification is written to
+ * the server to the moment the server accepts or rejects it) are recorded in a {@link LatencyHistogram}; notification
+ * and connection events are counted.</p>
+ *
+ * <p>A single metrics instance may be shared among many clients (for example, all clients in an
+ * {@link ApnsClientPool}). Metrics are thread-safe.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsClientMetrics implements ApnsClientMetricsListener {
+
+    // Notification IDs are only unique within a single client. Clients come and go (pools evict idle clients and
+    // replace clients when credentials change), so we only hold on to a client while it has open connections.
+    private final ConcurrentMap<ApnsClient, ClientState> clientStates = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram(LatencyHistogram.DEFAULT_MAX_TRACKABLE_VALUE);
+
+    private final LongAdder sentNotifications = new LongAdder();
+    private final LongAdder acceptedNotifications = new LongAdder();
+    private final LongAdder rejectedNotifications = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    private final LongAdder connectionsAdded = new LongAdder();
+    private final LongAdder connectionsRemoved = new LongAdder();
+    private final LongAdder connectionCreationFailures = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+
+    // If one of a client's connections closes with notifications still in flight, those notifications will never get a
+    // response; when a connection closes, we assume anything this old belonged to a dead connection.
+    private static final long STALE_SEND_TIME_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static class ClientState {
+        private final ConcurrentMap<Long, Long> sendTimes = new ConcurrentHashMap<>();
+        private int openConnections = 0;
+    }
+
+    /**
+     * An immutable, point-in-time view of a set of client metrics.
+     */
+    static class Snapshot {
+        private final long timestampNanos;
+        private final long elapsedNanos;
+
+        private final long sentNotifications;
+        private final long acceptedNotifications;
+        private final long rejectedNotifications;
+        private final long writeFailures;
+
+        private final long openConnections;
+        private final long connectionCreationFailures;
+
+        private final long p50LatencyMicros;
+        private final long p99LatencyMicros;
+        private final long p999LatencyMicros;
+        private final long maxLatencyMicros;
+
+        private Snapshot(final ApnsClientMetrics metrics) {
+            timestampNanos = System.nanoTime();
+            elapsedNanos = timestampNanos - metrics.startNanos;
+
+            sentNotifications = metrics.sentNotifications.sum();
+            acceptedNotifications = metrics.acceptedNotifications.sum();
+            rejectedNotifications = metrics.rejectedNotifications.sum();
+            writeFailures = metrics.writeFailures.sum();
+
+            openConnections = metrics.connectionsAdded.sum() - metrics.connectionsRemoved.sum();
+            connectionCreationFailures = metrics.connectionCreationFailures.sum();
+
+            final long[] latencies = metrics.latencyHistogram.getValuesAtPercentiles(50, 99, 99.9, 100);
+
+            p50LatencyMicros = latencies[0];
+            p99LatencyMicros = latencies[1];
+            p999LatencyMicros = latencies[2];
+            maxLatencyMicros = latencies[3];
+        }
+
+        long getSentNotifications() {
+            return sentNotifications;
+        }
+
+        long getAcceptedNotifications() {
+            return acceptedNotifications;
+        }
+
+        long getRejectedNotifications() {
+            return rejectedNotifications;
+        }
+
+        long getWriteFailures() {
+            return writeFailures;
+        }
+
+        long getOpenConnections() {
+            return openConnections;
+        }
+
+        long getConnectionCreationFailures() {
+            return connectionCreationFailures;
+        }
+
+        long getP50LatencyMicros() {
+            return p50LatencyMicros;
+        }
+
+        long getP99LatencyMicros() {
+            return p99LatencyMicros;
+        }
+
+        long getP999LatencyMicros() {
+            return p999LatencyMicros;
+        }
+
+        long getMaxLatencyMicros() {
+            return maxLatencyMicros;
+        }
+
+        /**
+         * Returns the rate at which the server answered (accepted or rejected) notifications between the given earlier
+         * snapshot and this one.
+         *
+         * @param previousSnapshot an earlier snapshot of the same metrics, or {@code null} to calculate the average
+         * rate since metrics collection started
+         *
+         * @return the number of notifications answered per second
+         */
+        double getResponsesPerSecond(final Snapshot previousSnapshot) {
+            final long responses = acceptedNotifications + rejectedNotifications;
+
+            final long intervalNanos = previousSnapshot != null ?
+                    timestampNanos - previousSnapshot.timestampNanos : elapsedNanos;
+
+            final long intervalResponses = previousSnapshot != null ?
+                    responses - (previousSnapshot.acceptedNotifications + previousSnapshot.rejectedNotifications) :
+                    responses;
+
+            return intervalNanos > 0 ? intervalResponses * (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos : 0;
+        }
+
+        /**
+         * Returns the contents of this snapshot as a map suitable for serialization as JSON.
+         *
+         * @return a map of metric names to values
+         */
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+
+            map.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            map.put("sent", sentNotifications);
+            map.put("accepted", acceptedNotifications);
+            map.put("rejected", rejectedNotifications);
+            map.put("writeFailures", writeFailures);
+            map.put("responsesPerSecond", Math.round(getResponsesPerSecond(null) * 10) / 10.0);
+            map.put("openConnections", openConnections);
+            map.put("connectionFailures", connectionCreationFailures);
+            map.put("latencyP50Micros", p50LatencyMicros);
+            map.put("latencyP99Micros", p99LatencyMicros);
+            map.put("latencyP999Micros", p999LatencyMicros);
+            map.put("latencyMaxMicros", maxLatencyMicros);
+
+            return map;
+        }
+    }
+
+    /**
+     * Returns a point-in-time view of these metrics.
+     *
+     * @return a point-in-time view of these metrics
+     */
+    Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public void handleNotificationSent(final ApnsClient apnsClient, final long notificationId) {
+        sentNotifications.increment();
+
+        clientStates.computeIfAbsent(apnsClient, client -> new ClientState()).sendTimes
+                .put(notificationId, System.nanoTime());
+    }
+
+    @Override
+    public void handleNotificationAccepted(final ApnsClient apnsClient, final long notificationId) {
+        acceptedNotifications.increment();
+        recordLatency(apnsClient, notificationId);
+    }
+
+    @Override
+    public void handleNotificationRejected(final ApnsClient apnsClient, final long notificationId) {
+        rejectedNotifications.increment();
+        recordLatency(apnsClient, notificationId);
+    }
+
+    @Override
+    public void handleWriteFailure(final ApnsClient apnsClient, final long notificationId) {
+        writeFailures.increment();
+        removeSendTime(apnsClient, notificationId);
+    }
+
+    @Override
+    public void handleConnectionAdded(final ApnsClient apnsClient) {
+        connectionsAdded.increment();
+
+        clientStates.compute(apnsClient, (client, clientState) -> {
+            final ClientState state = clientState != null ? clientState : new ClientState();
+            state.openConnections += 1;
+
+            return state;
+        });
+    }
+
+    @Override
+    public void handleConnectionRemoved(final ApnsClient apnsClient) {
+        connectionsRemoved.increment();
+
+        clientStates.computeIfPresent(apnsClient, (client, clientState) -> {
+            clientState.openConnections -= 1;
+
+            // With no open connections, nothing this client sent can still get a response
+            if (clientState.openConnections <= 0) {
+                return null;
+            }
+
+            final long now = System.nanoTime();
+            clientState.sendTimes.values().removeIf(sendTimeNanos -> now - sendTimeNanos > STALE_SEND_TIME_NANOS);
+
+            return clientState;
+        });
+    }
+
+    @Override
+    public void handleConnectionCreationFailed(final ApnsClient apnsClient) {
+        connectionCreationFailures.increment();
+    }
+
+    private void recordLatency(final ApnsClient apnsClient, final long notificationId) {
+        final Long sendTimeNanos = removeSendTime(apnsClient, notificationId);
+
+        if (sendTimeNanos != null) {
+            latencyHistogram.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendTimeNanos));
+        }
+    }
+
+    private Long removeSendTime(final ApnsClient apnsClient, final long notificationId) {
+        final ClientState clientState = clientStates.get(apnsClient);
+        return clientState != null ? clientState.sendTimes.remove(notificationId) : null;
+    }
+
+    /**
+     * Returns the number of clients for which these metrics are currently holding state.
+     *
+     * @return the number of clients for which these metrics are currently holding state
+     */
+    int getTrackedClientCount() {
+        return clientStates.size();
+    }
+
+    /**
+     * Returns the number of notifications these metrics are currently waiting to see answered.
+     *
+     * @return the number of notifications these metrics are currently waiting to see answered
+     */
+    int getPendingNotificationCount() {
+        return clientStates.values().stream().mapToInt(clientState -> clientState.sendTimes.size()).sum();
+    }
+}
@@ -0,0 +1,638 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClient;
+import com.eatthepath.pushy.apns.ApnsClientBuilder;
+import com.eatthepath.pushy.apns.ApnsClientMetricsListener;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import com.eatthepath.pushy.apns.util.concurrent.PushNotificationFuture;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http2.Http2FrameLogger;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.logging.LogLevel;
+
+import javax.net.ssl.SSLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A pool of long-lived APNs clients. Clients are keyed by server, port, and APNs credentials so that repeated sends
+ * with the same settings can reuse an existing connection rather than paying for a new TCP, TLS, and HTTP/2 handshake
+ * every time. Clients that have not been used for longer than a configurable idle timeout are closed and removed from
+ * the pool.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsClientPool {
+
+    private final long idleTimeoutNanos;
+    private final ApnsClientMetricsListener metricsListener;
+    private final Consumer<ApnsClientBuilder> clientBuilderCustomizer;
+
+    private final ConcurrentMap<ClientKey, PooledClient> clients = new ConcurrentHashMap<>();
+
+    // Credentials are compared by identity, and we don't want to keep replaced credentials alive just because we once
+    // replaced them.
+    private final Map<ApnsCredentials, ApnsCredentials> replacementCredentials =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final ScheduledExecutorService evictionExecutorService;
+
+    private volatile boolean closed = false;
+
+    static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    // APNs will reject this notification (there's no such device), but not before the client has resolved the server's
+    // address and finished its TCP, TLS, and HTTP/2 handshakes
+    private static final ApnsPushNotification PROBE_NOTIFICATION =
+            new SimpleApnsPushNotification("0".repeat(64), "com.eatthepath.pushy.console.probe", "{}");
+
+    private static class ClientKey {
+        private final String server;
+        private final int port;
+        private final ApnsCredentials credentials;
+
+        private ClientKey(final String server, final int port, final ApnsCredentials credentials) {
+            this.server = Objects.requireNonNull(server, "Server must not be null.");
+            this.port = port;
+            this.credentials = Objects.requireNonNull(credentials, "Credentials must not be null.");
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final ClientKey clientKey = (ClientKey) o;
+            // Credentials are compared by identity; two credential objects loaded from the same file are still
+            // considered distinct.
+            return port == clientKey.port && server.equals(clientKey.server) && credentials == clientKey.credentials;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(server, port, System.identityHashCode(credentials));
+        }
+    }
+
+    private static class PooledClient {
+        private final ApnsClient apnsClient;
+
+        // A non-negative value is the number of in-flight notifications; a negative value means the client has been
+        // retired and must not be used for new notifications.
+        private final AtomicInteger inFlightNotifications = new AtomicInteger();
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private volatile boolean closeWhenDrained = false;
+        private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+
+        private final ConnectionTracker connectionTracker;
+
+        private PooledClient(final ApnsClient apnsClient, final ConnectionTracker connectionTracker) {
+            this.apnsClient = apnsClient;
+            this.connectionTracker = connectionTracker;
+        }
+
+        private boolean isConnected() {
+            return connectionTracker.isConnected();
+        }
+
+        private boolean acquire() {
+            while (true) {
+                final int inFlight = inFlightNotifications.get();
+
+                if (inFlight < 0) {
+                    return false;
+                }
+
+                if (inFlightNotifications.compareAndSet(inFlight, inFlight + 1)) {
+                    lastUsedNanos = System.nanoTime();
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            lastUsedNanos = System.nanoTime();
+
+            if (inFlightNotifications.decrementAndGet() == 0 && closeWhenDrained && inFlightNotifications.compareAndSet(0, -1)) {
+                close();
+            }
+        }
+
+        private boolean retireIfIdleSince(final long cutoffNanos) {
+            return lastUsedNanos - cutoffNanos <= 0 && inFlightNotifications.compareAndSet(0, -1);
+        }
+
+        /**
+         * Closes this client as soon as it has no notifications in flight (which may be immediately).
+         */
+        private CompletableFuture<Void> closeWhenDrained() {
+            // Set the flag before checking the in-flight count; whichever of this method or release() sees the count
+            // hit zero after the flag is set wins the compare-and-set and closes the client.
+            closeWhenDrained = true;
+
+            if (inFlightNotifications.compareAndSet(0, -1)) {
+                close();
+            }
+
+            return closeFuture;
+        }
+
+        private CompletableFuture<Void> close() {
+            apnsClient.close().whenComplete((ignored, cause) -> {
+                if (cause != null) {
+                    closeFuture.completeExceptionally(cause);
+                } else {
+                    closeFuture.complete(null);
+                }
+            });
+
+            return closeFuture;
+        }
+    }
+
+    /**
+     * Keeps track of a single client's open connections. Pushy only notices that a connection has closed the next time
+     * it tries to use that connection, so trackers watch the connections themselves instead: clients pass every HTTP/2
+     * frame they send or receive to their frame logger, so a tracker sees each connection as soon as the server's first
+     * {@code SETTINGS} frame arrives and hears about it as soon as the connection closes for any reason (the server
+     * closing an idle connection or the network going away, for example). Frames are still logged as usual if trace
+     * logging is enabled for this class.
+     */
+    private static class ConnectionTracker extends Http2FrameLogger {
+        private final Set<Channel> openChannels = ConcurrentHashMap.newKeySet();
+
+        private ConnectionTracker() {
+            super(LogLevel.TRACE, ApnsClientPool.class);
+        }
+
+        private boolean isConnected() {
+            return !openChannels.isEmpty();
+        }
+
+        @Override
+        public void logSettings(final Direction direction, final ChannelHandlerContext context, final Http2Settings settings) {
+            super.logSettings(direction, context, settings);
+
+            if (direction == Direction.INBOUND) {
+                final Channel channel = context.channel();
+
+                if (openChannels.add(channel)) {
+                    // Listeners added to a future that's already done get called right away
+                    channel.closeFuture().addListener(ignored -> openChannels.remove(channel));
+                }
+            }
+        }
+
+        @Override
+        public void logGoAway(final Direction direction, final ChannelHandlerContext context, final int lastStreamId,
+                              final long errorCode, final ByteBuf debugData) {
+
+            super.logGoAway(direction, context, lastStreamId, errorCode, debugData);
+
+            // A connection that's going away won't take any new notifications, even if it hasn't closed yet
+            openChannels.remove(context.channel());
+        }
+    }
+
+    /**
+     * A metrics listener for a client built to carry a probe notification. The listener passes connection events
+     * along, but drops everything to do with the probe itself so probes don't show up as sent, rejected, or in latency
+     * figures. Probe clients aren't added to the pool (and so can't send anything else) until the probe has been sent,
+     * so any notification the client reports while probing is the probe.
+     */
+    private static class ProbeFilteringMetricsListener implements ApnsClientMetricsListener {
+        private final ApnsClientMetricsListener delegate;
+
+        private volatile boolean probing = true;
+        private final Set<Long> probeNotificationIds = ConcurrentHashMap.newKeySet();
+
+        private ProbeFilteringMetricsListener(final ApnsClientMetricsListener delegate) {
+            this.delegate = delegate;
+        }
+
+        private void stopProbing() {
+            probing = false;
+        }
+
+        @Override
+        public void handleWriteFailure(final ApnsClient apnsClient, final long notificationId) {
+            if (!probing) {
+                delegate.handleWriteFailure(apnsClient, notificationId);
+            }
+        }
+
+        @Override
+        public void handleNotificationSent(final ApnsClient apnsClient, final long notificationId) {
+            if (probing) {
+                probeNotificationIds.add(notificationId);
+            } else {
+                delegate.handleNotificationSent(apnsClient, notificationId);
+            }
+        }
+
+        @Override
+        public void handleNotificationAccepted(final ApnsClient apnsClient, final long notificationId) {
+            // The probe's response may arrive just after we stop probing
+            if (!probeNotificationIds.remove(notificationId)) {
+                delegate.handleNotificationAccepted(apnsClient, notificationId);
+            }
+        }
+
+        @Override
+        public void handleNotificationRejected(final ApnsClient apnsClient, final long notificationId) {
+            if (!probeNotificationIds.remove(notificationId)) {
+                delegate.handleNotificationRejected(apnsClient, notificationId);
+            }
+        }
+
+        @Override
+        public void handleConnectionAdded(final ApnsClient apnsClient) {
+            delegate.handleConnectionAdded(apnsClient);
+        }
+
+        @Override
+        public void handleConnectionRemoved(final ApnsClient apnsClient) {
+            delegate.handleConnectionRemoved(apnsClient);
+        }
+
+        @Override
+        public void handleConnectionCreationFailed(final ApnsClient apnsClient) {
+            delegate.handleConnectionCreationFailed(apnsClient);
+        }
+    }
+
+    /**
+     * Constructs a new client pool that closes clients after they have been idle for the given duration.
+     *
+     * @param idleTimeout the length of time after which an unused client will be closed and removed from the pool
+     */
+    ApnsClientPool(final Duration idleTimeout) {
+        this(idleTimeout, apnsClientBuilder -> {});
+    }
+
+    /**
+     * Constructs a new client pool that closes clients after they have been idle for the given duration and reports
+     * metrics for all clients to the given listener. Probe notifications sent by {@link #prewarm(String, int,
+     * ApnsCredentials)} are not reported to the listener.
+     *
+     * @param idleTimeout the length of time after which an unused client will be closed and removed from the pool
+     * @param metricsListener the listener to which to report metrics for all clients in the pool
+     */
+    ApnsClientPool(final Duration idleTimeout, final ApnsClientMetricsListener metricsListener) {
+        this(idleTimeout, metricsListener, apnsClientBuilder -> {});
+    }
+
+    /**
+     * Constructs a new client pool that closes clients after they have been idle for the given duration and applies
+     * the given customizer to the builder for each new client (after the pool has configured the client's server and
+     * credentials). Customizers may, for example, set a metrics listener for all clients in the pool.
+     *
+     * @param idleTimeout the length of time after which an unused client will be closed and removed from the pool
+     * @param clientBuilderCustomizer a function that applies additional configuration to new clients
+     */
+    ApnsClientPool(final Duration idleTimeout, final Consumer<ApnsClientBuilder> clientBuilderCustomizer) {
+        this(idleTimeout, null, clientBuilderCustomizer);
+    }
+
+    /**
+     * Constructs a new client pool that closes clients after they have been idle for the given duration, reports
+     * metrics for all clients to the given listener, and applies the given customizer to the builder for each new
+     * client. The pool sets the metrics listener (and its own frame logger, which it uses to keep track of each client's
+     * connections) after applying the customizer.
+     *
+     * @param idleTimeout the length of time after which an unused client will be closed and removed from the pool
+     * @param metricsListener the listener to which to report metrics for all clients in the pool; may be {@code null}
+     * @param clientBuilderCustomizer a function that applies additional configuration to new clients
+     */
+    ApnsClientPool(final Duration idleTimeout, final ApnsClientMetricsListener metricsListener,
+                   final Consumer<ApnsClientBuilder> clientBuilderCustomizer) {
+
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Idle timeout must be positive.");
+        }
+
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.metricsListener = metricsListener;
+        this.clientBuilderCustomizer = Objects.requireNonNull(clientBuilderCustomizer);
+
+        this.evictionExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "apns-client-pool-eviction");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        // Don't bother checking for idle clients more than once per second, even if the idle timeout is very short
+        final long evictionIntervalNanos = Math.max(idleTimeoutNanos, TimeUnit.SECONDS.toNanos(1));
+
+        this.evictionExecutorService.scheduleWithFixedDelay(this::evictIdleClients,
+                evictionIntervalNanos, evictionIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends a push notification using a pooled client for the given server, port, and credentials, creating a new
+     * client if no matching client is present in the pool.
+     *
+     * @param server the APNs server to which to send the notification
+     * @param port the port on the APNs server to which to connect
+     * @param credentials the credentials with which to authenticate with the APNs server
+     * @param pushNotification the notification to send
+     *
+     * @param <T> the type of notification to send
+     *
+     * @return a future that completes when the APNs server has accepted or rejected the notification
+     *
+     * @throws SSLException if a new client was needed, but could not be built for any reason
+     */
+    <T extends ApnsPushNotification> PushNotificationFuture<T, PushNotificationResponse<T>> sendNotification(
+            final String server, final int port, final ApnsCredentials credentials, final T pushNotification) throws SSLException {
+
+        final PooledClient pooledClient = acquireClient(new ClientKey(server, port, credentials));
+
+        final PushNotificationFuture<T, PushNotificationResponse<T>> sendFuture =
+                pooledClient.apnsClient.sendNotification(pushNotification);
+
+        sendFuture.whenComplete((response, cause) -> pooledClient.release());
+
+        return sendFuture;
+    }
+
+    /**
+     * Makes sure the pool has a client for the given server, port, and credentials with an open connection to the
+     * server, so the next real notification doesn't have to wait for one. If the pool already has a client with an open
+     * connection, this method does nothing. Otherwise, because Pushy clients connect lazily, this method builds a new
+     * client and sends a probe notification addressed to a device token that doesn't exist; the server will reject the
+     * probe, but any response at all means the connection is ready. The new client then joins the pool, taking the place
+     * of any existing client for the same settings that has lost its connection (unless another connected client got
+     * there first). Probes are not reported to the pool's metrics listener.
+     *
+     * @param server the APNs server to which to connect
+     * @param port the port on the APNs server to which to connect
+     * @param credentials the credentials with which to authenticate with the APNs server
+     *
+     * @return a future that completes with the time between sending the probe and receiving a response (which
+     * includes the time needed to open a new connection), or with zero if the pool already had a connected client, or
+     * exceptionally if no connection could be opened
+     */
+    CompletableFuture<Duration> prewarm(final String server, final int port, final ApnsCredentials credentials) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Client pool has been closed."));
+        }
+
+        final ClientKey clientKey = new ClientKey(server, port, getCurrentCredentials(credentials));
+        final PooledClient existingClient = clients.get(clientKey);
+
+        if (existingClient != null && existingClient.isConnected()) {
+            return CompletableFuture.completedFuture(Duration.ZERO);
+        }
+
+        final ProbeFilteringMetricsListener probeMetricsListener =
+                metricsListener != null ? new ProbeFilteringMetricsListener(metricsListener) : null;
+
+        final ConnectionTracker connectionTracker = new ConnectionTracker();
+        final PooledClient probeClient;
+
+        try {
+            probeClient = new PooledClient(buildClient(clientKey, probeMetricsListener, connectionTracker), connectionTracker);
+        } catch (final SSLException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final long start = System.nanoTime();
+
+        return probeClient.apnsClient.sendNotification(PROBE_NOTIFICATION).thenApply(response -> {
+            final Duration roundTripTime = Duration.ofNanos(System.nanoTime() - start);
+
+            if (probeMetricsListener != null) {
+                probeMetricsListener.stopProbing();
+            }
+
+            if (closed || !addProbeClient(clientKey, probeClient)) {
+                probeClient.close();
+            }
+
+            return roundTripTime;
+        }).whenComplete((roundTripTime, cause) -> {
+            if (cause != null) {
+                probeClient.close();
+            }
+        });
+    }
+
+    /**
+     * Adds a newly-connected probe client to the pool, replacing any existing client for the same settings that doesn't
+     * have an open connection.
+     *
+     * @return {@code true} if the probe client was added to the pool or {@code false} if the pool already had a
+     * connected client for the same settings
+     */
+    private boolean addProbeClient(final ClientKey clientKey, final PooledClient probeClient) {
+        while (true) {
+            final PooledClient existingClient = clients.get(clientKey);
+
+            if (existingClient == null) {
+                if (clients.putIfAbsent(clientKey, probeClient) == null) {
+                    return true;
+                }
+            } else if (existingClient.isConnected()) {
+                return false;
+            } else if (clients.replace(clientKey, existingClient, probeClient)) {
+                // The existing client may be in the middle of reconnecting for somebody's notification; let it finish
+                existingClient.closeWhenDrained();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the client this pool currently holds for the given server, port, and credentials (taking any replaced
+     * credentials into account) without creating a new client or marking the client as in use. The returned client may
+     * be closed at any time and must not be used to send notifications; this method only tells callers which client the
+     * pool would use.
+     *
+     * @param server the APNs server to which the client connects
+     * @param port the port on the APNs server to which the client connects
+     * @param credentials the credentials with which the client authenticates with the APNs server
+     *
+     * @return the pooled client for the given server, port, and credentials, or empty if the pool has no such client
+     */
+    Optional<ApnsClient> getPooledClient(final String server, final int port, final ApnsCredentials credentials) {
+        final PooledClient pooledClient = clients.get(new ClientKey(server, port, getCurrentCredentials(credentials)));
+
+        return pooledClient != null ? Optional.of(pooledClient.apnsClient) : Optional.empty();
+    }
+
+    /**
+     * Replaces one set of credentials with another. Once this method returns, notifications sent with the previous
+     * credentials will be sent with a client for the replacement credentials instead. Existing clients for the previous
+     * credentials are removed from the pool immediately, but are allowed to finish sending any notifications already in
+     * flight before they are closed.
+     *
+     * @param previousCredentials the credentials to replace
+     * @param replacementCredentials the credentials to use in place of the previous credentials
+     *
+     * @return a future that completes when all clients for the previous credentials have closed
+     */
+    CompletableFuture<Void> replaceCredentials(final ApnsCredentials previousCredentials, final ApnsCredentials replacementCredentials) {
+        Objects.requireNonNull(previousCredentials);
+        Objects.requireNonNull(replacementCredentials);
+
+        if (previousCredentials == replacementCredentials) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        this.replacementCredentials.put(previousCredentials, replacementCredentials);
+
+        final List<CompletableFuture<Void>> closeFutures = new ArrayList<>();
+
+        clients.forEach((clientKey, pooledClient) -> {
+            if (clientKey.credentials == previousCredentials && clients.remove(clientKey, pooledClient)) {
+                closeFutures.add(pooledClient.closeWhenDrained());
+            }
+        });
+
+        return CompletableFuture.allOf(closeFutures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private ApnsCredentials getCurrentCredentials(final ApnsCredentials credentials) {
+        ApnsCredentials currentCredentials = credentials;
+
+        // Credentials may have been replaced more than once (say, if a file has been rotated several times)
+        for (ApnsCredentials replacement = replacementCredentials.get(currentCredentials);
+             replacement != null;
+             replacement = replacementCredentials.get(currentCredentials)) {
+
+            currentCredentials = replacement;
+        }
+
+        return currentCredentials;
+    }
+
+    private PooledClient acquireClient(final ClientKey requestedClientKey) throws SSLException {
+        if (closed) {
+            throw new IllegalStateException("Client pool has been closed.");
+        }
+
+        while (true) {
+            final ClientKey clientKey = new ClientKey(requestedClientKey.server, requestedClientKey.port,
+                    getCurrentCredentials(requestedClientKey.credentials));
+
+            PooledClient pooledClient = clients.get(clientKey);
+
+            if (pooledClient == null) {
+                final ConnectionTracker connectionTracker = new ConnectionTracker();
+                final PooledClient newClient =
+                        new PooledClient(buildClient(clientKey, metricsListener, connectionTracker), connectionTracker);
+                pooledClient = clients.putIfAbsent(clientKey, newClient);
+
+                if (pooledClient == null) {
+                    pooledClient = newClient;
+                } else {
+                    // Somebody else beat us to it; discard the client we just built.
+                    newClient.close();
+                }
+            }
+
+            if (pooledClient.acquire()) {
+                return pooledClient;
+            }
+
+            // The client we found was retired between lookup and acquisition; make sure it's gone and try again.
+            clients.remove(clientKey, pooledClient);
+        }
+    }
+
+    private ApnsClient buildClient(final ClientKey clientKey, final ApnsClientMetricsListener metricsListener,
+                                   final ConnectionTracker connectionTracker) throws SSLException {
+        final ApnsClientBuilder apnsClientBuilder = new ApnsClientBuilder();
+        apnsClientBuilder.setApnsServer(clientKey.server, clientKey.port);
+
+        clientKey.credentials.getCertificateAndPrivateKey().ifPresent(certificateAndPrivateKey ->
+                apnsClientBuilder.setClientCredentials(certificateAndPrivateKey.getKey(), certificateAndPrivateKey.getValue(), null));
+
+        clientKey.credentials.getSigningKey().ifPresent(apnsClientBuilder::setSigningKey);
+
+        clientBuilderCustomizer.accept(apnsClientBuilder);
+
+        if (metricsListener != null) {
+            apnsClientBuilder.setMetricsListener(metricsListener);
+        }
+
+        apnsClientBuilder.setFrameLogger(connectionTracker);
+
+        return apnsClientBuilder.build();
+    }
+
+    /**
+     * Closes and removes any clients that have no notifications in flight and have not been used within this pool's
+     * idle timeout.
+     */
+    void evictIdleClients() {
+        final long cutoffNanos = System.nanoTime() - idleTimeoutNanos;
+
+        clients.forEach((clientKey, pooledClient) -> {
+            if (pooledClient.retireIfIdleSince(cutoffNanos)) {
+                clients.remove(clientKey, pooledClient);
+                pooledClient.close();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of clients currently held by this pool.
+     *
+     * @return the number of clients currently held by this pool
+     */
+    int size() {
+        return clients.size();
+    }
+
+    /**
+     * Closes all clients in this pool and stops evicting idle clients. Notifications already in flight are allowed to
+     * finish before their clients shut down.
+     *
+     * @return a future that completes when all clients in this pool have closed
+     */
+    CompletableFuture<Void> close() {
+        closed = true;
+        evictionExecutorService.shutdownNow();
+
+        final List<CompletableFuture<Void>> closeFutures = new ArrayList<>(clients.size());
+
+        clients.forEach((clientKey, pooledClient) -> {
+            if (clients.remove(clientKey, pooledClient)) {
+                closeFutures.add(pooledClient.close());
+            }
+        });
+
+        return CompletableFuture.allOf(closeFutures.toArray(new CompletableFuture<?>[0]));
+    }
+}
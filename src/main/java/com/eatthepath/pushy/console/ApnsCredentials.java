@@ -23,25 +23,26 @@
 package com.eatthepath.pushy.console;
 
 import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
-import javafx.util.Pair;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.security.*;
 import java.security.cert.X509Certificate;
+import java.util.AbstractMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
 /**
  * A set of APNs client credentials that may contain exactly one of an APNs client certificate/private key pair or an
- * APNs signing key.
+ * APNs signing key. Credentials deliberately avoid any dependency on JavaFX so they can be used by the headless sender.
  *
  * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
  */
 class ApnsCredentials {
 
-    private final Pair<X509Certificate, PrivateKey> certificateAndPrivateKey;
+    private final Map.Entry<X509Certificate, PrivateKey> certificateAndPrivateKey;
 
     private final ApnsSigningKey signingKey;
 
@@ -56,13 +57,19 @@ class ApnsCredentials {
      * any reason
      */
     public ApnsCredentials(final File certificateFile, final String certificatePassword) throws IOException, KeyStoreException {
-        Objects.requireNonNull(certificateFile, "Certificate file must not be null.");
-        Objects.requireNonNull(certificatePassword, "Certificate password may be blank, but must not be null.");
-
-        final KeyStore.PrivateKeyEntry privateKeyEntry =
-                CertificateUtil.getFirstPrivateKeyEntry(certificateFile, certificatePassword);
+        this(CertificateUtil.getFirstPrivateKeyEntry(
+                Objects.requireNonNull(certificateFile, "Certificate file must not be null."),
+                Objects.requireNonNull(certificatePassword, "Certificate password may be blank, but must not be null.")));
+    }
 
-        certificateAndPrivateKey = new Pair<>((X509Certificate) privateKeyEntry.getCertificate(), privateKeyEntry.getPrivateKey());
+    /**
+     * Constructs a new set of APNs client credentials from an already-loaded certificate/private key pair.
+     *
+     * @param privateKeyEntry a private key entry that contains an APNs client certificate and its private key
+     */
+    ApnsCredentials(final KeyStore.PrivateKeyEntry privateKeyEntry) {
+        certificateAndPrivateKey = new AbstractMap.SimpleImmutableEntry<>(
+                (X509Certificate) privateKeyEntry.getCertificate(), privateKeyEntry.getPrivateKey());
         signingKey = null;
     }
 
@@ -92,6 +99,16 @@ class ApnsCredentials {
         certificateAndPrivateKey = null;
     }
 
+    /**
+     * Constructs a new set of APNs client credentials that contains an already-loaded signing key.
+     *
+     * @param signingKey the signing key to use for authentication
+     */
+    ApnsCredentials(final ApnsSigningKey signingKey) {
+        this.signingKey = Objects.requireNonNull(signingKey, "Signing key must not be null.");
+        this.certificateAndPrivateKey = null;
+    }
+
     /**
      * Returns the certificate and private key pair (if present) contained in this set of APNs client credentials. If
      * the returned {@code Optional} has a value, the {@code Optional} returned by {@link #getSigningKey()} is
@@ -100,7 +117,7 @@ class ApnsCredentials {
      * @return an {@code Optional} containing the certificate and private key pair for this set of APNs client
      * credentials
      */
-    public Optional<Pair<X509Certificate, PrivateKey>> getCertificateAndPrivateKey() {
+    public Optional<Map.Entry<X509Certificate, PrivateKey>> getCertificateAndPrivateKey() {
         return Optional.ofNullable(certificateAndPrivateKey);
     }
 
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.util.*;
+
+/**
+ * <p>A cache of parsed APNs credentials and certificate inspections. Loading credentials, especially from a
+ * password-protected PKCS#12 file, is expensive; the cache returns the same {@link ApnsCredentials} (or
+ * {@link CertificateInspection}) instance for repeated requests for the same file (identified by its canonical path)
+ * and password or key/team IDs, so long as the file's contents haven't changed.</p>
+ *
+ * <p>To check whether a file has changed, the cache first compares its modification time and size to the last values
+ * it saw. Only if those have changed does the cache read the file and compare a SHA-256 digest of its contents; if
+ * the contents really have changed, the new contents are parsed.</p>
+ *
+ * <p>Because equivalent requests return identical instances, credentials from the cache are suitable keys for
+ * identity-based lookups like those in {@link ApnsClientPool}. Credential caches are thread-safe, and do not hold a
+ * lock while parsing credentials; callers that request the same uncached credentials at the same time may both parse
+ * them, but will both receive the same instance.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsCredentialsCache {
+
+    private final Map<Path, FileSnapshot> fileSnapshots = new HashMap<>();
+
+    private final Map<CredentialsKey, ApnsCredentials> credentialsByKey = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<CredentialsKey, ApnsCredentials> eldest) {
+            return size() > MAX_CACHED_CREDENTIALS;
+        }
+    };
+
+    private final Map<CredentialsKey, CertificateInspection> inspectionsByKey = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<CredentialsKey, CertificateInspection> eldest) {
+            return size() > MAX_CACHED_CREDENTIALS;
+        }
+    };
+
+    // Typing a key ID or team ID one character at a time produces a new set of credentials for each keystroke
+    private static final int MAX_CACHED_CREDENTIALS = 64;
+
+    private static class FileSnapshot {
+        private final FileTime lastModifiedTime;
+        private final long size;
+        private final String digest;
+        private final byte[] contents;
+
+        private FileSnapshot(final FileTime lastModifiedTime, final long size, final String digest, final byte[] contents) {
+            this.lastModifiedTime = lastModifiedTime;
+            this.size = size;
+            this.digest = digest;
+            this.contents = contents;
+        }
+    }
+
+    private static class CredentialsKey {
+        private final Path path;
+        private final String digest;
+        private final String password;
+        private final String keyId;
+        private final String teamId;
+
+        private CredentialsKey(final Path path, final String digest, final String password, final String keyId, final String teamId) {
+            this.path = path;
+            this.digest = digest;
+            this.password = password;
+            this.keyId = keyId;
+            this.teamId = teamId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final CredentialsKey that = (CredentialsKey) o;
+            return path.equals(that.path) && digest.equals(that.digest) && Objects.equals(password, that.password) &&
+                    Objects.equals(keyId, that.keyId) && Objects.equals(teamId, that.teamId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, digest, password, keyId, teamId);
+        }
+    }
+
+    /**
+     * Returns the result of inspecting the given PKCS#12 file. The file is only loaded and decrypted if it hasn't
+     * already been inspected with the same password, or if its contents have changed since it was last inspected.
+     *
+     * @param certificateFile a PKCS#12 file containing the certificate and private key
+     * @param certificatePassword the password for the PKCS#12 file
+     *
+     * @return the result of inspecting the given file
+     *
+     * @throws IOException if the given file could not be read for any reason
+     * @throws KeyStoreException if a certificate/private key pair could not be loaded from the given PKCS#12 file for
+     * any reason
+     */
+    CertificateInspection getCertificateInspection(final File certificateFile, final String certificatePassword) throws IOException, KeyStoreException {
+        Objects.requireNonNull(certificatePassword, "Certificate password may be blank, but must not be null.");
+
+        final Path path = certificateFile.toPath().toRealPath();
+        final FileSnapshot fileSnapshot = getFileSnapshot(path);
+
+        return getCertificateInspection(new CredentialsKey(path, fileSnapshot.digest, certificatePassword, null, null), fileSnapshot);
+    }
+
+    /**
+     * Returns credentials loaded from the given PKCS#12 file.
+     *
+     * @param certificateFile a PKCS#12 file containing the certificate and private key
+     * @param certificatePassword the password for the PKCS#12 file
+     *
+     * @return credentials loaded from the given file
+     *
+     * @throws IOException if the given file could not be read for any reason
+     * @throws KeyStoreException if a certificate/private key pair could not be loaded from the given PKCS#12 file for
+     * any reason
+     */
+    ApnsCredentials getCertificateCredentials(final File certificateFile, final String certificatePassword) throws IOException, KeyStoreException {
+        Objects.requireNonNull(certificatePassword, "Certificate password may be blank, but must not be null.");
+
+        final Path path = certificateFile.toPath().toRealPath();
+        final FileSnapshot fileSnapshot = getFileSnapshot(path);
+        final CredentialsKey credentialsKey = new CredentialsKey(path, fileSnapshot.digest, certificatePassword, null, null);
+
+        synchronized (this) {
+            final ApnsCredentials credentials = credentialsByKey.get(credentialsKey);
+
+            if (credentials != null) {
+                return credentials;
+            }
+        }
+
+        return putIfAbsent(credentialsByKey, credentialsKey,
+                new ApnsCredentials(getCertificateInspection(credentialsKey, fileSnapshot).getPrivateKeyEntry()));
+    }
+
+    private CertificateInspection getCertificateInspection(final CredentialsKey credentialsKey, final FileSnapshot fileSnapshot) throws IOException, KeyStoreException {
+        synchronized (this) {
+            final CertificateInspection inspection = inspectionsByKey.get(credentialsKey);
+
+            if (inspection != null) {
+                return inspection;
+            }
+        }
+
+        // Decrypting a key store can take a while, and we don't want to hold the lock (and block other callers, which may
+        // be on the JavaFX application thread) while we do it.
+        return putIfAbsent(inspectionsByKey, credentialsKey,
+                CertificateUtil.inspect(new ByteArrayInputStream(fileSnapshot.contents), credentialsKey.password));
+    }
+
+    /**
+     * Returns credentials loaded from the given PKCS#8 signing key file.
+     *
+     * @param signingKeyFile a PKCS#8 file that contains an EC private key
+     * @param keyId the ten-character, Apple-issued ID for the signing key
+     * @param teamId the ten-character, Apple-issued ID for the team to which the signing key belongs
+     *
+     * @return credentials loaded from the given file
+     *
+     * @throws NoSuchAlgorithmException if the JVM does not support elliptic curve keys
+     * @throws IOException if the given PKCS#8 file could not be read for any reason
+     * @throws InvalidKeyException if the given elliptic curve private key is invalid for any reason
+     */
+    ApnsCredentials getSigningKeyCredentials(final File signingKeyFile, final String keyId, final String teamId) throws NoSuchAlgorithmException, IOException, InvalidKeyException {
+        if (StringUtils.isBlank(keyId)) {
+            throw new IllegalArgumentException("Key ID must not be blank.");
+        }
+
+        if (StringUtils.isBlank(teamId)) {
+            throw new IllegalArgumentException("Team ID must not be blank.");
+        }
+
+        final Path path = signingKeyFile.toPath().toRealPath();
+        final FileSnapshot fileSnapshot = getFileSnapshot(path);
+        final CredentialsKey credentialsKey = new CredentialsKey(path, fileSnapshot.digest, null, keyId, teamId);
+
+        synchronized (this) {
+            final ApnsCredentials credentials = credentialsByKey.get(credentialsKey);
+
+            if (credentials != null) {
+                return credentials;
+            }
+        }
+
+        return putIfAbsent(credentialsByKey, credentialsKey, new ApnsCredentials(
+                ApnsSigningKey.loadFromInputStream(new ByteArrayInputStream(fileSnapshot.contents), teamId, keyId)));
+    }
+
+    /**
+     * Stores the given value unless another thread got there first, in which case the other thread's value wins so that
+     * all callers see the same instance.
+     */
+    private synchronized <V> V putIfAbsent(final Map<CredentialsKey, V> map, final CredentialsKey credentialsKey, final V value) {
+        final V existingValue = map.putIfAbsent(credentialsKey, value);
+        return existingValue != null ? existingValue : value;
+    }
+
+    private synchronized FileSnapshot getFileSnapshot(final Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final FileSnapshot cachedSnapshot = fileSnapshots.get(path);
+
+        if (cachedSnapshot != null && cachedSnapshot.size == attributes.size() &&
+                cachedSnapshot.lastModifiedTime.equals(attributes.lastModifiedTime())) {
+
+            return cachedSnapshot;
+        }
+
+        final byte[] contents = Files.readAllBytes(path);
+        final String digest = sha256(contents);
+
+        // If the file was touched but not actually changed, keep the old snapshot's digest (and therefore any credentials
+        // keyed to it), but remember the new modification time so we don't have to read the file again next time.
+        final FileSnapshot fileSnapshot = new FileSnapshot(attributes.lastModifiedTime(), contents.length, digest, contents);
+        fileSnapshots.put(path, fileSnapshot);
+
+        if (cachedSnapshot != null && !cachedSnapshot.digest.equals(digest)) {
+            // The file really has changed; credentials loaded from the old version will never be requested again
+            credentialsByKey.keySet().removeIf(credentialsKey -> credentialsKey.path.equals(path));
+            inspectionsByKey.keySet().removeIf(credentialsKey -> credentialsKey.path.equals(path));
+        }
+
+        return fileSnapshot;
+    }
+
+    private static String sha256(final byte[] contents) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contents));
+        } catch (final NoSuchAlgorithmException e) {
+            // All Java implementations are required to support SHA-256
+            throw new AssertionError(e);
+        }
+    }
+}
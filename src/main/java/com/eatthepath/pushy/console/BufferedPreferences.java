@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * <p>A write-behind buffer for user preferences. Values written to a buffered preferences instance are held in memory
+ * and written to the underlying {@link Preferences} node by a background thread shortly afterward; if a key is written
+ * several times before the buffer is flushed, only the last value is actually stored. This keeps serialization and
+ * preferences I/O off of the JavaFX application thread, and keeps bursts of changes (as when several recent-value lists
+ * are updated after each notification is sent) from turning into bursts of writes.</p>
+ *
+ * <p>Lists of strings are stored as JSON arrays, each under its own key. Because individual preferences values are
+ * limited in size (see {@link Preferences#MAX_VALUE_LENGTH}), lists that are too large to store are trimmed from the
+ * end, one element at a time, until they fit.</p>
+ *
+ * <p>Buffered preferences are thread-safe. Callers must {@link #close()} buffered preferences when finished with them
+ * to make sure pending values are written; values written after a buffered preferences instance has been closed are
+ * written to the underlying node immediately.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class BufferedPreferences implements Closeable {
+
+    private final Preferences preferences;
+    private final long flushDelayMillis;
+
+    private final Map<String, Object> pendingValues = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    private final ScheduledExecutorService flushExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "preferences-writer");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    static final long DEFAULT_FLUSH_DELAY_MILLIS = 1_000;
+
+    private static final ObjectReader STRING_LIST_READER =
+            new ObjectMapper().readerFor(new TypeReference<List<String>>() {});
+
+    /**
+     * Constructs a new buffered preferences instance that writes to the given preferences node.
+     *
+     * @param preferences the preferences node to which to write values
+     * @param flushDelayMillis the time, in milliseconds, to wait after a value is written before writing it (and any
+     * other values written in the meantime) to the underlying preferences node
+     */
+    BufferedPreferences(final Preferences preferences, final long flushDelayMillis) {
+        this.preferences = Objects.requireNonNull(preferences);
+        this.flushDelayMillis = flushDelayMillis;
+    }
+
+    /**
+     * Loads the lists of strings stored under each of the given keys. Keys with no stored value or with a value that
+     * can't be read as a list of strings map to empty lists. Each list lives under its own key, so this still reads
+     * (and parses) one preferences value per key; it's a convenience for loading several lists at once, not a batched
+     * read.
+     *
+     * @param keys the keys for which to load lists
+     *
+     * @return a map of the given keys to mutable lists of the values stored under each key
+     */
+    Map<String, List<String>> getLists(final String... keys) {
+        final Map<String, List<String>> lists = new HashMap<>();
+
+        for (final String key : keys) {
+            // Anything that hasn't been written yet is more current than what's in the underlying node
+            final Object pendingValue = pendingValues.get(key);
+
+            if (pendingValue instanceof List) {
+                @SuppressWarnings("unchecked") final List<String> pendingList = (List<String>) pendingValue;
+                lists.put(key, new ArrayList<>(pendingList));
+            } else {
+                List<String> list;
+
+                try {
+                    list = STRING_LIST_READER.readValue(preferences.get(key, "[]"));
+                } catch (final JsonProcessingException e) {
+                    list = new ArrayList<>();
+                }
+
+                lists.put(key, list);
+            }
+        }
+
+        return lists;
+    }
+
+    /**
+     * Writes a string value under the given key.
+     *
+     * @param key the key under which to store the value
+     * @param value the value to store
+     */
+    void put(final String key, final String value) {
+        putPendingValue(key, Objects.requireNonNull(value));
+    }
+
+    /**
+     * Writes an integer value under the given key.
+     *
+     * @param key the key under which to store the value
+     * @param value the value to store
+     */
+    void putInt(final String key, final int value) {
+        put(key, Integer.toString(value));
+    }
+
+    /**
+     * Writes a list of strings under the given key. The list is copied immediately, and may be modified by the caller
+     * as soon as this method returns; serialization happens later on a background thread.
+     *
+     * @param key the key under which to store the list
+     * @param values the list to store
+     */
+    void putList(final String key, final List<? extends String> values) {
+        putPendingValue(key, Collections.unmodifiableList(new ArrayList<>(values)));
+    }
+
+    private void putPendingValue(final String key, final Object value) {
+        pendingValues.put(key, value);
+
+        if (closed) {
+            // There's no background thread left to write this value for us
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            flushExecutorService.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Immediately writes all pending values to the underlying preferences node.
+     */
+    synchronized void flush() {
+        // Clear the flag first so that anything written while we're flushing will schedule another flush
+        flushScheduled.set(false);
+
+        for (final String key : new ArrayList<>(pendingValues.keySet())) {
+            final Object value = pendingValues.remove(key);
+
+            if (value instanceof List) {
+                @SuppressWarnings("unchecked") final List<String> list = (List<String>) value;
+                putListFittingValueLength(key, list);
+            } else if (value != null) {
+                preferences.put(key, (String) value);
+            }
+        }
+    }
+
+    private void putListFittingValueLength(final String key, final List<String> values) {
+        int end = values.size();
+
+        while (end >= 0) {
+            final String json = JsonSerializer.writeJsonTextAsString(values.subList(0, end));
+
+            if (json.length() <= Preferences.MAX_VALUE_LENGTH) {
+                preferences.put(key, json);
+                break;
+            }
+
+            // The list won't fit in a user preferences slot; shave one element from the end of the list and try again
+            end -= 1;
+        }
+    }
+
+    /**
+     * Writes any pending values to the underlying preferences node, asks the node to persist its contents, and stops
+     * this instance's background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flushExecutorService.shutdownNow();
+        flush();
+
+        try {
+            preferences.flush();
+        } catch (final BackingStoreException ignored) {
+            // Preferences will still try to save themselves when the JVM exits
+        }
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import com.eatthepath.pushy.apns.util.TokenUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Sends a single notification "template" to every device token read from a token source. Tokens are streamed from
+ * the source one line at a time, so sources may contain millions of tokens without being loaded into memory all at
+ * once.</p>
+ *
+ * <p>Bulk senders do not wait for one notification to be acknowledged before sending the next; instead, they keep
+ * several notifications in flight at once and stop reading new tokens (applying backpressure) when a limit is reached.
+ * Each topic gets its own {@link AdaptiveConcurrencyLimiter}, which starts small, grows as notifications succeed, and
+ * backs off when the server throttles notifications for that topic (or when latency climbs); the total number of
+ * notifications in flight across all topics never exceeds a fixed maximum. Notifications for a topic that has reached
+ * its limit are set aside until that topic has room again, so one slow topic doesn't hold up the others.</p>
+ *
+ * <p>Bulk senders send at most one notification to each device token for each topic, even if a token appears more
+ * than once in a token source (or in more than one token source). Tokens already sent are tracked in a compact
+ * {@link DeviceTokenSet} per topic, so de-duplication stays cheap even for millions of tokens.</p>
+ *
+ * <p>Bulk senders may optionally consult an {@link InvalidTokenRegistry}, in which case they'll skip tokens that APNs
+ * has already reported as invalid and record any newly-invalidated tokens in the registry. Bulk senders may also
+ * optionally retry notifications that fail for temporary reasons via a {@link NotificationRetrier}; listeners only
+ * hear about each notification's final outcome. Notifications waiting to be retried give up their places in their topic's
+ * limit and the overall limit (so a burst of temporary failures doesn't stop new notifications from going out), but only
+ * so many may wait to be retried at once.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class BulkNotificationSender {
+
+    private final NotificationSendFunction sendFunction;
+    private final int maxOutstandingNotifications;
+    private final InvalidTokenRegistry invalidTokenRegistry;
+    private final NotificationRetrier notificationRetrier;
+
+    private final AtomicLong sentNotifications = new AtomicLong();
+    private final AtomicLong acceptedNotifications = new AtomicLong();
+    private final AtomicLong rejectedNotifications = new AtomicLong();
+    private final AtomicLong failedNotifications = new AtomicLong();
+    private final AtomicLong duplicateTokens = new AtomicLong();
+    private final AtomicLong invalidTokens = new AtomicLong();
+
+    // Only accessed from the thread reading tokens
+    private final Map<String, DeviceTokenSet> sentTokensByTopic = new HashMap<>();
+
+    private final Map<String, AdaptiveConcurrencyLimiter> concurrencyLimitersByTopic = new ConcurrentHashMap<>();
+
+    private volatile boolean cancelled = false;
+
+    static final int DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS = 1000;
+
+    // Tokens copied from Xcode may contain spaces and angle brackets (e.g. "<740f4707 bebcf74f ...>"), so we can't just
+    // split on whitespace. Topics, though, are always reverse-DNS names with at least one dot, and tokens never are.
+    private static final Pattern TOKEN_AND_TOPIC_PATTERN = Pattern.compile("^(.*?)[\\s,]+([^\\s,<>]*\\.[^\\s,<>]*)$");
+
+    /**
+     * A function that sends a single push notification, usually via a pooled APNs client.
+     */
+    @FunctionalInterface
+    interface NotificationSendFunction {
+
+        /**
+         * Sends the given push notification.
+         *
+         * @param pushNotification the push notification to send
+         *
+         * @return a future that completes when the APNs server has accepted or rejected the notification
+         *
+         * @throws Exception if the notification could not be sent for any reason
+         */
+        CompletableFuture<PushNotificationResponse<ApnsPushNotification>> sendNotification(ApnsPushNotification pushNotification) throws Exception;
+    }
+
+    /**
+     * A listener that receives the outcome of each notification sent by a bulk sender. Listener methods may be called
+     * from any thread.
+     */
+    interface BulkSendListener {
+
+        /**
+         * Handles a notification being handed off for sending. Listeners hear about each notification once, no matter
+         * how many times it's retried. By default, does nothing.
+         *
+         * @param pushNotification the notification being sent
+         */
+        default void handlePushNotificationSent(ApnsPushNotification pushNotification) {
+        }
+
+        /**
+         * Handles a response (acceptance or rejection) from the APNs server.
+         *
+         * @param response the response from the APNs server
+         */
+        void handlePushNotificationResponse(PushNotificationResponse<ApnsPushNotification> response);
+
+        /**
+         * Handles a failure to send a push notification.
+         *
+         * @param pushNotification the notification that could not be sent
+         * @param cause the cause of the failure
+         */
+        void handleSendFailure(ApnsPushNotification pushNotification, Throwable cause);
+
+        /**
+         * Handles a notification that was not sent because its token is known to be invalid. By default, does nothing.
+         *
+         * @param pushNotification the notification that was not sent
+         * @param invalidationTimestamp the time at which the notification's token became invalid
+         */
+        default void handleInvalidTokenSkipped(ApnsPushNotification pushNotification, Instant invalidationTimestamp) {
+        }
+    }
+
+    /**
+     * Constructs a new bulk sender that sends notifications via the given function.
+     *
+     * @param sendFunction the function with which to send individual notifications
+     * @param maxOutstandingNotifications the maximum number of notifications that may be in flight at any one time
+     */
+    BulkNotificationSender(final NotificationSendFunction sendFunction, final int maxOutstandingNotifications) {
+        this(sendFunction, maxOutstandingNotifications, null);
+    }
+
+    /**
+     * Constructs a new bulk sender that sends notifications via the given function and skips tokens recorded as
+     * invalid in the given registry.
+     *
+     * @param sendFunction the function with which to send individual notifications
+     * @param maxOutstandingNotifications the maximum number of notifications that may be in flight at any one time
+     * @param invalidTokenRegistry a registry of known-invalid tokens to check and update; may be {@code null}
+     */
+    BulkNotificationSender(final NotificationSendFunction sendFunction, final int maxOutstandingNotifications,
+                           final InvalidTokenRegistry invalidTokenRegistry) {
+        this(sendFunction, maxOutstandingNotifications, invalidTokenRegistry, null);
+    }
+
+    /**
+     * Constructs a new bulk sender that sends notifications via the given function, skips tokens recorded as invalid
+     * in the given registry, and retries notifications that fail for temporary reasons via the given retrier.
+     * Notifications waiting to be retried don't count toward any limit on the number of notifications in flight, but no
+     * more than that many notifications may wait to be retried at once; past that, notifications wait to be retried
+     * without giving up their place.
+     *
+     * @param sendFunction the function with which to send individual notifications
+     * @param maxOutstandingNotifications the maximum number of notifications that may be in flight at any one time
+     * @param invalidTokenRegistry a registry of known-invalid tokens to check and update; may be {@code null}
+     * @param notificationRetrier a retrier with which to retry notifications; may be {@code null}, in which case
+     * notifications are never retried
+     */
+    BulkNotificationSender(final NotificationSendFunction sendFunction, final int maxOutstandingNotifications,
+                           final InvalidTokenRegistry invalidTokenRegistry, final NotificationRetrier notificationRetrier) {
+        if (maxOutstandingNotifications < 1) {
+            throw new IllegalArgumentException("Maximum number of outstanding notifications must be positive.");
+        }
+
+        this.sendFunction = Objects.requireNonNull(sendFunction, "Send function must not be null.");
+        this.maxOutstandingNotifications = maxOutstandingNotifications;
+        this.invalidTokenRegistry = invalidTokenRegistry;
+        this.notificationRetrier = notificationRetrier;
+    }
+
+    /**
+     * Sends a copy of the given template notification to each device token read from the given token source. Token
+     * sources contain one device token per line; blank lines and lines that begin with {@code #} are ignored. A line
+     * may optionally name a topic after its token (separated by whitespace or a comma), in which case the notification
+     * for that line is sent to the given topic instead of the template's topic. The token, if any, in the template
+     * notification is ignored, and tokens that have already been sent to the same topic by this sender are skipped.
+     * This method blocks until every notification has been
+     * either acknowledged by the server or has failed, or until this sender is cancelled.
+     *
+     * @param tokenReader a reader from which to read device tokens
+     * @param templateNotification the notification to send to each device token
+     * @param listener a listener to notify as each notification is accepted, rejected, or fails
+     *
+     * @throws IOException if the token source could not be read for any reason
+     * @throws InterruptedException if interrupted while waiting for notifications to be acknowledged
+     */
+    void sendNotifications(final BufferedReader tokenReader, final ApnsPushNotification templateNotification, final BulkSendListener listener) throws IOException, InterruptedException {
+        final Semaphore outstandingNotificationSemaphore = new Semaphore(maxOutstandingNotifications);
+        final Semaphore retrySemaphore = new Semaphore(maxOutstandingNotifications);
+
+        // Released each time a notification finishes so the reading thread knows to try deferred notifications again
+        final Semaphore completionSignal = new Semaphore(0);
+
+        // A topic that's being throttled shouldn't hold up notifications for other topics, so rather than waiting for
+        // a busy topic's limiter, we set its notifications aside (in order) and keep reading. Only accessed from the
+        // thread reading tokens.
+        final Map<String, Queue<ApnsPushNotification>> deferredNotificationsByTopic = new LinkedHashMap<>();
+        int deferredNotifications = 0;
+
+        try {
+            for (String line = tokenReader.readLine(); line != null && !cancelled; line = tokenReader.readLine()) {
+                final String trimmedLine = line.trim();
+
+                if (trimmedLine.isEmpty() || trimmedLine.startsWith("#")) {
+                    continue;
+                }
+
+                final Matcher tokenAndTopicMatcher = TOKEN_AND_TOPIC_PATTERN.matcher(trimmedLine);
+                final boolean hasTopic = tokenAndTopicMatcher.matches();
+
+                final String token = hasTopic ? tokenAndTopicMatcher.group(1) : trimmedLine;
+                final String topic = hasTopic ? tokenAndTopicMatcher.group(2) : templateNotification.getTopic();
+
+                if (!sentTokensByTopic.computeIfAbsent(topic, ignored -> new DeviceTokenSet()).add(token)) {
+                    duplicateTokens.incrementAndGet();
+                    continue;
+                }
+
+                final Optional<Instant> invalidationTimestamp = invalidTokenRegistry != null ?
+                        invalidTokenRegistry.getInvalidationTimestamp(token) : Optional.empty();
+
+                if (invalidationTimestamp.isPresent()) {
+                    invalidTokens.incrementAndGet();
+                    listener.handleInvalidTokenSkipped(buildNotification(templateNotification, token, topic),
+                            invalidationTimestamp.get());
+
+                    continue;
+                }
+
+                // Don't turn the token back into a string until we know we're actually going to send it
+                final ApnsPushNotification pushNotification = buildNotification(templateNotification, token, topic);
+
+                if (completionSignal.tryAcquire()) {
+                    completionSignal.drainPermits();
+                    deferredNotifications -= sendDeferredNotifications(deferredNotificationsByTopic,
+                            outstandingNotificationSemaphore, retrySemaphore, completionSignal, listener);
+                }
+
+                // Notifications for a topic that already has deferred notifications wait their turn
+                if (deferredNotificationsByTopic.containsKey(topic) ||
+                        !trySendNotification(pushNotification, outstandingNotificationSemaphore, retrySemaphore,
+                                completionSignal, listener)) {
+
+                    deferredNotificationsByTopic.computeIfAbsent(topic, ignored -> new ArrayDeque<>()).add(pushNotification);
+                    deferredNotifications += 1;
+                }
+
+                // We can't read ahead forever, though
+                while (deferredNotifications >= maxOutstandingNotifications && !cancelled) {
+                    completionSignal.acquire();
+                    completionSignal.drainPermits();
+
+                    deferredNotifications -= sendDeferredNotifications(deferredNotificationsByTopic,
+                            outstandingNotificationSemaphore, retrySemaphore, completionSignal, listener);
+                }
+            }
+
+            while (deferredNotifications > 0 && !cancelled) {
+                completionSignal.acquire();
+                completionSignal.drainPermits();
+
+                deferredNotifications -= sendDeferredNotifications(deferredNotificationsByTopic,
+                        outstandingNotificationSemaphore, retrySemaphore, completionSignal, listener);
+            }
+        } finally {
+            // If we were cancelled (or couldn't keep reading), anything still set aside will never be sent; make sure
+            // it's still accounted for
+            for (final Queue<ApnsPushNotification> notifications : deferredNotificationsByTopic.values()) {
+                for (final ApnsPushNotification pushNotification : notifications) {
+                    failedNotifications.incrementAndGet();
+                    listener.handleSendFailure(pushNotification,
+                            new CancellationException("Bulk send stopped before notification could be sent"));
+                }
+            }
+
+            deferredNotificationsByTopic.clear();
+
+            // Wait for everything that's already in flight (or waiting to be retried) to finish before returning
+            outstandingNotificationSemaphore.acquireUninterruptibly(maxOutstandingNotifications);
+            retrySemaphore.acquireUninterruptibly(maxOutstandingNotifications);
+        }
+    }
+
+    /**
+     * Sends as many deferred notifications as topic and overall limits allow, unless this sender has been cancelled.
+     *
+     * @return the number of deferred notifications sent (or that failed immediately)
+     */
+    private int sendDeferredNotifications(final Map<String, Queue<ApnsPushNotification>> deferredNotificationsByTopic,
+                                          final Semaphore outstandingNotificationSemaphore,
+                                          final Semaphore retrySemaphore,
+                                          final Semaphore completionSignal,
+                                          final BulkSendListener listener) {
+        // Once we've been cancelled, deferred notifications stay put and get reported as failures on the way out
+        if (cancelled) {
+            return 0;
+        }
+
+        int sentDeferredNotifications = 0;
+
+        final Iterator<Queue<ApnsPushNotification>> iterator = deferredNotificationsByTopic.values().iterator();
+
+        while (iterator.hasNext()) {
+            final Queue<ApnsPushNotification> deferredNotifications = iterator.next();
+
+            while (!deferredNotifications.isEmpty() && trySendNotification(deferredNotifications.peek(),
+                    outstandingNotificationSemaphore, retrySemaphore, completionSignal, listener)) {
+
+                deferredNotifications.remove();
+                sentDeferredNotifications += 1;
+            }
+
+            if (deferredNotifications.isEmpty()) {
+                iterator.remove();
+            }
+        }
+
+        return sentDeferredNotifications;
+    }
+
+    /**
+     * Sends the given notification if both its topic's limiter and the overall limit allow it.
+     *
+     * @return {@code true} if the notification was sent (or failed immediately) or {@code false} if it must wait
+     */
+    private boolean trySendNotification(final ApnsPushNotification pushNotification,
+                                        final Semaphore outstandingNotificationSemaphore,
+                                        final Semaphore retrySemaphore,
+                                        final Semaphore completionSignal,
+                                        final BulkSendListener listener) {
+
+        final AdaptiveConcurrencyLimiter concurrencyLimiter = concurrencyLimitersByTopic.computeIfAbsent(pushNotification.getTopic(),
+                ignored -> new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, 1, maxOutstandingNotifications));
+
+        if (!outstandingNotificationSemaphore.tryAcquire()) {
+            return false;
+        }
+
+        final long permit = concurrencyLimiter.tryAcquire();
+
+        if (permit == AdaptiveConcurrencyLimiter.NO_PERMIT) {
+            outstandingNotificationSemaphore.release();
+            return false;
+        }
+
+        sentNotifications.incrementAndGet();
+        listener.handlePushNotificationSent(pushNotification);
+
+        // Report each attempt (including retries) to the limiter, but hold on to the permit until the notification
+        // reaches its final outcome or steps aside to wait for a retry
+        final NotificationSendFunction attemptFunction = notification -> {
+            final long start = System.nanoTime();
+            final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> attemptFuture =
+                    sendFunction.sendNotification(notification);
+
+            attemptFuture.whenComplete((response, cause) -> {
+                // Failures to send at all (a connection that was closed or couldn't be opened, for example) are often
+                // a sign that we're pushing too hard
+                if (response == null || isThrottled(response)) {
+                    concurrencyLimiter.recordCongestion(permit);
+                } else {
+                    concurrencyLimiter.recordSuccess(permit, System.nanoTime() - start);
+                }
+            });
+
+            return attemptFuture;
+        };
+
+        // Set once the notification trades its place in the overall limit for a place in line to be retried
+        final AtomicBoolean holdingRetryPermit = new AtomicBoolean(false);
+
+        final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> sendFuture;
+
+        try {
+            sendFuture = notificationRetrier != null ?
+                    notificationRetrier.send(attemptFunction, pushNotification, new NotificationRetrier.RetryHandler() {
+
+                        @Override
+                        public boolean shouldScheduleRetry() {
+                            if (cancelled) {
+                                return false;
+                            }
+
+                            // A notification waiting out its backoff isn't in flight, so let something else (for this
+                            // topic or any other) go out in its place
+                            if (!holdingRetryPermit.get() && retrySemaphore.tryAcquire()) {
+                                holdingRetryPermit.set(true);
+
+                                concurrencyLimiter.release(permit);
+                                outstandingNotificationSemaphore.release();
+                                completionSignal.release();
+                            }
+
+                            return true;
+                        }
+
+                        @Override
+                        public boolean shouldAttemptRetry() {
+                            return !cancelled;
+                        }
+                    }) :
+                    attemptFunction.sendNotification(pushNotification);
+        } catch (final Exception e) {
+            concurrencyLimiter.release(permit);
+            outstandingNotificationSemaphore.release();
+            completionSignal.release();
+
+            failedNotifications.incrementAndGet();
+            listener.handleSendFailure(pushNotification, e);
+
+            return true;
+        }
+
+        sendFuture.whenComplete((response, cause) -> {
+            try {
+                if (response != null) {
+                    if (response.isAccepted()) {
+                        acceptedNotifications.incrementAndGet();
+                    } else {
+                        rejectedNotifications.incrementAndGet();
+                        recordInvalidToken(response);
+                    }
+
+                    listener.handlePushNotificationResponse(response);
+                } else {
+                    failedNotifications.incrementAndGet();
+                    listener.handleSendFailure(pushNotification, cause);
+                }
+            } finally {
+                if (holdingRetryPermit.get()) {
+                    retrySemaphore.release();
+                } else {
+                    concurrencyLimiter.release(permit);
+                    outstandingNotificationSemaphore.release();
+                }
+
+                completionSignal.release();
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Indicates whether the given response means the server wants us to slow down.
+     *
+     * @param response the response to check
+     *
+     * @return {@code true} if the server throttled the notification or is temporarily unavailable
+     */
+    static boolean isThrottled(final PushNotificationResponse<?> response) {
+        return response.getStatusCode() == 429 || response.getStatusCode() == 503 ||
+                "TooManyRequests".equals(response.getRejectionReason().orElse(null));
+    }
+
+    private void recordInvalidToken(final PushNotificationResponse<ApnsPushNotification> response) {
+        if (invalidTokenRegistry != null) {
+            response.getTokenInvalidationTimestamp().ifPresent(invalidationTimestamp -> {
+                try {
+                    invalidTokenRegistry.recordInvalidToken(response.getPushNotification().getToken(), invalidationTimestamp);
+                } catch (final IOException e) {
+                    // Not the end of the world; we'll just try the token again next time
+                }
+            });
+        }
+    }
+
+    static ApnsPushNotification buildNotification(final ApnsPushNotification templateNotification, final String token) {
+        return buildNotification(templateNotification, token, templateNotification.getTopic());
+    }
+
+    static ApnsPushNotification buildNotification(final ApnsPushNotification templateNotification, final String token, final String topic) {
+        return new SimpleApnsPushNotification(TokenUtil.sanitizeTokenString(token),
+                topic,
+                templateNotification.getPayload(),
+                templateNotification.getExpiration(),
+                templateNotification.getPriority(),
+                templateNotification.getPushType(),
+                StringUtils.trimToNull(templateNotification.getCollapseId()));
+    }
+
+    /**
+     * Stops reading new device tokens and stops scheduling retries. Notifications already in flight will still be
+     * reported to the listener, and notifications that were set aside to wait for a busy topic will be reported as
+     * failures.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Indicates whether this sender has been cancelled.
+     *
+     * @return {@code true} if this sender has been cancelled or {@code false} otherwise
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    long getSentNotifications() {
+        return sentNotifications.get();
+    }
+
+    long getAcceptedNotifications() {
+        return acceptedNotifications.get();
+    }
+
+    long getRejectedNotifications() {
+        return rejectedNotifications.get();
+    }
+
+    long getFailedNotifications() {
+        return failedNotifications.get();
+    }
+
+    /**
+     * Returns the number of tokens skipped because a notification had already been sent to the same token and topic.
+     *
+     * @return the number of duplicate tokens skipped by this sender
+     */
+    long getDuplicateTokens() {
+        return duplicateTokens.get();
+    }
+
+    /**
+     * Returns the number of tokens skipped because they were recorded as invalid in this sender's invalid token
+     * registry.
+     *
+     * @return the number of known-invalid tokens skipped by this sender
+     */
+    long getInvalidTokens() {
+        return invalidTokens.get();
+    }
+
+    /**
+     * Returns the current concurrency limit for each topic to which this sender has sent notifications.
+     *
+     * @return a map of topics to the current maximum number of notifications in flight for each topic
+     */
+    Map<String, Integer> getConcurrencyLimits() {
+        final Map<String, Integer> concurrencyLimits = new TreeMap<>();
+        concurrencyLimitersByTopic.forEach((topic, limiter) -> concurrencyLimits.put(topic, limiter.getLimit()));
+
+        return concurrencyLimits;
+    }
+
+    /**
+     * Returns the current overall concurrency limit for this sender, which is the sum of the limits for each topic,
+     * but never more than the sender's fixed maximum.
+     *
+     * @return the current maximum number of notifications in flight across all topics
+     */
+    int getConcurrencyLimit() {
+        int concurrencyLimit = 0;
+
+        for (final AdaptiveConcurrencyLimiter limiter : concurrencyLimitersByTopic.values()) {
+            concurrencyLimit += limiter.getLimit();
+        }
+
+        return Math.min(concurrencyLimit, maxOutstandingNotifications);
+    }
+}
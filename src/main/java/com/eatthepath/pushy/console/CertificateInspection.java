@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The result of inspecting a PKCS#12 key store for APNs client credentials. An inspection captures everything the
+ * console needs to know about a certificate (the private key entry itself, the topics it may send to, its validity
+ * period, and the APNs environment for which it was issued) so the key store only needs to be loaded and decrypted
+ * once.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ *
+ * @see CertificateUtil#inspect(java.io.File, String)
+ */
+class CertificateInspection {
+
+    private final KeyStore.PrivateKeyEntry privateKeyEntry;
+    private final SortedSet<String> topics;
+    private final Environment environment;
+
+    /**
+     * An APNs environment for which a client certificate may be issued.
+     */
+    enum Environment {
+        /**
+         * Indicates that a certificate may only be used with the APNs development server.
+         */
+        DEVELOPMENT,
+
+        /**
+         * Indicates that a certificate may only be used with the APNs production server.
+         */
+        PRODUCTION,
+
+        /**
+         * Indicates that a certificate may be used with both the APNs development and production servers.
+         */
+        UNIVERSAL
+    }
+
+    CertificateInspection(final KeyStore.PrivateKeyEntry privateKeyEntry, final Iterable<String> topics, final Environment environment) {
+        this.privateKeyEntry = Objects.requireNonNull(privateKeyEntry);
+        this.environment = Objects.requireNonNull(environment);
+
+        final SortedSet<String> sortedTopics = new TreeSet<>();
+        topics.forEach(sortedTopics::add);
+
+        this.topics = Collections.unmodifiableSortedSet(sortedTopics);
+    }
+
+    KeyStore.PrivateKeyEntry getPrivateKeyEntry() {
+        return privateKeyEntry;
+    }
+
+    X509Certificate getCertificate() {
+        return (X509Certificate) privateKeyEntry.getCertificate();
+    }
+
+    /**
+     * Returns the APNs topics named by the inspected certificate in their natural order.
+     *
+     * @return the APNs topics named by the inspected certificate
+     */
+    SortedSet<String> getTopics() {
+        return topics;
+    }
+
+    Instant getNotBefore() {
+        return getCertificate().getNotBefore().toInstant();
+    }
+
+    Instant getNotAfter() {
+        return getCertificate().getNotAfter().toInstant();
+    }
+
+    /**
+     * Indicates whether the inspected certificate is within its validity period at the given instant.
+     *
+     * @param instant the instant at which to check the certificate's validity
+     *
+     * @return {@code true} if the certificate is valid at the given instant or {@code false} otherwise
+     */
+    boolean isValidAt(final Instant instant) {
+        return !instant.isBefore(getNotBefore()) && !instant.isAfter(getNotAfter());
+    }
+
+    Environment getEnvironment() {
+        return environment;
+    }
+}
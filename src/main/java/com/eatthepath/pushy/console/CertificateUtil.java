@@ -30,6 +30,7 @@ import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -43,6 +44,8 @@ import java.util.regex.Pattern;
 
 class CertificateUtil {
     private static final String TOPIC_OID = "1.2.840.113635.100.6.3.6";
+    private static final String DEVELOPMENT_ENVIRONMENT_OID = "1.2.840.113635.100.6.3.1";
+    private static final String PRODUCTION_ENVIRONMENT_OID = "1.2.840.113635.100.6.3.2";
 
     // Borrowed with gratitude from https://github.com/aerogear/aerogear-unifiedpush-server
     private static final Pattern UID_PATTERN = Pattern.compile(".*UID=([^,]+).*");
@@ -62,6 +65,9 @@ class CertificateUtil {
      *     identifies at least one APNs topic.</li>
      * </ol>
      *
+     * <p>Callers that also need the certificate's topics, validity period, or environment should call
+     * {@link #inspect(File, String)} instead to avoid loading the key store more than once.</p>
+     *
      * @param p12File the file from which to load a private key entry
      * @param password the password to unlock the given file
      *
@@ -72,11 +78,69 @@ class CertificateUtil {
      * @throws IOException if the given file could not be read for any reason
      */
     static KeyStore.PrivateKeyEntry getFirstPrivateKeyEntry(final File p12File, final String password) throws KeyStoreException, IOException {
+        return inspect(p12File, password).getPrivateKeyEntry();
+    }
+
+    /**
+     * Returns a private key entry from the PKCS#12 key store in the given input stream that appears to contain valid
+     * APNs client credentials.
+     *
+     * @param p12InputStream an input stream from which to read a PKCS#12 key store
+     * @param password the password to unlock the given key store
+     *
+     * @return A private key entry from the given key store that is valid for use as APNs client credentials
+     *
+     * @throws KeyStoreException if a valid private key entry could not be extracted from the given key store for any
+     * reason
+     * @throws IOException if the given input stream could not be read for any reason
+     *
+     * @see #getFirstPrivateKeyEntry(File, String)
+     */
+    static KeyStore.PrivateKeyEntry getFirstPrivateKeyEntry(final InputStream p12InputStream, final String password) throws KeyStoreException, IOException {
+        return inspect(p12InputStream, password).getPrivateKeyEntry();
+    }
+
+    /**
+     * Loads the given PKCS#12 file exactly once and inspects the first private key entry that appears to contain valid
+     * APNs client credentials (as described in {@link #getFirstPrivateKeyEntry(File, String)}).
+     *
+     * @param p12File the file to inspect
+     * @param password the password to unlock the given file
+     *
+     * @return the private key entry, topics, validity period, and environment of the first valid APNs client
+     * certificate in the given file
+     *
+     * @throws KeyStoreException if a valid private key entry could not be extracted from the given file for any reason
+     * @throws IOException if the given file could not be read for any reason
+     */
+    static CertificateInspection inspect(final File p12File, final String password) throws KeyStoreException, IOException {
+        try (final FileInputStream certificateInputStream = new FileInputStream(p12File)) {
+            return inspect(certificateInputStream, password);
+        }
+    }
+
+    /**
+     * Loads the PKCS#12 key store in the given input stream and inspects the first private key entry that appears to
+     * contain valid APNs client credentials.
+     *
+     * @param p12InputStream an input stream from which to read a PKCS#12 key store
+     * @param password the password to unlock the given key store
+     *
+     * @return the private key entry, topics, validity period, and environment of the first valid APNs client
+     * certificate in the given key store
+     *
+     * @throws KeyStoreException if a valid private key entry could not be extracted from the given key store for any
+     * reason
+     * @throws IOException if the given input stream could not be read for any reason
+     *
+     * @see #inspect(File, String)
+     */
+    static CertificateInspection inspect(final InputStream p12InputStream, final String password) throws KeyStoreException, IOException {
         final char[] passwordCharacters = password.toCharArray();
         final KeyStore keyStore = KeyStore.getInstance("PKCS12");
 
-        try (final FileInputStream certificateInputStream = new FileInputStream(p12File)) {
-            keyStore.load(certificateInputStream, passwordCharacters);
+        try {
+            keyStore.load(p12InputStream, passwordCharacters);
         } catch (NoSuchAlgorithmException | CertificateException e) {
             throw new KeyStoreException(e);
         }
@@ -102,18 +166,20 @@ class CertificateUtil {
             if (entry instanceof KeyStore.PrivateKeyEntry) {
                 final KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) entry;
 
-                final String subjectName =
-                        ((X509Certificate) privateKeyEntry.getCertificate()).getSubjectX500Principal().getName();
+                final X509Certificate certificate = (X509Certificate) privateKeyEntry.getCertificate();
+                final String subjectName = certificate.getSubjectX500Principal().getName();
 
                 final Matcher commonNameMatcher = COMMON_NAME_PATTERN.matcher(subjectName);
 
                 while (commonNameMatcher.find()) {
                     if (APNS_COMMON_NAMES.contains(commonNameMatcher.group(1))) {
                         // The certificate has a common name that we'd expect of APNs client credentials
+                        final Set<String> topics = extractApnsTopicsFromCertificate(certificate);
 
-                        if (!extractApnsTopicsFromCertificate(privateKeyEntry.getCertificate()).isEmpty()) {
+                        if (!topics.isEmpty()) {
                             // …and it appears to name at least one APNs topic.
-                            return privateKeyEntry;
+                            return new CertificateInspection(privateKeyEntry, topics,
+                                    getEnvironment(certificate, commonNameMatcher.group(1)));
                         }
                     }
                 }
@@ -137,8 +203,33 @@ class CertificateUtil {
      * @throws IOException if the given file could not be read for any reason
      */
     static Set<String> extractApnsTopicsFromCertificate(final File certificateFile, final String password) throws IOException, KeyStoreException {
-        final KeyStore.PrivateKeyEntry privateKeyEntry = getFirstPrivateKeyEntry(certificateFile, password);
-        return extractApnsTopicsFromCertificate(privateKeyEntry.getCertificate());
+        return inspect(certificateFile, password).getTopics();
+    }
+
+    private static CertificateInspection.Environment getEnvironment(final X509Certificate certificate, final String commonName) {
+        final boolean development = certificate.getExtensionValue(DEVELOPMENT_ENVIRONMENT_OID) != null;
+        final boolean production = certificate.getExtensionValue(PRODUCTION_ENVIRONMENT_OID) != null;
+
+        if (development && production) {
+            return CertificateInspection.Environment.UNIVERSAL;
+        } else if (development) {
+            return CertificateInspection.Environment.DEVELOPMENT;
+        } else if (production) {
+            return CertificateInspection.Environment.PRODUCTION;
+        }
+
+        // Fall back to the common name for certificates that don't carry environment extensions
+        switch (commonName) {
+            case "Apple Development IOS Push Services":
+                return CertificateInspection.Environment.DEVELOPMENT;
+
+            case "Apple Production IOS Push Services":
+            case "Pass Type ID":
+                return CertificateInspection.Environment.PRODUCTION;
+
+            default:
+                return CertificateInspection.Environment.UNIVERSAL;
+        }
     }
 
     /**
@@ -22,7 +22,6 @@
 
 package com.eatthepath.pushy.console;
 
-import com.eatthepath.json.JsonSerializer;
 import com.eatthepath.pushy.apns.ApnsClientBuilder;
 import com.eatthepath.pushy.apns.ApnsPushNotification;
 import com.eatthepath.pushy.apns.DeliveryPriority;
@@ -30,16 +29,18 @@ import com.eatthepath.pushy.apns.PushType;
 import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
 import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
 import com.eatthepath.pushy.apns.util.TokenUtil;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.binding.ObjectBinding;
 import javafx.beans.binding.StringBinding;
 import javafx.beans.property.*;
+import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.css.PseudoClass;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -52,6 +53,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -59,6 +61,8 @@ import java.text.MessageFormat;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 import java.util.prefs.Preferences;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -90,20 +94,44 @@ public class ComposeNotificationController {
     @FXML ComboBox<DeliveryPriority> deliveryPriorityComboBox;
     @FXML MenuButton recentPayloadsMenuButton;
     @FXML TextArea payloadTextArea;
+    @FXML Label payloadValidationLabel;
 
     private final ReadOnlyStringWrapper apnsServerWrapper = new ReadOnlyStringWrapper();
     private final ReadOnlyIntegerWrapper apnsPortWrapper = new ReadOnlyIntegerWrapper();
 
     private final ObjectProperty<Pair<File, String>> credentialsFileAndPasswordProperty = new SimpleObjectProperty<>();
     private final ReadOnlyObjectWrapper<ApnsCredentials> apnsCredentialsWrapper = new ReadOnlyObjectWrapper<>();
+    private final ApnsCredentialsCache apnsCredentialsCache = new ApnsCredentialsCache();
+
+    private final IntegerProperty credentialsRevisionProperty = new SimpleIntegerProperty();
+    private CredentialFileWatcher credentialFileWatcher;
+    private BiConsumer<ApnsCredentials, ApnsCredentials> credentialsReloadedHandler = (previous, reloaded) -> {};
+
+    private final ExecutorService backgroundExecutorService = ExecutorUtil.newThreadPerTaskExecutor("compose-notification");
 
     private final ReadOnlyObjectWrapper<ApnsPushNotification> pushNotificationWrapper = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlySetWrapper<PayloadValidator.Problem> pushNotificationProblemsWrapper =
+            new ReadOnlySetWrapper<>(FXCollections.observableSet(EnumSet.noneOf(PayloadValidator.Problem.class)));
+
+    private final PayloadValidator payloadValidator = new PayloadValidator();
+    private final PauseTransition pushNotificationUpdatePause = new PauseTransition(PUSH_NOTIFICATION_UPDATE_DELAY);
+
+    // Both of these are only ever touched on the JavaFX application thread
+    private long pushNotificationFieldRevision = 0;
+    private long pushNotificationRevision = 0;
 
     private final ListProperty<String> recentTopicsProperty = new SimpleListProperty<>();
     private final ObservableList<String> recentPayloads = FXCollections.observableArrayList();
 
     private final BooleanProperty requiredFieldGroupHighlightedProperty = new SimpleBooleanProperty();
 
+    private final ValueHistory deviceTokenHistory;
+    private final ValueHistory topicHistory;
+    private final ValueHistory collapseIdHistory;
+
+    private final BufferedPreferences bufferedPreferences = new BufferedPreferences(
+            Preferences.userNodeForPackage(ComposeNotificationController.class), BufferedPreferences.DEFAULT_FLUSH_DELAY_MILLIS);
+
     private boolean saveComboBoxValues = true;
 
     private static final String MOST_RECENT_SERVER_KEY = "mostRecentServer";
@@ -118,6 +146,9 @@ public class ComposeNotificationController {
     private static final String RECENT_PAYLOADS_KEY = "recentPayloads";
 
     private static final int MAX_COMBO_BOX_ITEMS = 10;
+    private static final int MAX_COMPLETIONS = 10;
+
+    private static final javafx.util.Duration PUSH_NOTIFICATION_UPDATE_DELAY = javafx.util.Duration.millis(150);
 
     private static final Pattern APNS_SIGNING_KEY_WITH_ID_PATTERN =
             Pattern.compile("^APNsAuthKey_([A-Z0-9]{10}).p8$", Pattern.CASE_INSENSITIVE);
@@ -127,8 +158,25 @@ public class ComposeNotificationController {
     private static final String HIGHLIGHT_EMPTY_FIELDS_STYLESHEET =
             ComposeNotificationController.class.getResource("highlight-blank-fields.css").toExternalForm();
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private static final TypeReference<List<String>> STRING_LIST_TYPE_REFERENCE = new TypeReference<>() {};
+    /**
+     * Constructs a new compose notification controller that keeps its histories in the default data directory.
+     */
+    public ComposeNotificationController() {
+        this(PushyConsoleApplication.DEFAULT_DATA_DIRECTORY);
+    }
+
+    /**
+     * Constructs a new compose notification controller that keeps its histories in the given data directory.
+     *
+     * @param dataDirectory the directory in which to keep histories of recently-used values
+     */
+    ComposeNotificationController(final Path dataDirectory) {
+        final Path historyDirectory = dataDirectory.resolve("history");
+
+        deviceTokenHistory = new ValueHistory(historyDirectory.resolve("device-tokens.txt"));
+        topicHistory = new ValueHistory(historyDirectory.resolve("topics.txt"));
+        collapseIdHistory = new ValueHistory(historyDirectory.resolve("collapse-ids.txt"));
+    }
 
     /**
      * Initializes the controller and its various controls and bindings.
@@ -193,9 +241,12 @@ public class ComposeNotificationController {
             notificationTypeComboBox.setValue(PushType.ALERT);
         }
 
-        recentTopicsProperty.set(FXCollections.observableArrayList(loadPreferencesList(RECENT_TOPICS_KEY)));
+        final Map<String, List<String>> recentValues = bufferedPreferences.getLists(RECENT_TOPICS_KEY, RECENT_KEY_IDS_KEY,
+                RECENT_TEAM_IDS_KEY, RECENT_TOKENS_KEY, RECENT_COLLAPSE_IDS_KEY, RECENT_PAYLOADS_KEY);
+
+        recentTopicsProperty.set(FXCollections.observableArrayList(recentValues.get(RECENT_TOPICS_KEY)));
         recentTopicsProperty.addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_TOPICS_KEY, change.getList()));
+                bufferedPreferences.putList(RECENT_TOPICS_KEY, change.getList()));
 
         topicComboBox.itemsProperty().bind(recentTopicsProperty);
 
@@ -204,8 +255,9 @@ public class ComposeNotificationController {
             if (newValue != null && newValue.getValue() != null) {
 
                 try {
-                    final List<String> topics = new ArrayList<>(CertificateUtil.extractApnsTopicsFromCertificate(newValue.getKey(), newValue.getValue()));
-                    topics.sort(Comparator.naturalOrder());
+                    // Inspections come back in topic order already
+                    final List<String> topics = new ArrayList<>(
+                            apnsCredentialsCache.getCertificateInspection(newValue.getKey(), newValue.getValue()).getTopics());
 
                     // When working with certificates, we'll always have a fixed list of topics from the certificate and
                     // should not allow freeform editing.
@@ -248,9 +300,9 @@ public class ComposeNotificationController {
             }
         });
 
-        keyIdComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_KEY_IDS_KEY)));
+        keyIdComboBox.setItems(FXCollections.observableArrayList(recentValues.get(RECENT_KEY_IDS_KEY)));
         keyIdComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_KEY_IDS_KEY, change.getList()));
+                bufferedPreferences.putList(RECENT_KEY_IDS_KEY, change.getList()));
 
         teamIdLabel.disableProperty().bind(teamIdComboBox.disabledProperty());
 
@@ -261,17 +313,17 @@ public class ComposeNotificationController {
             }
         });
 
-        teamIdComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_TEAM_IDS_KEY)));
+        teamIdComboBox.setItems(FXCollections.observableArrayList(recentValues.get(RECENT_TEAM_IDS_KEY)));
         teamIdComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_TEAM_IDS_KEY, change.getList()));
+                bufferedPreferences.putList(RECENT_TEAM_IDS_KEY, change.getList()));
 
-        deviceTokenComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_TOKENS_KEY)));
+        deviceTokenComboBox.setItems(FXCollections.observableArrayList(recentValues.get(RECENT_TOKENS_KEY)));
         deviceTokenComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_TOKENS_KEY, change.getList()));
+                bufferedPreferences.putList(RECENT_TOKENS_KEY, change.getList()));
 
-        collapseIdComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_COLLAPSE_IDS_KEY)));
+        collapseIdComboBox.setItems(FXCollections.observableArrayList(recentValues.get(RECENT_COLLAPSE_IDS_KEY)));
         collapseIdComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_COLLAPSE_IDS_KEY, change.getList()));
+                bufferedPreferences.putList(RECENT_COLLAPSE_IDS_KEY, change.getList()));
 
         recentPayloads.addListener((ListChangeListener<String>) change -> {
             recentPayloadsMenuButton.getItems().clear();
@@ -288,26 +340,28 @@ public class ComposeNotificationController {
             recentPayloadsMenuButton.setDisable(change.getList().isEmpty());
         });
 
-        recentPayloads.addAll(loadPreferencesList(RECENT_PAYLOADS_KEY));
+        recentPayloads.addAll(recentValues.get(RECENT_PAYLOADS_KEY));
 
-        recentPayloads.addListener((ListChangeListener<String>) change -> {
-            // Saving recent payloads in user preferences is a little different from saving other values, because
-            // payloads have a good chance of bumping up against the size limit of a user preferences value (8kB at the
-            // time of writing). The strategy here is to try to save as many recent payloads as we can, but back off
-            // one recent payload at a time if the whole list doesn't fit.
-            int end = recentPayloads.size();
+        // Payloads have a good chance of bumping up against the size limit of a user preferences value (8kB at the time
+        // of writing); buffered preferences will save as many recent payloads as will fit.
+        recentPayloads.addListener((ListChangeListener<String>) change ->
+                bufferedPreferences.putList(RECENT_PAYLOADS_KEY, change.getList()));
 
-            while (end > 0) {
+        // Combo boxes only hold a handful of recent values, but we keep a complete (and potentially very large) history
+        // of the values users have sent for type-ahead completion
+        for (final ValueHistory valueHistory : List.of(deviceTokenHistory, topicHistory, collapseIdHistory)) {
+            backgroundExecutorService.execute(() -> {
                 try {
-                    preferences.put(RECENT_PAYLOADS_KEY, JsonSerializer.writeJsonTextAsString(recentPayloads.subList(0, end)));
-                    break;
-                } catch (final IllegalArgumentException e) {
-                    // The list of recent payloads won't fit in a user preferences slot; shave one recent payload from
-                    // the end of the list and try again.
-                    end -= 1;
+                    valueHistory.load();
+                } catch (final IOException e) {
+                    // Completion won't be available, but nothing else depends on the history
                 }
-            }
-        });
+            });
+        }
+
+        new TypeAheadCompletion(deviceTokenComboBox, prefix -> getCompletions(deviceTokenHistory, prefix));
+        new TypeAheadCompletion(topicComboBox, prefix -> getCompletions(topicHistory, prefix));
+        new TypeAheadCompletion(collapseIdComboBox, prefix -> getCompletions(collapseIdHistory, prefix));
 
         addEmptyPseudoClassListener(keyIdComboBox, teamIdComboBox, topicComboBox, deviceTokenComboBox);
         addEmptyPseudoClassListener(apnsCredentialFileTextField, payloadTextArea);
@@ -326,13 +380,41 @@ public class ComposeNotificationController {
         apnsServerWrapper.bind(apnsServerComboBox.valueProperty());
         apnsPortWrapper.bind(apnsPortComboBox.valueProperty());
 
+        try {
+            credentialFileWatcher = new CredentialFileWatcher(file -> Platform.runLater(() -> handleCredentialFileChanged(file)),
+                    CredentialFileWatcher.DEFAULT_QUIET_PERIOD_MILLIS);
+
+            credentialsFileAndPasswordProperty.addListener((observable, oldValue, newValue) -> {
+                if (oldValue != null) {
+                    credentialFileWatcher.unwatch(oldValue.getKey().toPath());
+                }
+
+                if (newValue != null) {
+                    try {
+                        credentialFileWatcher.watch(newValue.getKey().toPath());
+                    } catch (final IOException e) {
+                        // Not being able to watch the file is unfortunate, but we can still use the credentials
+                    }
+                }
+            });
+        } catch (final IOException e) {
+            // Without a watch service, credentials just won't reload automatically when their files change
+            credentialFileWatcher = null;
+        }
+
         apnsCredentialsWrapper.bind(new ObjectBinding<>() {
             {
                 super.bind(credentialsFileAndPasswordProperty,
                         keyIdComboBox.valueProperty(),
-                        teamIdComboBox.valueProperty());
+                        teamIdComboBox.valueProperty(),
+                        credentialsRevisionProperty);
             }
 
+            // Credential files may be rewritten underneath us at any time (that's what hot reloading is for), so a
+            // recomputation may catch a file halfway through being rotated; when that happens, we keep using the last
+            // credentials we could load and wait for the file watcher to tell us the file has settled down.
+            private ApnsCredentials lastLoadedCredentials;
+
             @Override
             protected ApnsCredentials computeValue() {
                 final ApnsCredentials credentials;
@@ -342,10 +424,9 @@ public class ComposeNotificationController {
                 if (credentialsFileAndPassword != null) {
                     if (credentialsFileAndPassword.getValue() != null) {
                         try {
-                            credentials = new ApnsCredentials(credentialsFileAndPassword.getKey(), credentialsFileAndPassword.getValue());
+                            credentials = apnsCredentialsCache.getCertificateCredentials(credentialsFileAndPassword.getKey(), credentialsFileAndPassword.getValue());
                         } catch (final IOException | KeyStoreException e) {
-                            // This should never happen because we checked the certificate when it was first selected
-                            throw new RuntimeException(e);
+                            return lastLoadedCredentials;
                         }
                     } else {
                         final String keyId = keyIdComboBox.getValue();
@@ -355,53 +436,158 @@ public class ComposeNotificationController {
                         final boolean hasTeamId = StringUtils.isNotBlank(teamId);
 
                         try {
-                            credentials = (hasKeyId && hasTeamId) ? new ApnsCredentials(credentialsFileAndPassword.getKey(), keyId, teamId) : null;
+                            credentials = (hasKeyId && hasTeamId) ?
+                                    apnsCredentialsCache.getSigningKeyCredentials(credentialsFileAndPassword.getKey(), keyId, teamId) : null;
                         } catch (final NoSuchAlgorithmException | InvalidKeyException | IOException e) {
-                            // This should never happen because we checked the signing key when it was first selected
-                            throw new RuntimeException(e);
+                            return lastLoadedCredentials;
                         }
                     }
                 } else {
                     credentials = null;
                 }
 
+                lastLoadedCredentials = credentials;
                 return credentials;
             }
         });
 
-        pushNotificationWrapper.bind(new ObjectBinding<>() {
+        // Building and validating the push notification happens on a background thread once the user has stopped typing
+        // for a moment; anything that needs the notification right away can call flushPendingPushNotification().
+        final ChangeListener<Object> pushNotificationFieldListener =
+                (observable, oldValue, newValue) -> handlePushNotificationFieldChanged();
+
+        deviceTokenComboBox.valueProperty().addListener(pushNotificationFieldListener);
+        topicComboBox.valueProperty().addListener(pushNotificationFieldListener);
+        payloadTextArea.textProperty().addListener(pushNotificationFieldListener);
+        deliveryPriorityComboBox.valueProperty().addListener(pushNotificationFieldListener);
+        notificationTypeComboBox.valueProperty().addListener(pushNotificationFieldListener);
+        collapseIdComboBox.valueProperty().addListener(pushNotificationFieldListener);
+
+        pushNotificationUpdatePause.setOnFinished(event -> updatePushNotificationInBackground());
+        handlePushNotificationFieldChanged();
+
+        payloadValidationLabel.managedProperty().bind(payloadValidationLabel.visibleProperty());
+        payloadValidationLabel.visibleProperty().bind(Bindings.isNotEmpty(pushNotificationProblemsWrapper));
+        payloadValidationLabel.textProperty().bind(new StringBinding() {
             {
-                super.bind(deviceTokenComboBox.valueProperty(),
-                        topicComboBox.valueProperty(),
-                        payloadTextArea.textProperty(),
-                        deliveryPriorityComboBox.valueProperty(),
-                        notificationTypeComboBox.valueProperty(),
-                        collapseIdComboBox.valueProperty());
+                super.bind(pushNotificationProblemsWrapper, notificationTypeComboBox.valueProperty());
             }
 
             @Override
-            protected ApnsPushNotification computeValue() {
-                final String deviceToken = deviceTokenComboBox.getValue();
-                final String topic = topicComboBox.getValue();
-                final String payload = payloadTextArea.getText();
-                final DeliveryPriority deliveryPriority = deliveryPriorityComboBox.getValue();
-                final PushType pushType = notificationTypeComboBox.getValue();
-                final String collapseId = collapseIdComboBox.getValue();
+            protected String computeValue() {
+                return pushNotificationProblemsWrapper.stream()
+                        .map(problem -> {
+                            switch (problem) {
+                                case INVALID_JSON:
+                                    return resources.getString("payload-validation.invalid-json");
+
+                                case PAYLOAD_TOO_LARGE:
+                                    return new MessageFormat(resources.getString("payload-validation.payload-too-large"))
+                                            .format(new Object[] { PayloadValidator.getMaxPayloadSize(notificationTypeComboBox.getValue()) });
+
+                                case INVALID_TOKEN:
+                                    return resources.getString("payload-validation.invalid-token");
+
+                                default:
+                                    throw new IllegalArgumentException("Unexpected problem: " + problem);
+                            }
+                        })
+                        .collect(Collectors.joining(" "));
+            }
+        });
+    }
 
-                final ApnsPushNotification pushNotification;
+    private void handlePushNotificationFieldChanged() {
+        pushNotificationFieldRevision += 1;
+        pushNotificationUpdatePause.playFromStart();
+    }
 
-                if (StringUtils.isNoneBlank(deviceToken, topic, payload)) {
-                    final Instant expiration = Instant.now().plus(Duration.ofDays(1));
+    private void updatePushNotificationInBackground() {
+        // Capture the fields while we're still on the UI thread
+        final long revision = pushNotificationFieldRevision;
+        final PushNotificationFields pushNotificationFields = getPushNotificationFields();
 
-                    pushNotification = new SimpleApnsPushNotification(TokenUtil.sanitizeTokenString(deviceToken), topic,
-                            payload, expiration, deliveryPriority, pushType, StringUtils.trimToNull(collapseId));
-                } else {
-                    pushNotification = null;
-                }
+        final Task<Pair<ApnsPushNotification, Set<PayloadValidator.Problem>>> updatePushNotificationTask = new Task<>() {
+            @Override
+            protected Pair<ApnsPushNotification, Set<PayloadValidator.Problem>> call() {
+                return new Pair<>(pushNotificationFields.buildPushNotification(),
+                        payloadValidator.validate(pushNotificationFields.deviceToken, pushNotificationFields.payload, pushNotificationFields.pushType));
+            }
+        };
+
+        updatePushNotificationTask.setOnSucceeded(workerStateEvent -> {
+            // The user may have changed things while we were working, in which case another update is already on the way
+            if (revision == pushNotificationFieldRevision) {
+                final Set<PayloadValidator.Problem> problems = updatePushNotificationTask.getValue().getValue();
+
+                pushNotificationProblemsWrapper.retainAll(problems);
+                pushNotificationProblemsWrapper.addAll(problems);
+            }
 
-                return pushNotification;
+            // ...and we may have been beaten to the punch by a call to flushPendingPushNotification()
+            if (revision > pushNotificationRevision) {
+                pushNotificationWrapper.set(updatePushNotificationTask.getValue().getKey());
+                pushNotificationRevision = revision;
             }
         });
+
+        backgroundExecutorService.execute(updatePushNotificationTask);
+    }
+
+    private PushNotificationFields getPushNotificationFields() {
+        return new PushNotificationFields(deviceTokenComboBox.getValue(),
+                topicComboBox.getValue(),
+                payloadTextArea.getText(),
+                deliveryPriorityComboBox.getValue(),
+                notificationTypeComboBox.getValue(),
+                collapseIdComboBox.getValue());
+    }
+
+    /**
+     * Immediately rebuilds the composed push notification if the user has changed any notification fields since it
+     * was last built. Validation results for the latest changes may still arrive later.
+     */
+    void flushPendingPushNotification() {
+        if (pushNotificationRevision != pushNotificationFieldRevision) {
+            pushNotificationWrapper.set(getPushNotificationFields().buildPushNotification());
+            pushNotificationRevision = pushNotificationFieldRevision;
+        }
+    }
+
+    private static class PushNotificationFields {
+        private final String deviceToken;
+        private final String topic;
+        private final String payload;
+        private final DeliveryPriority deliveryPriority;
+        private final PushType pushType;
+        private final String collapseId;
+
+        private PushNotificationFields(final String deviceToken, final String topic, final String payload,
+                                       final DeliveryPriority deliveryPriority, final PushType pushType,
+                                       final String collapseId) {
+
+            this.deviceToken = deviceToken;
+            this.topic = topic;
+            this.payload = payload;
+            this.deliveryPriority = deliveryPriority;
+            this.pushType = pushType;
+            this.collapseId = collapseId;
+        }
+
+        private ApnsPushNotification buildPushNotification() {
+            final ApnsPushNotification pushNotification;
+
+            if (StringUtils.isNoneBlank(deviceToken, topic, payload)) {
+                final Instant expiration = Instant.now().plus(Duration.ofDays(1));
+
+                pushNotification = new SimpleApnsPushNotification(TokenUtil.sanitizeTokenString(deviceToken), topic,
+                        payload, expiration, deliveryPriority, pushType, StringUtils.trimToNull(collapseId));
+            } else {
+                pushNotification = null;
+            }
+
+            return pushNotification;
+        }
     }
 
     @SafeVarargs
@@ -456,7 +642,9 @@ public class ComposeNotificationController {
                 // Couldn't load the given file as a signing key. Try it as a P12 certificate instead.
                 final PasswordInputDialog passwordInputDialog = new PasswordInputDialog(password -> {
                     try {
-                        CertificateUtil.getFirstPrivateKeyEntry(file, password);
+                        // This happens on a background thread; if the password is right, the inspection stays in the
+                        // cache and the certificate won't need to be decrypted again once the dialog closes.
+                        apnsCredentialsCache.getCertificateInspection(file, password);
                         return true;
                     } catch (final IOException e1) {
                         return false;
@@ -464,7 +652,7 @@ public class ComposeNotificationController {
                         // We'll accept the password, but will need to alert the user that something else went wrong later
                         return true;
                     }
-                });
+                }, backgroundExecutorService);
 
                 final MessageFormat headerFormat = new MessageFormat(resources.getString("certificate-password-dialog.header"));
 
@@ -509,25 +697,105 @@ public class ComposeNotificationController {
     }
 
     void handleCertificateFileAndPasswordSelection(final File certificateFile, final String password) throws IOException, KeyStoreException {
-        // Try to actually load everything from the certificate so we can complain now if something goes wrong.
-        CertificateUtil.getFirstPrivateKeyEntry(certificateFile, password);
+        // Try to actually load everything from the certificate so we can complain now if something goes wrong. Usually,
+        // this was already done when the password was verified, and the inspection here (and in the topic listener and
+        // credentials binding) comes straight from the cache.
+        apnsCredentialsCache.getCertificateInspection(certificateFile, password);
 
         credentialsFileAndPasswordProperty.set(new Pair<>(certificateFile, password));
     }
 
+    /**
+     * Re-parses the currently-selected credentials file in the background after it has changed on disk and, if the
+     * file now contains different credentials, swaps the new credentials in. If the file can't be parsed (perhaps
+     * because it has only been partially written), the existing credentials stay in place until the next change.
+     *
+     * @param file the file that may have changed
+     */
+    private void handleCredentialFileChanged(final Path file) {
+        final Pair<File, String> credentialsFileAndPassword = credentialsFileAndPasswordProperty.get();
+
+        if (credentialsFileAndPassword == null ||
+                !credentialsFileAndPassword.getKey().toPath().toAbsolutePath().normalize().equals(file)) {
+
+            return;
+        }
+
+        final String keyId = keyIdComboBox.getValue();
+        final String teamId = teamIdComboBox.getValue();
+
+        final Task<ApnsCredentials> reloadCredentialsTask = new Task<>() {
+            @Override
+            protected ApnsCredentials call() throws Exception {
+                if (credentialsFileAndPassword.getValue() != null) {
+                    return apnsCredentialsCache.getCertificateCredentials(credentialsFileAndPassword.getKey(), credentialsFileAndPassword.getValue());
+                } else if (StringUtils.isNotBlank(keyId) && StringUtils.isNotBlank(teamId)) {
+                    return apnsCredentialsCache.getSigningKeyCredentials(credentialsFileAndPassword.getKey(), keyId, teamId);
+                }
+
+                return null;
+            }
+        };
+
+        reloadCredentialsTask.setOnSucceeded(event -> {
+            if (credentialsFileAndPasswordProperty.get() != credentialsFileAndPassword) {
+                // The user picked a different file while we were working
+                return;
+            }
+
+            final ApnsCredentials previousCredentials = apnsCredentialsWrapper.get();
+
+            // The cache has already parsed the new file, so recomputing the credentials binding is cheap
+            credentialsRevisionProperty.set(credentialsRevisionProperty.get() + 1);
+
+            final ApnsCredentials reloadedCredentials = apnsCredentialsWrapper.get();
+
+            if (previousCredentials != null && reloadedCredentials != null && previousCredentials != reloadedCredentials) {
+                credentialsReloadedHandler.accept(previousCredentials, reloadedCredentials);
+            }
+        });
+
+        backgroundExecutorService.execute(reloadCredentialsTask);
+    }
+
+    /**
+     * Sets a handler to be notified when the selected credentials are replaced because their file changed on disk. The
+     * handler is called on the JavaFX application thread with the previous and reloaded credentials, in that order.
+     *
+     * @param credentialsReloadedHandler the handler to notify when credentials are reloaded
+     */
+    void setOnCredentialsReloaded(final BiConsumer<ApnsCredentials, ApnsCredentials> credentialsReloadedHandler) {
+        this.credentialsReloadedHandler = Objects.requireNonNull(credentialsReloadedHandler);
+    }
+
+    /**
+     * Stops watching credential files, saves any unsaved preferences, and shuts down background work.
+     */
+    void stop() {
+        if (credentialFileWatcher != null) {
+            try {
+                credentialFileWatcher.close();
+            } catch (final IOException e) {
+                // We're shutting down anyway
+            }
+        }
+
+        pushNotificationUpdatePause.stop();
+        bufferedPreferences.close();
+        backgroundExecutorService.shutdown();
+    }
+
     /**
      * Handles a successful attempt to send a push notification.
      */
     public void handleNotificationSent() {
         setRequiredFieldGroupHighlighted(false);
 
-        final Preferences preferences = Preferences.userNodeForPackage(getClass());
-
         if (saveComboBoxValues) {
-            preferences.put(MOST_RECENT_SERVER_KEY, apnsServerComboBox.getValue());
-            preferences.putInt(MOST_RECENT_PORT_KEY, apnsPortComboBox.getValue());
-            preferences.put(MOST_RECENT_DELIVERY_PRIORITY_KEY, deliveryPriorityComboBox.getValue().name());
-            preferences.put(MOST_RECENT_NOTIFICATION_TYPE_KEY, notificationTypeComboBox.getValue().name());
+            bufferedPreferences.put(MOST_RECENT_SERVER_KEY, apnsServerComboBox.getValue());
+            bufferedPreferences.putInt(MOST_RECENT_PORT_KEY, apnsPortComboBox.getValue());
+            bufferedPreferences.put(MOST_RECENT_DELIVERY_PRIORITY_KEY, deliveryPriorityComboBox.getValue().name());
+            bufferedPreferences.put(MOST_RECENT_NOTIFICATION_TYPE_KEY, notificationTypeComboBox.getValue().name());
 
             if (StringUtils.isNotBlank(keyIdComboBox.getValue())) {
                 addCurrentValueToComboBoxItems(keyIdComboBox);
@@ -544,6 +812,10 @@ public class ComposeNotificationController {
                 addCurrentValueToComboBoxItems(collapseIdComboBox);
             }
 
+            addValueToHistory(topicHistory, topicComboBox.getValue());
+            addValueToHistory(deviceTokenHistory, deviceTokenComboBox.getValue());
+            addValueToHistory(collapseIdHistory, collapseIdComboBox.getValue());
+
             final String payload = payloadTextArea.getText();
 
             recentPayloads.remove(payload);
@@ -551,18 +823,20 @@ public class ComposeNotificationController {
         }
     }
 
-    private void savePreferencesList(final String key, final List<?> values) {
-        Preferences.userNodeForPackage(getClass()).put(key, JsonSerializer.writeJsonTextAsString(values));
+    private void addValueToHistory(final ValueHistory valueHistory, final String value) {
+        if (StringUtils.isNotBlank(value)) {
+            backgroundExecutorService.execute(() -> {
+                try {
+                    valueHistory.add(value.trim());
+                } catch (final IOException e) {
+                    // The value just won't be offered as a completion later
+                }
+            });
+        }
     }
 
-    private List<String> loadPreferencesList(final String key) {
-        final Preferences preferences = Preferences.userNodeForPackage(getClass());
-
-        try {
-            return OBJECT_MAPPER.readValue(preferences.get(key, "[]"), STRING_LIST_TYPE_REFERENCE);
-        } catch (JsonProcessingException e) {
-            return new ArrayList<>();
-        }
+    private static List<String> getCompletions(final ValueHistory valueHistory, final String prefix) {
+        return valueHistory.isLoaded() ? valueHistory.getValuesWithPrefix(prefix, MAX_COMPLETIONS) : Collections.emptyList();
     }
 
     private static<T> void addCurrentValueToComboBoxItems(final ComboBox<T> comboBox) {
@@ -655,6 +929,7 @@ public class ComposeNotificationController {
      * values for all required fields
      */
     public final Optional<ApnsPushNotification> getPushNotification() {
+        flushPendingPushNotification();
         return Optional.ofNullable(pushNotificationWrapper.get());
     }
 
@@ -664,11 +939,22 @@ public class ComposeNotificationController {
      * @return the property representing the user-composed push notification
      *
      * @see #getPushNotification()
+     * @see #flushPendingPushNotification()
      */
     public ReadOnlyObjectProperty<ApnsPushNotification> pushNotificationProperty() {
         return pushNotificationWrapper.getReadOnlyProperty();
     }
 
+    /**
+     * Returns a property containing any problems found with the user-composed push notification. Problems are
+     * advisory and don't prevent the notification from being sent.
+     *
+     * @return a property containing any problems found with the user-composed push notification
+     */
+    ReadOnlySetProperty<PayloadValidator.Problem> pushNotificationProblemsProperty() {
+        return pushNotificationProblemsWrapper.getReadOnlyProperty();
+    }
+
     /**
      * Sets whether fields that must be populated before sending a push notification should be highlighted.
      *
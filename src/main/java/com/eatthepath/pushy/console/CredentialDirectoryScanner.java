@@ -0,0 +1,647 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStoreException;
+import java.security.UnrecoverableKeyException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>Walks a directory tree looking for PKCS#12 files and inspects each one to produce a report of the APNs topics,
+ * environment, and validity period of the certificate it contains (or of the reason it couldn't be inspected).
+ * Decrypting a key store is expensive, so files are inspected in parallel on a fork-join pool.</p>
+ *
+ * <p>Encrypted files are unlocked with passwords from a list of password mappings, each of which pairs a glob pattern
+ * (matched against a file's path relative to the scanned directory, as by
+ * {@link FileSystem#getPathMatcher(String)}) with a password. Every matching password is tried in order, followed by
+ * an empty password.</p>
+ *
+ * <p>Scanners remember the results of previous scans. When a directory is scanned again, only files whose modification
+ * time or size has changed (or that are new) are inspected; results for unchanged files are reused, and results for
+ * files that have disappeared are dropped. Scanners are thread-safe, but scans are performed one at a time.</p>
+ *
+ * <p>When run from the command line, a scanner scans a single directory and writes one line of JSON per file to
+ * standard output.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+public class CredentialDirectoryScanner implements Closeable {
+
+    private final Path directory;
+    private final List<PasswordMapping> passwordMappings;
+    private final ForkJoinPool forkJoinPool;
+
+    private final Map<Path, Entry> entriesByPath = new HashMap<>();
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_ATTENTION_REQUIRED = 3;
+
+    static final Duration DEFAULT_EXPIRATION_WARNING_PERIOD = Duration.ofDays(30);
+
+    // Inspecting a single file takes long enough that it's worth forking for very small batches
+    private static final int INSPECTION_BATCH_SIZE = 2;
+
+    private static final String USAGE =
+            "Usage: CredentialDirectoryScanner [options]\n" +
+            "\n" +
+            "Inspects every PKCS#12 file in a directory tree and reports topics, environments, and expiration dates.\n" +
+            "\n" +
+            "  --directory <dir>         directory to scan (required)\n" +
+            "  --passwords <file>        properties file mapping glob patterns (relative to the directory) to passwords\n" +
+            "  --sort <order>            path, not-after, topic, or status (default: not-after)\n" +
+            "  --expiring-within <days>  report certificates that expire within this many days (default: " +
+            DEFAULT_EXPIRATION_WARNING_PERIOD.toDays() + ")\n" +
+            "  --threads <n>             number of files to inspect in parallel (default: number of processors)\n" +
+            "  --help                    show this message\n" +
+            "\n" +
+            "Exits with status 3 if any file is expired, expiring, not yet valid, or could not be inspected.\n";
+
+    /**
+     * A password for files whose relative paths match a glob pattern.
+     */
+    static class PasswordMapping {
+        private final String pattern;
+        private final PathMatcher pathMatcher;
+        private final String password;
+
+        PasswordMapping(final String pattern, final String password) {
+            this.pattern = Objects.requireNonNull(pattern);
+            this.pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            this.password = Objects.requireNonNull(password);
+        }
+
+        String getPattern() {
+            return pattern;
+        }
+
+        boolean matches(final Path relativePath) {
+            return pathMatcher.matches(relativePath);
+        }
+
+        /**
+         * Loads password mappings from a properties file in which each key is a glob pattern and each value is a
+         * password. Mappings are returned in the order in which they appear in the file.
+         *
+         * @param reader a reader for the properties file
+         *
+         * @return a list of password mappings
+         *
+         * @throws IOException if the properties file could not be read for any reason
+         */
+        static List<PasswordMapping> load(final Reader reader) throws IOException {
+            final List<PasswordMapping> passwordMappings = new ArrayList<>();
+            final BufferedReader bufferedReader = new BufferedReader(reader);
+
+            // Properties don't preserve order, so we split the file into logical lines ourselves and let Properties
+            // parse (and unescape) one entry at a time
+            final StringBuilder logicalLine = new StringBuilder();
+
+            for (String line = bufferedReader.readLine(); line != null; line = bufferedReader.readLine()) {
+                final String trimmedLine = line.stripLeading();
+
+                if (logicalLine.length() == 0 && (trimmedLine.isEmpty() || trimmedLine.startsWith("#") || trimmedLine.startsWith("!"))) {
+                    continue;
+                }
+
+                logicalLine.append(trimmedLine).append('\n');
+
+                if (!endsWithLineContinuation(trimmedLine)) {
+                    addPasswordMapping(logicalLine.toString(), passwordMappings);
+                    logicalLine.setLength(0);
+                }
+            }
+
+            if (logicalLine.length() > 0) {
+                addPasswordMapping(logicalLine.toString(), passwordMappings);
+            }
+
+            return passwordMappings;
+        }
+
+        private static void addPasswordMapping(final String logicalLine, final List<PasswordMapping> passwordMappings) throws IOException {
+            final Properties properties = new Properties();
+            properties.load(new StringReader(logicalLine));
+
+            properties.forEach((pattern, password) ->
+                    passwordMappings.add(new PasswordMapping((String) pattern, (String) password)));
+        }
+
+        // A line continues onto the next if it ends with an odd number of backslashes
+        private static boolean endsWithLineContinuation(final String line) {
+            int trailingBackslashes = 0;
+
+            for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+                trailingBackslashes += 1;
+            }
+
+            return trailingBackslashes % 2 == 1;
+        }
+    }
+
+    /**
+     * The status of a scanned file at a particular moment.
+     */
+    enum Status {
+        VALID,
+        EXPIRING,
+        EXPIRED,
+        NOT_YET_VALID,
+        INCORRECT_PASSWORD,
+        INVALID
+    }
+
+    /**
+     * Ways to sort the entries in a scan report.
+     */
+    enum SortOrder {
+        PATH(Comparator.comparing(Entry::getPath)),
+
+        NOT_AFTER(Comparator.comparing(Entry::getNotAfter, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Entry::getPath)),
+
+        TOPIC(Comparator.comparing((Entry entry) -> entry.getTopics().isEmpty() ? null : entry.getTopics().first(),
+                        Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Entry::getPath)),
+
+        // Files that couldn't be inspected (grouped by problem), then everything else by expiration
+        STATUS(Comparator.comparing((Entry entry) -> entry.error, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(NOT_AFTER.comparator));
+
+        private final Comparator<Entry> comparator;
+
+        SortOrder(final Comparator<Entry> comparator) {
+            this.comparator = comparator;
+        }
+
+        Comparator<Entry> getComparator() {
+            return comparator;
+        }
+
+        static SortOrder fromString(final String string) {
+            return SortOrder.valueOf(string.toUpperCase(Locale.US).replace('-', '_'));
+        }
+    }
+
+    /**
+     * The result of inspecting a single file.
+     */
+    static class Entry {
+        private final Path path;
+        private final FileTime lastModifiedTime;
+        private final long size;
+
+        private final CertificateInspection inspection;
+        private final Status error;
+        private final String errorMessage;
+
+        private Entry(final Path path, final BasicFileAttributes attributes, final CertificateInspection inspection,
+                      final Status error, final String errorMessage) {
+
+            this.path = path;
+            this.lastModifiedTime = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.inspection = inspection;
+            this.error = error;
+            this.errorMessage = errorMessage;
+        }
+
+        private boolean isCurrent(final BasicFileAttributes attributes) {
+            return lastModifiedTime.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+
+        /**
+         * Returns the path of the scanned file relative to the scanned directory.
+         *
+         * @return the path of the scanned file relative to the scanned directory
+         */
+        Path getPath() {
+            return path;
+        }
+
+        SortedSet<String> getTopics() {
+            return inspection != null ? inspection.getTopics() : Collections.emptySortedSet();
+        }
+
+        CertificateInspection.Environment getEnvironment() {
+            return inspection != null ? inspection.getEnvironment() : null;
+        }
+
+        Instant getNotBefore() {
+            return inspection != null ? inspection.getNotBefore() : null;
+        }
+
+        Instant getNotAfter() {
+            return inspection != null ? inspection.getNotAfter() : null;
+        }
+
+        /**
+         * Returns the status of this entry at the given moment.
+         *
+         * @param now the moment at which to evaluate the status of this entry
+         * @param expirationWarningPeriod the amount of time before a certificate expires at which it should be reported
+         * as "expiring"
+         *
+         * @return the status of this entry at the given moment
+         */
+        Status getStatus(final Instant now, final Duration expirationWarningPeriod) {
+            if (error != null) {
+                return error;
+            } else if (now.isBefore(getNotBefore())) {
+                return Status.NOT_YET_VALID;
+            } else if (now.isAfter(getNotAfter())) {
+                return Status.EXPIRED;
+            } else if (now.plus(expirationWarningPeriod).isAfter(getNotAfter())) {
+                return Status.EXPIRING;
+            }
+
+            return Status.VALID;
+        }
+
+        Map<String, Object> toMap(final Instant now, final Duration expirationWarningPeriod) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+
+            map.put("path", path.toString());
+            map.put("status", getStatus(now, expirationWarningPeriod).name());
+
+            if (inspection != null) {
+                map.put("topics", new ArrayList<>(inspection.getTopics()));
+                map.put("environment", inspection.getEnvironment().name());
+                map.put("notBefore", inspection.getNotBefore().toString());
+                map.put("notAfter", inspection.getNotAfter().toString());
+            } else {
+                map.put("error", errorMessage);
+            }
+
+            return map;
+        }
+    }
+
+    /**
+     * The result of scanning a directory.
+     */
+    static class Report {
+        private final List<Entry> entries;
+        private final int inspectedFiles;
+
+        private Report(final List<Entry> entries, final int inspectedFiles) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.inspectedFiles = inspectedFiles;
+        }
+
+        /**
+         * Returns the entries in this report in no particular order.
+         *
+         * @return the entries in this report
+         */
+        List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the entries in this report in the given order.
+         *
+         * @param sortOrder the order in which to return entries
+         *
+         * @return the entries in this report, sorted in the given order
+         */
+        List<Entry> getEntries(final SortOrder sortOrder) {
+            final List<Entry> sortedEntries = new ArrayList<>(entries);
+            sortedEntries.sort(sortOrder.getComparator());
+
+            return sortedEntries;
+        }
+
+        /**
+         * Returns the number of files that were actually inspected (as opposed to reused from a previous scan) while
+         * producing this report.
+         *
+         * @return the number of files inspected while producing this report
+         */
+        int getInspectedFiles() {
+            return inspectedFiles;
+        }
+    }
+
+    private class InspectFilesTask extends RecursiveTask<List<Entry>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Map.Entry<Path, BasicFileAttributes>> files;
+
+        private InspectFilesTask(final List<Map.Entry<Path, BasicFileAttributes>> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            if (files.size() <= INSPECTION_BATCH_SIZE) {
+                final List<Entry> entries = new ArrayList<>(files.size());
+
+                for (final Map.Entry<Path, BasicFileAttributes> file : files) {
+                    entries.add(inspect(file.getKey(), file.getValue()));
+                }
+
+                return entries;
+            }
+
+            final int middle = files.size() / 2;
+
+            final InspectFilesTask left = new InspectFilesTask(files.subList(0, middle));
+            final InspectFilesTask right = new InspectFilesTask(files.subList(middle, files.size()));
+
+            left.fork();
+
+            final List<Entry> entries = new ArrayList<>(right.compute());
+            entries.addAll(left.join());
+
+            return entries;
+        }
+    }
+
+    /**
+     * Constructs a new scanner for the given directory.
+     *
+     * @param directory the directory to scan
+     * @param passwordMappings a list of password mappings with which to unlock encrypted files
+     * @param parallelism the maximum number of files to inspect at the same time
+     */
+    CredentialDirectoryScanner(final Path directory, final List<PasswordMapping> passwordMappings, final int parallelism) {
+        this.directory = Objects.requireNonNull(directory);
+        this.passwordMappings = new ArrayList<>(passwordMappings);
+        this.forkJoinPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Scans this scanner's directory, inspecting only files that are new or have changed since the last scan.
+     *
+     * @return a report that contains an entry for every PKCS#12 file currently in the directory
+     *
+     * @throws IOException if the directory could not be walked for any reason
+     */
+    synchronized Report scan() throws IOException {
+        final Map<Path, BasicFileAttributes> attributesByPath = new HashMap<>();
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                final String filename = file.getFileName().toString().toLowerCase(Locale.US);
+
+                if (attributes.isRegularFile() && (filename.endsWith(".p12") || filename.endsWith(".pfx"))) {
+                    attributesByPath.put(directory.relativize(file), attributes);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                // Unreadable subdirectories shouldn't stop the whole scan
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        final List<Map.Entry<Path, BasicFileAttributes>> changedFiles = new ArrayList<>();
+
+        for (final Map.Entry<Path, BasicFileAttributes> file : attributesByPath.entrySet()) {
+            final Entry previousEntry = entriesByPath.get(file.getKey());
+
+            if (previousEntry == null || !previousEntry.isCurrent(file.getValue())) {
+                changedFiles.add(file);
+            }
+        }
+
+        entriesByPath.keySet().retainAll(attributesByPath.keySet());
+
+        for (final Entry entry : forkJoinPool.invoke(new InspectFilesTask(changedFiles))) {
+            entriesByPath.put(entry.getPath(), entry);
+        }
+
+        return new Report(new ArrayList<>(entriesByPath.values()), changedFiles.size());
+    }
+
+    private Entry inspect(final Path relativePath, final BasicFileAttributes attributes) {
+        final byte[] contents;
+
+        try {
+            contents = Files.readAllBytes(directory.resolve(relativePath));
+        } catch (final IOException e) {
+            return new Entry(relativePath, attributes, null, Status.INVALID, describe(e));
+        }
+
+        final Set<String> candidatePasswords = new LinkedHashSet<>();
+
+        for (final PasswordMapping passwordMapping : passwordMappings) {
+            if (passwordMapping.matches(relativePath)) {
+                candidatePasswords.add(passwordMapping.password);
+            }
+        }
+
+        candidatePasswords.add("");
+
+        for (final String password : candidatePasswords) {
+            try {
+                return new Entry(relativePath, attributes,
+                        CertificateUtil.inspect(new ByteArrayInputStream(contents), password), null, null);
+            } catch (final IOException e) {
+                if (!(e.getCause() instanceof UnrecoverableKeyException)) {
+                    // Not a password problem; trying other passwords won't help
+                    return new Entry(relativePath, attributes, null, Status.INVALID, describe(e));
+                }
+            } catch (final KeyStoreException e) {
+                return new Entry(relativePath, attributes, null, Status.INVALID, describe(e));
+            }
+        }
+
+        return new Entry(relativePath, attributes, null, Status.INCORRECT_PASSWORD,
+                "None of the mapped passwords unlocked this file.");
+    }
+
+    private static String describe(final Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Shuts down this scanner's fork-join pool.
+     */
+    @Override
+    public void close() {
+        forkJoinPool.shutdown();
+    }
+
+    static class Arguments {
+        Path directory;
+        Path passwordsFile;
+        SortOrder sortOrder = SortOrder.NOT_AFTER;
+        Duration expirationWarningPeriod = DEFAULT_EXPIRATION_WARNING_PERIOD;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        boolean help = false;
+
+        static Arguments parse(final String... args) {
+            final Arguments arguments = new Arguments();
+
+            for (int i = 0; i < args.length; i++) {
+                final String option = args[i];
+
+                if ("--help".equals(option) || "-h".equals(option)) {
+                    arguments.help = true;
+                    continue;
+                }
+
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                final String value = args[++i];
+
+                switch (option) {
+                    case "--directory":
+                        arguments.directory = Paths.get(value);
+                        break;
+
+                    case "--passwords":
+                        arguments.passwordsFile = Paths.get(value);
+                        break;
+
+                    case "--sort":
+                        try {
+                            arguments.sortOrder = SortOrder.fromString(value);
+                        } catch (final IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unrecognized sort order: " + value);
+                        }
+                        break;
+
+                    case "--expiring-within":
+                        arguments.expirationWarningPeriod = Duration.ofDays(parseNonNegativeInt(option, value));
+                        break;
+
+                    case "--threads":
+                        arguments.threads = parseNonNegativeInt(option, value);
+
+                        if (arguments.threads == 0) {
+                            throw new IllegalArgumentException("Value for --threads must be positive: " + value);
+                        }
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("Unrecognized option: " + option);
+                }
+            }
+
+            if (!arguments.help && arguments.directory == null) {
+                throw new IllegalArgumentException("--directory is required.");
+            }
+
+            return arguments;
+        }
+
+        private static int parseNonNegativeInt(final String option, final String value) {
+            final int parsedValue;
+
+            try {
+                parsedValue = Integer.parseInt(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Value for " + option + " must be an integer: " + value);
+            }
+
+            if (parsedValue < 0) {
+                throw new IllegalArgumentException("Value for " + option + " must not be negative: " + value);
+            }
+
+            return parsedValue;
+        }
+    }
+
+    /**
+     * Scans a directory of credentials and writes a report to standard output.
+     *
+     * @param args a list of command-line arguments; pass {@code --help} for details
+     */
+    public static void main(final String... args) {
+        System.exit(run(System.out, System.err, args));
+    }
+
+    static int run(final PrintStream out, final PrintStream err, final String... args) {
+        final Arguments arguments;
+
+        try {
+            arguments = Arguments.parse(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println();
+            err.print(USAGE);
+
+            return EXIT_USAGE;
+        }
+
+        if (arguments.help) {
+            out.print(USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        final List<PasswordMapping> passwordMappings;
+
+        if (arguments.passwordsFile != null) {
+            try (final Reader reader = Files.newBufferedReader(arguments.passwordsFile, StandardCharsets.UTF_8)) {
+                passwordMappings = PasswordMapping.load(reader);
+            } catch (final IOException | IllegalArgumentException e) {
+                err.println("Failed to load password mappings: " + e.getMessage());
+                return EXIT_ERROR;
+            }
+        } else {
+            passwordMappings = Collections.emptyList();
+        }
+
+        try (final CredentialDirectoryScanner scanner =
+                     new CredentialDirectoryScanner(arguments.directory, passwordMappings, arguments.threads)) {
+
+            final Report report = scanner.scan();
+            final Instant now = Instant.now();
+
+            boolean attentionRequired = false;
+
+            for (final Entry entry : report.getEntries(arguments.sortOrder)) {
+                out.println(JsonSerializer.writeJsonTextAsString(entry.toMap(now, arguments.expirationWarningPeriod)));
+
+                attentionRequired |= entry.getStatus(now, arguments.expirationWarningPeriod) != Status.VALID;
+            }
+
+            return attentionRequired ? EXIT_ATTENTION_REQUIRED : EXIT_SUCCESS;
+        } catch (final IOException e) {
+            err.println("Failed to scan directory: " + e.getMessage());
+            return EXIT_ERROR;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>Watches credential files for changes using a {@link WatchService}. Watch services can only watch directories, so
+ * credential file watchers watch the directory that contains each file and report changes to any watched file in a
+ * directory whenever anything in that directory changes. Reporting every file in the directory (rather than only the
+ * file named in the event) means that files replaced by swapping a symbolic link (as is common for mounted secrets) are
+ * still reported. Because reports may be spurious, handlers should check whether a file's contents have actually
+ * changed; an {@link ApnsCredentialsCache} does exactly that.</p>
+ *
+ * <p>Editors and deployment tools often change a file in several steps (truncating and then writing it, for example),
+ * so watchers wait until a directory has been quiet for a short period before reporting changes. Changes are reported
+ * on the watcher's own thread.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class CredentialFileWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Consumer<Path> changeHandler;
+    private final long quietPeriodMillis;
+
+    private final Map<Path, WatchKey> watchKeysByDirectory = new HashMap<>();
+    private final Map<WatchKey, Set<Path>> watchedFilesByKey = new HashMap<>();
+
+    private final Thread watchThread;
+
+    static final long DEFAULT_QUIET_PERIOD_MILLIS = 250;
+
+    /**
+     * Constructs and starts a new credential file watcher.
+     *
+     * @param changeHandler a function to call with the path of each watched file that may have changed
+     * @param quietPeriodMillis the length of time, in milliseconds, for which a directory must be quiet before changes
+     * are reported
+     *
+     * @throws IOException if a watch service could not be created
+     */
+    CredentialFileWatcher(final Consumer<Path> changeHandler, final long quietPeriodMillis) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.changeHandler = Objects.requireNonNull(changeHandler);
+        this.quietPeriodMillis = quietPeriodMillis;
+
+        this.watchThread = new Thread(this::watch, "credential-file-watcher");
+        this.watchThread.setDaemon(true);
+        this.watchThread.start();
+    }
+
+    /**
+     * Starts watching the given file for changes. Watching a file that is already being watched has no effect.
+     *
+     * @param file the file to watch
+     *
+     * @throws IOException if the file's directory could not be watched for any reason
+     */
+    synchronized void watch(final Path file) throws IOException {
+        final Path absoluteFile = file.toAbsolutePath().normalize();
+        final Path directory = absoluteFile.getParent();
+
+        WatchKey watchKey = watchKeysByDirectory.get(directory);
+
+        if (watchKey == null) {
+            watchKey = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+
+            watchKeysByDirectory.put(directory, watchKey);
+        }
+
+        watchedFilesByKey.computeIfAbsent(watchKey, k -> new HashSet<>()).add(absoluteFile);
+    }
+
+    /**
+     * Stops watching the given file for changes. Unwatching a file that isn't being watched has no effect.
+     *
+     * @param file the file to stop watching
+     */
+    synchronized void unwatch(final Path file) {
+        final Path absoluteFile = file.toAbsolutePath().normalize();
+        final WatchKey watchKey = watchKeysByDirectory.get(absoluteFile.getParent());
+
+        if (watchKey != null) {
+            final Set<Path> watchedFiles = watchedFilesByKey.get(watchKey);
+            watchedFiles.remove(absoluteFile);
+
+            if (watchedFiles.isEmpty()) {
+                watchKey.cancel();
+
+                watchedFilesByKey.remove(watchKey);
+                watchKeysByDirectory.remove(absoluteFile.getParent());
+            }
+        }
+    }
+
+    private void watch() {
+        final Set<Path> changedFiles = new LinkedHashSet<>();
+
+        try {
+            while (true) {
+                final WatchKey watchKey = changedFiles.isEmpty() ?
+                        watchService.take() :
+                        watchService.poll(quietPeriodMillis, TimeUnit.MILLISECONDS);
+
+                if (watchKey != null) {
+                    // We don't actually care what the events were, just that there were some
+                    watchKey.pollEvents();
+
+                    synchronized (this) {
+                        changedFiles.addAll(watchedFilesByKey.getOrDefault(watchKey, Collections.emptySet()));
+                    }
+
+                    watchKey.reset();
+                } else {
+                    // Things have been quiet for a while; report everything that changed in the meantime
+                    for (final Path changedFile : changedFiles) {
+                        try {
+                            changeHandler.accept(changedFile);
+                        } catch (final RuntimeException e) {
+                            // One bad handler call shouldn't stop us from watching for future changes
+                            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+                        }
+                    }
+
+                    changedFiles.clear();
+                }
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // We've been closed; just let the thread exit
+        }
+    }
+
+    /**
+     * Stops watching all files and shuts down this watcher's thread.
+     *
+     * @throws IOException if the underlying watch service could not be closed for any reason
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        watchThread.interrupt();
+    }
+}
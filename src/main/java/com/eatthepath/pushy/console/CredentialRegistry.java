@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <p>A registry of APNs credentials for many apps at once. Certificate credentials are indexed by the topics named in
+ * their certificates. Signing key credentials are indexed by team ID and, optionally, by the bundle IDs of the apps to
+ * which they should send notifications.</p>
+ *
+ * <p>Registries choose credentials for a notification by topic:</p>
+ *
+ * <ol>
+ *     <li>If a certificate names the topic, or a signing key was registered for the topic's bundle ID (for example,
+ *     {@code com.example.app} for the topic {@code com.example.app.voip}), the registry chooses those credentials. If
+ *     more than one set of credentials claims the same topic, the most recently-registered credentials win.</li>
+ *     <li>Otherwise, if the registry contains exactly one signing key, the registry chooses that signing key, since a
+ *     signing key may send notifications to any app belonging to its team.</li>
+ *     <li>Otherwise, if the registry contains exactly one set of credentials of any kind, the registry chooses those
+ *     credentials and leaves it to the APNs server to decide whether they're appropriate.</li>
+ * </ol>
+ *
+ * <p>Credentials are loaded through an {@link ApnsCredentialsCache}, so credentials for the same file are the same
+ * instance and can be used as stable keys for an {@link ApnsClientPool}. Credential registries are thread-safe.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class CredentialRegistry {
+
+    private final ApnsCredentialsCache apnsCredentialsCache;
+
+    private final Map<String, ApnsCredentials> credentialsByTopic = new HashMap<>();
+    private final Map<String, ApnsCredentials> signingKeyCredentialsByTeamId = new HashMap<>();
+    private final Set<ApnsCredentials> allCredentials = new LinkedHashSet<>();
+
+    // Suffixes APNs appends to an app's bundle ID to form topics for special kinds of notifications
+    private static final List<String> TOPIC_SUFFIXES =
+            List.of(".voip", ".complication", ".pushkit.fileprovider", ".location-query", ".push-type.liveactivity");
+
+    /**
+     * Constructs a new, empty credential registry that loads credentials through the given cache.
+     *
+     * @param apnsCredentialsCache the cache through which to load credentials
+     */
+    CredentialRegistry(final ApnsCredentialsCache apnsCredentialsCache) {
+        this.apnsCredentialsCache = Objects.requireNonNull(apnsCredentialsCache);
+    }
+
+    /**
+     * Loads certificate credentials from the given PKCS#12 file and registers them for every topic named in the
+     * certificate.
+     *
+     * @param certificateFile a PKCS#12 file containing the certificate and private key
+     * @param certificatePassword the password for the PKCS#12 file
+     *
+     * @return the registered credentials
+     *
+     * @throws IOException if the given file could not be read for any reason
+     * @throws KeyStoreException if a certificate/private key pair could not be loaded from the given PKCS#12 file for
+     * any reason
+     */
+    ApnsCredentials addCertificate(final File certificateFile, final String certificatePassword) throws IOException, KeyStoreException {
+        final CertificateInspection inspection =
+                apnsCredentialsCache.getCertificateInspection(certificateFile, certificatePassword);
+
+        final ApnsCredentials credentials =
+                apnsCredentialsCache.getCertificateCredentials(certificateFile, certificatePassword);
+
+        synchronized (this) {
+            for (final String topic : inspection.getTopics()) {
+                credentialsByTopic.put(topic, credentials);
+            }
+
+            allCredentials.add(credentials);
+        }
+
+        return credentials;
+    }
+
+    /**
+     * Loads signing key credentials from the given PKCS#8 file and registers them for the given team and, optionally,
+     * for the given bundle IDs.
+     *
+     * @param signingKeyFile a PKCS#8 file that contains an EC private key
+     * @param keyId the ten-character, Apple-issued ID for the signing key
+     * @param teamId the ten-character, Apple-issued ID for the team to which the signing key belongs
+     * @param bundleIds the bundle IDs of the apps for which to use the signing key; may be empty
+     *
+     * @return the registered credentials
+     *
+     * @throws NoSuchAlgorithmException if the JVM does not support elliptic curve keys
+     * @throws IOException if the given PKCS#8 file could not be read for any reason
+     * @throws InvalidKeyException if the given elliptic curve private key is invalid for any reason
+     */
+    ApnsCredentials addSigningKey(final File signingKeyFile, final String keyId, final String teamId, final Collection<String> bundleIds) throws NoSuchAlgorithmException, IOException, InvalidKeyException {
+        final ApnsCredentials credentials = apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, keyId, teamId);
+
+        synchronized (this) {
+            for (final String bundleId : bundleIds) {
+                credentialsByTopic.put(bundleId, credentials);
+            }
+
+            signingKeyCredentialsByTeamId.put(teamId, credentials);
+            allCredentials.add(credentials);
+        }
+
+        return credentials;
+    }
+
+    /**
+     * Returns the credentials that should be used to send a notification to the given topic.
+     *
+     * @param topic the topic to which a notification will be sent
+     *
+     * @return the credentials to use for the given topic
+     *
+     * @throws IllegalArgumentException if no registered credentials could be chosen for the given topic
+     */
+    synchronized ApnsCredentials getCredentials(final String topic) {
+        final ApnsCredentials credentialsForTopic = credentialsByTopic.get(topic);
+
+        if (credentialsForTopic != null) {
+            return credentialsForTopic;
+        }
+
+        final ApnsCredentials credentialsForBundleId = credentialsByTopic.get(getBundleId(topic));
+
+        if (credentialsForBundleId != null) {
+            return credentialsForBundleId;
+        }
+
+        if (signingKeyCredentialsByTeamId.size() == 1) {
+            return signingKeyCredentialsByTeamId.values().iterator().next();
+        }
+
+        if (allCredentials.size() == 1) {
+            return allCredentials.iterator().next();
+        }
+
+        throw new IllegalArgumentException("No credentials registered for topic " + topic);
+    }
+
+    /**
+     * Returns the signing key credentials registered for the given team, if any.
+     *
+     * @param teamId the ten-character, Apple-issued ID for a team
+     *
+     * @return the signing key credentials registered for the given team, or empty if no signing key has been
+     * registered for the given team
+     */
+    synchronized Optional<ApnsCredentials> getCredentialsForTeam(final String teamId) {
+        return Optional.ofNullable(signingKeyCredentialsByTeamId.get(teamId));
+    }
+
+    /**
+     * Returns all credentials in this registry in the order in which they were registered.
+     *
+     * @return all credentials in this registry
+     */
+    synchronized List<ApnsCredentials> getAllCredentials() {
+        return new ArrayList<>(allCredentials);
+    }
+
+    static String getBundleId(final String topic) {
+        for (final String suffix : TOPIC_SUFFIXES) {
+            if (topic.endsWith(suffix)) {
+                return topic.substring(0, topic.length() - suffix.length());
+            }
+        }
+
+        return topic;
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.util.TokenUtil;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * <p>A compact set of device tokens. Device tokens are almost always 32 bytes long, and a set of {@code String} tokens
+ * spends well over 100 bytes of heap on each one. Device token sets instead decode 32-byte tokens and store them as
+ * four {@code long} values apiece in a single open-addressed {@code long[]} table, which costs about 64 bytes per token
+ * at the table's maximum load and creates no per-token objects at all. Tokens of any other length are kept, as
+ * strings, in an ordinary hash map.</p>
+ *
+ * <p>Each token in a set may optionally carry a single {@code long} value (a timestamp, for example), which is stored
+ * in a parallel array that's only allocated once a value is first {@linkplain #put(String, long) put} into the
+ * set.</p>
+ *
+ * <p>Like {@link TokenUtil#sanitizeTokenString(String)}, device token sets ignore any character in a token that isn't
+ * a hexadecimal digit, and treat upper- and lower-case digits as equivalent, so {@code "<740f4707 bebcf74f ...>"} and
+ * {@code "740F4707BEBCF74F..."} are the same token. Hex strings are only produced again when iterating over a set.</p>
+ *
+ * <p>Device token sets are not thread-safe.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class DeviceTokenSet {
+
+    private long[] table;
+    private long[] values;
+    private int mask;
+
+    private int compactTokens = 0;
+
+    private boolean containsZeroToken = false;
+    private long zeroTokenValue = 0;
+
+    private final Map<String, Long> otherTokens = new HashMap<>();
+
+    // Each slot in the table holds one 32-byte token as four longs; an all-zero slot is empty
+    private static final int LONGS_PER_TOKEN = 4;
+    private static final int HEX_DIGITS_PER_TOKEN = LONGS_PER_TOKEN * 16;
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Constructs a new, empty device token set.
+     */
+    DeviceTokenSet() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty device token set with room for at least the given number of 32-byte tokens before it
+     * needs to grow.
+     *
+     * @param expectedTokens the number of tokens the set is expected to hold
+     */
+    DeviceTokenSet(final int expectedTokens) {
+        if (expectedTokens < 0) {
+            throw new IllegalArgumentException("Expected number of tokens must not be negative.");
+        }
+
+        // Keep the table at most half full
+        final int slots = Math.max(Integer.highestOneBit(Math.max(expectedTokens, 1) * 2 - 1) << 1, 2);
+
+        this.table = new long[slots * LONGS_PER_TOKEN];
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Adds a device token to this set. If the token is already present, its value (if any) is left unchanged.
+     *
+     * @param token the token to add
+     *
+     * @return {@code true} if the token was not already present in this set or {@code false} otherwise
+     */
+    boolean add(final String token) {
+        final long[] decodedToken = decodeCompactToken(token);
+
+        if (decodedToken == null) {
+            return otherTokens.putIfAbsent(getOtherTokenKey(token), 0L) == null;
+        }
+
+        if (isZero(decodedToken)) {
+            final boolean added = !containsZeroToken;
+            containsZeroToken = true;
+
+            return added;
+        }
+
+        return findOrInsert(decodedToken) < 0;
+    }
+
+    /**
+     * Adds a device token to this set if it's not already present, and associates the given value with the token.
+     *
+     * @param token the token to add
+     * @param value the value to associate with the token
+     *
+     * @return {@code true} if the token was not already present in this set or {@code false} otherwise
+     */
+    boolean put(final String token, final long value) {
+        final long[] decodedToken = decodeCompactToken(token);
+
+        if (decodedToken == null) {
+            return otherTokens.put(getOtherTokenKey(token), value) == null;
+        }
+
+        if (isZero(decodedToken)) {
+            final boolean added = !containsZeroToken;
+
+            containsZeroToken = true;
+            zeroTokenValue = value;
+
+            return added;
+        }
+
+        if (values == null) {
+            values = new long[mask + 1];
+        }
+
+        final int slot = findOrInsert(decodedToken);
+        values[slot >= 0 ? slot : -(slot + 1)] = value;
+
+        return slot < 0;
+    }
+
+    /**
+     * Indicates whether this set contains the given device token.
+     *
+     * @param token the token for which to check
+     *
+     * @return {@code true} if this set contains the given token or {@code false} otherwise
+     */
+    boolean contains(final String token) {
+        final long[] decodedToken = decodeCompactToken(token);
+
+        if (decodedToken == null) {
+            return otherTokens.containsKey(getOtherTokenKey(token));
+        }
+
+        return isZero(decodedToken) ? containsZeroToken : findSlot(table, mask, decodedToken) >= 0;
+    }
+
+    /**
+     * Returns the value associated with the given token.
+     *
+     * @param token the token for which to retrieve a value
+     * @param defaultValue the value to return if this set does not contain the given token
+     *
+     * @return the value associated with the given token, which is zero if the token was added without a value, or
+     * {@code defaultValue} if this set does not contain the given token
+     */
+    long getValue(final String token, final long defaultValue) {
+        final long[] decodedToken = decodeCompactToken(token);
+
+        if (decodedToken == null) {
+            return otherTokens.getOrDefault(getOtherTokenKey(token), defaultValue);
+        }
+
+        if (isZero(decodedToken)) {
+            return containsZeroToken ? zeroTokenValue : defaultValue;
+        }
+
+        final int slot = findSlot(table, mask, decodedToken);
+
+        if (slot < 0) {
+            return defaultValue;
+        }
+
+        return values != null ? values[slot] : 0;
+    }
+
+    /**
+     * Returns the number of distinct tokens in this set.
+     *
+     * @return the number of distinct tokens in this set
+     */
+    int size() {
+        return compactTokens + (containsZeroToken ? 1 : 0) + otherTokens.size();
+    }
+
+    /**
+     * Passes each token in this set, as a string of lower-case hexadecimal digits, to the given consumer. Tokens are
+     * visited in no particular order.
+     *
+     * @param tokenConsumer the consumer to which to pass each token
+     */
+    void forEach(final Consumer<String> tokenConsumer) {
+        forEachWithValue((token, value) -> tokenConsumer.accept(token));
+    }
+
+    /**
+     * Passes each token in this set, as a string of lower-case hexadecimal digits, and its associated value to the
+     * given consumer. Tokens are visited in no particular order.
+     *
+     * @param tokenAndValueConsumer the consumer to which to pass each token and its value
+     */
+    void forEachWithValue(final ObjLongConsumer<String> tokenAndValueConsumer) {
+        final char[] hex = new char[HEX_DIGITS_PER_TOKEN];
+
+        if (containsZeroToken) {
+            tokenAndValueConsumer.accept("0".repeat(HEX_DIGITS_PER_TOKEN), zeroTokenValue);
+        }
+
+        for (int slot = 0; slot <= mask; slot++) {
+            final int offset = slot * LONGS_PER_TOKEN;
+
+            if (!isEmptySlot(table, offset)) {
+                for (int i = 0; i < LONGS_PER_TOKEN; i++) {
+                    final long value = table[offset + i];
+
+                    for (int nibble = 0; nibble < 16; nibble++) {
+                        hex[(i * 16) + nibble] = HEX_DIGITS[(int) (value >>> (60 - (nibble * 4))) & 0xf];
+                    }
+                }
+
+                tokenAndValueConsumer.accept(new String(hex), values != null ? values[slot] : 0);
+            }
+        }
+
+        otherTokens.forEach(tokenAndValueConsumer::accept);
+    }
+
+    private static String getOtherTokenKey(final String token) {
+        return TokenUtil.sanitizeTokenString(token).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Decodes the given token into four longs if it contains exactly 64 hexadecimal digits.
+     *
+     * @return the decoded token, or {@code null} if the token doesn't contain exactly 64 hexadecimal digits
+     */
+    private static long[] decodeCompactToken(final String token) {
+        final long[] decodedToken = new long[LONGS_PER_TOKEN];
+        int digits = 0;
+
+        for (int i = 0; i < token.length(); i++) {
+            final int digit = getHexDigitValue(token.charAt(i));
+
+            if (digit < 0) {
+                continue;
+            }
+
+            if (digits == HEX_DIGITS_PER_TOKEN) {
+                return null;
+            }
+
+            decodedToken[digits / 16] = (decodedToken[digits / 16] << 4) | digit;
+            digits += 1;
+        }
+
+        return digits == HEX_DIGITS_PER_TOKEN ? decodedToken : null;
+    }
+
+    private static int getHexDigitValue(final char c) {
+        // Character.digit is more permissive than TokenUtil (it accepts full-width digits, for example)
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+
+        return -1;
+    }
+
+    private static boolean isZero(final long[] decodedToken) {
+        return (decodedToken[0] | decodedToken[1] | decodedToken[2] | decodedToken[3]) == 0;
+    }
+
+    private static boolean isEmptySlot(final long[] table, final int offset) {
+        return (table[offset] | table[offset + 1] | table[offset + 2] | table[offset + 3]) == 0;
+    }
+
+    private static int hash(final long[] decodedToken) {
+        // Tokens are mostly random already, but there's no harm in mixing all of their bits
+        long hash = decodedToken[0] * 0x9E3779B97F4A7C15L;
+        hash ^= Long.rotateLeft(decodedToken[1], 17) ^ Long.rotateLeft(decodedToken[2], 31) ^ Long.rotateLeft(decodedToken[3], 47);
+        hash *= 0xBF58476D1CE4E5B9L;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int findSlot(final long[] table, final int mask, final long[] decodedToken) {
+        for (int slot = hash(decodedToken) & mask; ; slot = (slot + 1) & mask) {
+            final int offset = slot * LONGS_PER_TOKEN;
+
+            if (isEmptySlot(table, offset)) {
+                return -1;
+            }
+
+            if (table[offset] == decodedToken[0] && table[offset + 1] == decodedToken[1] &&
+                    table[offset + 2] == decodedToken[2] && table[offset + 3] == decodedToken[3]) {
+
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Finds the slot holding the given token, inserting the token if it isn't already present.
+     *
+     * @return the slot holding the token if it was already present, or {@code -(slot + 1)} if it was inserted
+     */
+    private int findOrInsert(final long[] decodedToken) {
+        final int existingSlot = findSlot(table, mask, decodedToken);
+
+        if (existingSlot >= 0) {
+            return existingSlot;
+        }
+
+        if ((compactTokens + 1) * 2 > mask + 1) {
+            resize();
+        }
+
+        final int slot = insert(table, mask, decodedToken);
+        compactTokens += 1;
+
+        return -(slot + 1);
+    }
+
+    private static int insert(final long[] table, final int mask, final long[] decodedToken) {
+        int slot = hash(decodedToken) & mask;
+
+        while (!isEmptySlot(table, slot * LONGS_PER_TOKEN)) {
+            slot = (slot + 1) & mask;
+        }
+
+        System.arraycopy(decodedToken, 0, table, slot * LONGS_PER_TOKEN, LONGS_PER_TOKEN);
+
+        return slot;
+    }
+
+    private void resize() {
+        final int newSlots = (mask + 1) * 2;
+        final long[] newTable = new long[newSlots * LONGS_PER_TOKEN];
+        final long[] newValues = values != null ? new long[newSlots] : null;
+        final int newMask = newSlots - 1;
+
+        final long[] decodedToken = new long[LONGS_PER_TOKEN];
+
+        for (int slot = 0; slot <= mask; slot++) {
+            final int offset = slot * LONGS_PER_TOKEN;
+
+            if (!isEmptySlot(table, offset)) {
+                System.arraycopy(table, offset, decodedToken, 0, LONGS_PER_TOKEN);
+                final int newSlot = insert(newTable, newMask, decodedToken);
+
+                if (newValues != null) {
+                    newValues[newSlot] = values[slot];
+                }
+            }
+        }
+
+        table = newTable;
+        values = newValues;
+        mask = newMask;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Collects failures (usually failures to send push notifications) into groups that share an exception type and a
+ * root cause type, counting the failures in each group and keeping the first failure in each group as a sample. A
+ * bulk send to an unreachable server may fail thousands of times in exactly the same way; an error aggregator turns
+ * all of those failures into a single line with a count.</p>
+ *
+ * <p>Recording a failure is cheap: no stack traces are rendered until someone asks for a group's sample stack trace,
+ * and then only once per group. Error aggregators are thread-safe; failures may be recorded from any thread.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ErrorAggregator {
+
+    private final ConcurrentMap<String, ErrorGroup> errorGroups = new ConcurrentHashMap<>();
+
+    private final LongAdder totalErrors = new LongAdder();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * A group of failures with the same exception type and root cause type.
+     */
+    static class ErrorGroup {
+
+        private final String exceptionType;
+        private final String rootCauseType;
+        private final String rootCauseMessage;
+
+        private final Throwable sample;
+        private String sampleStackTrace;
+
+        private final LongAdder count = new LongAdder();
+        private volatile Instant lastSeen;
+
+        private ErrorGroup(final Throwable exception, final Throwable rootCause) {
+            this.exceptionType = exception.getClass().getName();
+            this.rootCauseType = rootCause.getClass().getName();
+            this.rootCauseMessage = rootCause.getLocalizedMessage();
+
+            this.sample = exception;
+        }
+
+        String getExceptionType() {
+            return exceptionType;
+        }
+
+        String getRootCauseType() {
+            return rootCauseType;
+        }
+
+        /**
+         * Returns the message of the root cause of the first failure in this group. Later failures in the same group may
+         * have had different messages.
+         *
+         * @return the message of the root cause of the first failure in this group; may be {@code null}
+         */
+        String getRootCauseMessage() {
+            return rootCauseMessage;
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        Instant getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * Returns the stack trace of the first failure in this group, rendering it on first use.
+         *
+         * @return the stack trace of the first failure in this group
+         */
+        synchronized String getSampleStackTrace() {
+            if (sampleStackTrace == null) {
+                sampleStackTrace = ExceptionUtils.getStackTrace(sample);
+            }
+
+            return sampleStackTrace;
+        }
+    }
+
+    /**
+     * Records a failure. Wrapper exceptions from futures ({@link ExecutionException} and {@link CompletionException})
+     * are unwrapped first so that failures from different kinds of futures land in the same group.
+     *
+     * @param exception the failure to record
+     */
+    void record(final Throwable exception) {
+        final Throwable unwrapped = unwrap(Objects.requireNonNull(exception));
+        final Throwable rootCause = Objects.requireNonNullElse(ExceptionUtils.getRootCause(unwrapped), unwrapped);
+
+        final ErrorGroup errorGroup = errorGroups.computeIfAbsent(
+                unwrapped.getClass().getName() + "/" + rootCause.getClass().getName(),
+                ignored -> new ErrorGroup(unwrapped, rootCause));
+
+        errorGroup.count.increment();
+        errorGroup.lastSeen = Instant.now();
+
+        totalErrors.increment();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns all error groups, most frequent first. The returned list is a snapshot, but the counts in each group
+     * continue to update as new failures are recorded.
+     *
+     * @return a list of all error groups, most frequent first
+     */
+    List<ErrorGroup> getErrorGroups() {
+        final List<ErrorGroup> snapshot = new ArrayList<>(errorGroups.values());
+        snapshot.sort(Comparator.comparingLong(ErrorGroup::getCount).reversed());
+
+        return snapshot;
+    }
+
+    long getTotalErrors() {
+        return totalErrors.sum();
+    }
+
+    /**
+     * Returns a number that changes every time a failure is recorded or this aggregator is cleared. Callers that only
+     * want to do work when something has changed may compare versions instead of comparing groups.
+     *
+     * @return this aggregator's current version
+     */
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Discards all error groups.
+     */
+    void clear() {
+        errorGroups.clear();
+        totalErrors.reset();
+        version.incrementAndGet();
+    }
+
+    private static Throwable unwrap(final Throwable exception) {
+        Throwable unwrapped = exception;
+
+        while ((unwrapped instanceof ExecutionException || unwrapped instanceof CompletionException) &&
+                unwrapped.getCause() != null) {
+
+            unwrapped = unwrapped.getCause();
+        }
+
+        return unwrapped;
+    }
+}
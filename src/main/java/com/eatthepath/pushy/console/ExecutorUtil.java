@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executor services that give each task its own thread, using virtual threads where the JVM supports them.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ExecutorUtil {
+
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Returns an executor service that starts a new thread for each task. When running on a JVM that supports virtual
+     * threads (Java 21 or newer), tasks run on virtual threads; otherwise, tasks run on daemon platform threads that
+     * are cached and reused when idle.
+     *
+     * @param threadNamePrefix a prefix for the names of threads created by the returned executor if virtual threads are
+     * not available
+     *
+     * @return an executor service that starts a new thread for each task
+     */
+    static ExecutorService newThreadPerTaskExecutor(final String threadNamePrefix) {
+        return newThreadPerTaskExecutor(threadNamePrefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an executor service that starts a new thread for each task. When running on a JVM that supports virtual
+     * threads (Java 21 or newer), tasks run on virtual threads, and there's no limit on how many may run at once;
+     * otherwise, tasks run on at most the given number of daemon platform threads, which are reused when idle, and
+     * tasks submitted while all of those threads are busy wait in a queue. Platform threads are expensive enough that
+     * callers that limit concurrency some other way (with a semaphore, for example) should still bound the number of
+     * platform threads rather than letting an unbounded number of threads block.
+     *
+     * @param threadNamePrefix a prefix for the names of threads created by the returned executor if virtual threads are
+     * not available
+     * @param maxPlatformThreads the maximum number of platform threads to start if virtual threads are not available
+     *
+     * @return an executor service that starts a new thread for each task
+     */
+    static ExecutorService newThreadPerTaskExecutor(final String threadNamePrefix, final int maxPlatformThreads) {
+        if (maxPlatformThreads < 1) {
+            throw new IllegalArgumentException("Maximum number of platform threads must be positive.");
+        }
+
+        try {
+            // The build still targets Java 17, so we can't refer to this method directly.
+            final Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return newPlatformThreadExecutor(threadNamePrefix, maxPlatformThreads);
+        }
+    }
+
+    static ExecutorService newPlatformThreadExecutor(final String threadNamePrefix, final int maxThreads) {
+        final AtomicInteger threadCounter = new AtomicInteger();
+
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        };
+
+        if (maxThreads == Integer.MAX_VALUE) {
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+        return threadPoolExecutor;
+    }
+}
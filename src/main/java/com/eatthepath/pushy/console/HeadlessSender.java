@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.pushy.apns.*;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A command-line entry point for sending push notifications without a graphical user interface. The headless
+ * sender shares credential handling and sending machinery with the graphical console, but never touches JavaFX, so it
+ * starts quickly and runs on machines without a display.</p>
+ *
+ * <p>The outcome of each notification is written to standard output as a single line of JSON.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+public class HeadlessSender {
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_NOT_ALL_ACCEPTED = 3;
+
+    private static final String USAGE =
+            "Usage: HeadlessSender [options]\n" +
+            "\n" +
+            "Connection:\n" +
+            "  --server <host>           APNs server (default: " + ApnsClientBuilder.PRODUCTION_APNS_HOST + ")\n" +
+            "  --port <port>             APNs port (default: " + ApnsClientBuilder.DEFAULT_APNS_PORT + ")\n" +
+            "\n" +
+            "Credentials (at least one; may be repeated to send to many apps):\n" +
+            "  --certificate <file>      PKCS#12 certificate file\n" +
+            "  --password <password>     password for the preceding certificate file (default: empty)\n" +
+            "  --signing-key <file>      PKCS#8 signing key file\n" +
+            "  --key-id <id>             key ID for the preceding signing key\n" +
+            "  --team-id <id>            team ID for the preceding signing key\n" +
+            "  --bundle-id <id>          bundle ID of an app that should use the preceding signing key; may be repeated\n" +
+            "\n" +
+            "Notifications are sent with the certificate that names their topic or the signing key registered for\n" +
+            "their app's bundle ID. If neither matches, a lone signing key (or a lone set of credentials) is used.\n" +
+            "\n" +
+            "Notification:\n" +
+            "  --topic <topic>           APNs topic (required)\n" +
+            "  --push-type <type>        push type header value, e.g. alert or background (default: alert)\n" +
+            "  --priority <priority>     immediate or conserve-power (default: immediate)\n" +
+            "  --collapse-id <id>        collapse ID\n" +
+            "  --payload <file>          file containing the JSON payload (required)\n" +
+            "\n" +
+            "Destination (at least one):\n" +
+            "  --token <token>           a device token; may be repeated\n" +
+            "  --tokens <file>           file with one device token per line, or - for standard input; a topic may\n" +
+            "                            follow each token to override --topic for that line\n" +
+            "\n" +
+            "Other:\n" +
+            "  --max-outstanding <n>     maximum notifications in flight (default: " +
+            BulkNotificationSender.DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS + ")\n" +
+            "  --max-attempts <n>        maximum attempts per notification, retrying temporary failures with backoff;\n" +
+            "                            1 disables retries (default: " + NotificationRetrier.DEFAULT_MAX_ATTEMPTS + ")\n" +
+            "  --invalid-tokens <file>   skip tokens that APNs has reported as invalid, and record newly-invalid\n" +
+            "                            tokens, in the given file\n" +
+            "  --metrics                 write latency and throughput metrics to standard error as JSON when done\n" +
+            "  --help                    show this message\n";
+
+    static class Arguments {
+        String server = ApnsClientBuilder.PRODUCTION_APNS_HOST;
+        int port = ApnsClientBuilder.DEFAULT_APNS_PORT;
+
+        final List<CertificateArguments> certificates = new ArrayList<>();
+        final List<SigningKeyArguments> signingKeys = new ArrayList<>();
+
+        String topic;
+        PushType pushType = PushType.ALERT;
+        DeliveryPriority deliveryPriority = DeliveryPriority.IMMEDIATE;
+        String collapseId;
+        File payloadFile;
+
+        final List<String> tokens = new ArrayList<>();
+        String tokenSource;
+
+        int maxOutstandingNotifications = BulkNotificationSender.DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS;
+        int maxAttempts = NotificationRetrier.DEFAULT_MAX_ATTEMPTS;
+        File invalidTokensFile;
+
+        boolean metrics = false;
+        boolean help = false;
+
+        static Arguments parse(final String... args) {
+            final Arguments arguments = new Arguments();
+
+            for (int i = 0; i < args.length; i++) {
+                final String option = args[i];
+
+                if ("--help".equals(option) || "-h".equals(option)) {
+                    arguments.help = true;
+                    continue;
+                }
+
+                if ("--metrics".equals(option)) {
+                    arguments.metrics = true;
+                    continue;
+                }
+
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                final String value = args[++i];
+
+                switch (option) {
+                    case "--server":
+                        arguments.server = value;
+                        break;
+
+                    case "--port":
+                        arguments.port = parseInt(option, value);
+                        break;
+
+                    case "--certificate":
+                        arguments.certificates.add(new CertificateArguments(new File(value)));
+                        break;
+
+                    case "--password":
+                        arguments.getLastCertificate(option).password = value;
+                        break;
+
+                    case "--signing-key":
+                        arguments.signingKeys.add(new SigningKeyArguments(new File(value)));
+                        break;
+
+                    case "--key-id":
+                        arguments.getLastSigningKey(option).keyId = value;
+                        break;
+
+                    case "--team-id":
+                        arguments.getLastSigningKey(option).teamId = value;
+                        break;
+
+                    case "--bundle-id":
+                        arguments.getLastSigningKey(option).bundleIds.add(value);
+                        break;
+
+                    case "--topic":
+                        arguments.topic = value;
+                        break;
+
+                    case "--push-type":
+                        // Throws an IllegalArgumentException for unrecognized values
+                        arguments.pushType = PushType.getFromHeaderValue(value);
+                        break;
+
+                    case "--priority":
+                        arguments.deliveryPriority = parseDeliveryPriority(value);
+                        break;
+
+                    case "--collapse-id":
+                        arguments.collapseId = value;
+                        break;
+
+                    case "--payload":
+                        arguments.payloadFile = new File(value);
+                        break;
+
+                    case "--token":
+                        arguments.tokens.add(value);
+                        break;
+
+                    case "--tokens":
+                        arguments.tokenSource = value;
+                        break;
+
+                    case "--max-outstanding":
+                        arguments.maxOutstandingNotifications = parseInt(option, value);
+                        break;
+
+                    case "--max-attempts":
+                        arguments.maxAttempts = parseInt(option, value);
+                        break;
+
+                    case "--invalid-tokens":
+                        arguments.invalidTokensFile = new File(value);
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("Unrecognized option: " + option);
+                }
+            }
+
+            if (!arguments.help) {
+                arguments.validate();
+            }
+
+            return arguments;
+        }
+
+        private CertificateArguments getLastCertificate(final String option) {
+            if (certificates.isEmpty()) {
+                throw new IllegalArgumentException(option + " must follow --certificate.");
+            }
+
+            return certificates.get(certificates.size() - 1);
+        }
+
+        private SigningKeyArguments getLastSigningKey(final String option) {
+            if (signingKeys.isEmpty()) {
+                throw new IllegalArgumentException(option + " must follow --signing-key.");
+            }
+
+            return signingKeys.get(signingKeys.size() - 1);
+        }
+
+        private void validate() {
+            if (certificates.isEmpty() && signingKeys.isEmpty()) {
+                throw new IllegalArgumentException("At least one --certificate or --signing-key is required.");
+            }
+
+            for (final SigningKeyArguments signingKey : signingKeys) {
+                if (signingKey.keyId == null || signingKey.teamId == null) {
+                    throw new IllegalArgumentException("--key-id and --team-id are required for each signing key.");
+                }
+            }
+
+            if (topic == null) {
+                throw new IllegalArgumentException("--topic is required.");
+            }
+
+            if (payloadFile == null) {
+                throw new IllegalArgumentException("--payload is required.");
+            }
+
+            if (tokens.isEmpty() && tokenSource == null) {
+                throw new IllegalArgumentException("At least one --token or a --tokens file is required.");
+            }
+
+            if (maxOutstandingNotifications < 1) {
+                throw new IllegalArgumentException("--max-outstanding must be positive.");
+            }
+
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("--max-attempts must be positive.");
+            }
+        }
+
+        private static int parseInt(final String option, final String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Value for " + option + " must be an integer: " + value);
+            }
+        }
+
+        private static DeliveryPriority parseDeliveryPriority(final String value) {
+            switch (value.toLowerCase()) {
+                case "immediate":
+                case "10":
+                    return DeliveryPriority.IMMEDIATE;
+
+                case "conserve-power":
+                case "5":
+                    return DeliveryPriority.CONSERVE_POWER;
+
+                default:
+                    throw new IllegalArgumentException("Unrecognized priority: " + value);
+            }
+        }
+    }
+
+    static class CertificateArguments {
+        final File file;
+        String password = "";
+
+        CertificateArguments(final File file) {
+            this.file = file;
+        }
+    }
+
+    static class SigningKeyArguments {
+        final File file;
+        String keyId;
+        String teamId;
+        final List<String> bundleIds = new ArrayList<>();
+
+        SigningKeyArguments(final File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Sends push notifications as directed by the given command-line arguments and exits.
+     *
+     * @param args a list of command-line arguments; pass {@code --help} for details
+     */
+    public static void main(final String... args) {
+        // Results can arrive thousands of times per second; don't flush standard output after every line.
+        final PrintStream out = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 65536), false, StandardCharsets.UTF_8);
+
+        final int exitCode = run(out, System.err, args);
+        out.flush();
+
+        System.exit(exitCode);
+    }
+
+    static int run(final PrintStream out, final PrintStream err, final String... args) {
+        final Arguments arguments;
+
+        try {
+            arguments = Arguments.parse(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println();
+            err.print(USAGE);
+
+            return EXIT_USAGE;
+        }
+
+        if (arguments.help) {
+            out.print(USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        final ApnsClientMetrics apnsClientMetrics = new ApnsClientMetrics();
+        final ApnsClientPool apnsClientPool = new ApnsClientPool(ApnsClientPool.DEFAULT_IDLE_TIMEOUT, apnsClientMetrics);
+
+        InvalidTokenRegistry invalidTokenRegistry = null;
+
+        final NotificationRetrier notificationRetrier = new NotificationRetrier(arguments.maxAttempts,
+                NotificationRetrier.DEFAULT_BASE_DELAY_MILLIS, NotificationRetrier.DEFAULT_MAX_DELAY_MILLIS);
+
+        try {
+            final CredentialRegistry credentialRegistry = new CredentialRegistry(new ApnsCredentialsCache());
+
+            for (final CertificateArguments certificate : arguments.certificates) {
+                credentialRegistry.addCertificate(certificate.file, certificate.password);
+            }
+
+            for (final SigningKeyArguments signingKey : arguments.signingKeys) {
+                credentialRegistry.addSigningKey(signingKey.file, signingKey.keyId, signingKey.teamId, signingKey.bundleIds);
+            }
+
+            // Complain now (rather than once per notification) if we can't send to the default topic
+            credentialRegistry.getCredentials(arguments.topic);
+
+            final String payload = Files.readString(arguments.payloadFile.toPath(), StandardCharsets.UTF_8);
+
+            final ApnsPushNotification templateNotification = new SimpleApnsPushNotification("", arguments.topic,
+                    payload, Instant.now().plus(Duration.ofDays(1)), arguments.deliveryPriority, arguments.pushType,
+                    arguments.collapseId);
+
+            // Each set of credentials gets its own pooled client, so notifications for different apps go out in parallel
+            if (arguments.invalidTokensFile != null) {
+                invalidTokenRegistry = new InvalidTokenRegistry(arguments.invalidTokensFile.toPath());
+            }
+
+            final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification ->
+                    apnsClientPool.sendNotification(arguments.server, arguments.port,
+                            credentialRegistry.getCredentials(pushNotification.getTopic()), pushNotification),
+                    arguments.maxOutstandingNotifications, invalidTokenRegistry, notificationRetrier);
+
+            final JsonLinesListener listener = new JsonLinesListener(out);
+
+            if (!arguments.tokens.isEmpty()) {
+                bulkNotificationSender.sendNotifications(
+                        new BufferedReader(new StringReader(String.join("\n", arguments.tokens))),
+                        templateNotification, listener);
+            }
+
+            if (arguments.tokenSource != null) {
+                try (final BufferedReader tokenReader = "-".equals(arguments.tokenSource) ?
+                        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                        Files.newBufferedReader(new File(arguments.tokenSource).toPath(), StandardCharsets.UTF_8)) {
+
+                    bulkNotificationSender.sendNotifications(tokenReader, templateNotification, listener);
+                }
+            }
+
+            out.flush();
+
+            if (arguments.metrics) {
+                err.println(JsonSerializer.writeJsonTextAsString(apnsClientMetrics.snapshot().toMap()));
+            }
+
+            return bulkNotificationSender.getAcceptedNotifications() == bulkNotificationSender.getSentNotifications() ?
+                    EXIT_SUCCESS : EXIT_NOT_ALL_ACCEPTED;
+        } catch (final Exception e) {
+            err.println("Failed to send notifications: " + e.getMessage());
+            return EXIT_ERROR;
+        } finally {
+            notificationRetrier.close();
+            apnsClientPool.close().join();
+
+            if (invalidTokenRegistry != null) {
+                try {
+                    invalidTokenRegistry.close();
+                } catch (final IOException e) {
+                    err.println("Failed to save invalid tokens: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the outcome of each notification to an output stream as a single line of JSON.
+     */
+    private static class JsonLinesListener implements BulkNotificationSender.BulkSendListener {
+
+        private final PrintStream out;
+
+        private JsonLinesListener(final PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void handlePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> response) {
+            final Map<String, Object> result = new LinkedHashMap<>();
+
+            result.put("token", response.getPushNotification().getToken());
+            result.put("topic", response.getPushNotification().getTopic());
+            result.put("accepted", response.isAccepted());
+            result.put("statusCode", response.getStatusCode());
+            result.put("apnsId", String.valueOf(response.getApnsId()));
+
+            response.getRejectionReason().ifPresent(rejectionReason -> result.put("rejectionReason", rejectionReason));
+            response.getTokenInvalidationTimestamp().ifPresent(timestamp ->
+                    result.put("tokenInvalidationTimestamp", timestamp.toString()));
+
+            writeLine(result);
+        }
+
+        @Override
+        public void handleSendFailure(final ApnsPushNotification pushNotification, final Throwable cause) {
+            final Map<String, Object> result = new LinkedHashMap<>();
+
+            result.put("token", pushNotification.getToken());
+            result.put("topic", pushNotification.getTopic());
+            result.put("accepted", false);
+            result.put("error", String.valueOf(cause));
+
+            writeLine(result);
+        }
+
+        @Override
+        public void handleInvalidTokenSkipped(final ApnsPushNotification pushNotification, final Instant invalidationTimestamp) {
+            final Map<String, Object> result = new LinkedHashMap<>();
+
+            result.put("token", pushNotification.getToken());
+            result.put("topic", pushNotification.getTopic());
+            result.put("accepted", false);
+            result.put("skipped", true);
+            result.put("tokenInvalidationTimestamp", invalidationTimestamp.toString());
+
+            writeLine(result);
+        }
+
+        private void writeLine(final Map<String, Object> result) {
+            final String line = JsonSerializer.writeJsonTextAsString(result);
+
+            synchronized (out) {
+                out.println(line);
+            }
+        }
+    }
+}
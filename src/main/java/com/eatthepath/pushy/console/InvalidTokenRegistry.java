@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.util.TokenUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * <p>A persistent record of device tokens that APNs has reported as no longer valid, along with the time at which
+ * each token became invalid. Senders can check the registry before sending a notification and skip tokens that are
+ * known to be dead instead of spending a request (and a round trip) to learn the same thing again.</p>
+ *
+ * <p>Invalid tokens are kept in memory in a {@link DeviceTokenSet}, so checking a token is a constant-time operation
+ * that doesn't allocate anything per stored token, even for registries with millions of entries. The registry is
+ * persisted in an append-only text file with one token and invalidation timestamp (in milliseconds since the epoch)
+ * per line; if a token appears more than once, the latest timestamp wins.</p>
+ *
+ * <p>APNs is usually right about dead tokens, but not always (a token may be restored from a backup, for example), so
+ * callers may also ask the registry to forget a token. Forgotten tokens are recorded in the file as a token followed by
+ * {@value #FORGOTTEN}; recording the token as invalid again puts it back in the registry.</p>
+ *
+ * <p>Invalid token registries are thread-safe. Registries hold an open file and must be closed when no longer needed
+ * to make sure all recorded tokens are written to disk.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class InvalidTokenRegistry implements Closeable {
+
+    private final Path registryFile;
+
+    private DeviceTokenSet invalidTokens = new DeviceTokenSet();
+    private BufferedWriter registryWriter;
+    private int forgottenTokens = 0;
+
+    // DeviceTokenSet has no way to remove a token, so forgotten tokens stay in the set with a value that reads as absent
+    private static final long NOT_PRESENT = Long.MIN_VALUE;
+
+    private static final String FORGOTTEN = "forgotten";
+
+    /**
+     * Constructs a new registry backed by the given file, loading any tokens already recorded there. The file (and its
+     * parent directories) will be created if it does not already exist.
+     *
+     * @param registryFile the file in which to record invalid tokens
+     *
+     * @throws IOException if the registry file could not be read or opened for writing
+     */
+    InvalidTokenRegistry(final Path registryFile) throws IOException {
+        this.registryFile = registryFile;
+
+        if (Files.exists(registryFile)) {
+            try (final BufferedReader registryReader = Files.newBufferedReader(registryFile, StandardCharsets.UTF_8)) {
+                for (String line = registryReader.readLine(); line != null; line = registryReader.readLine()) {
+                    final int separatorIndex = line.indexOf(' ');
+
+                    if (separatorIndex < 1) {
+                        continue;
+                    }
+
+                    final String token = line.substring(0, separatorIndex);
+
+                    // The file is only ever appended to, so a "forgotten" line supersedes everything before it
+                    if (FORGOTTEN.equals(line.substring(separatorIndex + 1).trim())) {
+                        forgetToken(token);
+                        continue;
+                    }
+
+                    try {
+                        final long timestamp = Long.parseLong(line.substring(separatorIndex + 1).trim());
+
+                        putToken(token, timestamp);
+                    } catch (final NumberFormatException e) {
+                        // Skip anything we can't read (a line left half-written by a crash, for example)
+                    }
+                }
+            }
+        } else if (registryFile.getParent() != null) {
+            Files.createDirectories(registryFile.getParent());
+        }
+
+        registryWriter = Files.newBufferedWriter(registryFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Records that the given token became invalid at the given time. If the token is already in this registry, the
+     * later of the two timestamps is kept.
+     *
+     * @param token the invalid device token
+     * @param invalidationTimestamp the time at which the token became invalid
+     *
+     * @throws IOException if the token could not be written to the registry file
+     */
+    synchronized void recordInvalidToken(final String token, final Instant invalidationTimestamp) throws IOException {
+        final long timestamp = invalidationTimestamp.toEpochMilli();
+
+        if (putToken(token, timestamp)) {
+            writeLine(token, Long.toString(timestamp));
+        }
+    }
+
+    /**
+     * Removes the given token from this registry so that senders will try it again. The token will return to the
+     * registry if it's recorded as invalid again.
+     *
+     * @param token the token to forget
+     *
+     * @return {@code true} if the token was in this registry or {@code false} otherwise
+     *
+     * @throws IOException if the change could not be written to the registry file
+     */
+    synchronized boolean forgetInvalidToken(final String token) throws IOException {
+        if (!forgetToken(token)) {
+            return false;
+        }
+
+        writeLine(token, FORGOTTEN);
+        return true;
+    }
+
+    /**
+     * Removes all tokens from this registry and truncates the registry file.
+     *
+     * @throws IOException if the registry file could not be truncated
+     */
+    synchronized void forgetAllInvalidTokens() throws IOException {
+        registryWriter.close();
+
+        invalidTokens = new DeviceTokenSet();
+        forgottenTokens = 0;
+
+        registryWriter = Files.newBufferedWriter(registryFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private boolean putToken(final String token, final long timestamp) {
+        final long previousTimestamp = invalidTokens.getValue(token, NOT_PRESENT);
+
+        if (timestamp <= previousTimestamp) {
+            return false;
+        }
+
+        if (previousTimestamp == NOT_PRESENT && invalidTokens.contains(token)) {
+            forgottenTokens -= 1;
+        }
+
+        invalidTokens.put(token, timestamp);
+        return true;
+    }
+
+    private boolean forgetToken(final String token) {
+        if (invalidTokens.getValue(token, NOT_PRESENT) == NOT_PRESENT) {
+            return false;
+        }
+
+        invalidTokens.put(token, NOT_PRESENT);
+        forgottenTokens += 1;
+
+        return true;
+    }
+
+    private void writeLine(final String token, final String value) throws IOException {
+        // Write tokens in the same canonical form the set would use so the file doesn't depend on input formatting
+        registryWriter.write(TokenUtil.sanitizeTokenString(token).toLowerCase(Locale.ROOT));
+        registryWriter.write(' ');
+        registryWriter.write(value);
+        registryWriter.newLine();
+    }
+
+    /**
+     * Returns the time at which the given token became invalid, if known.
+     *
+     * @param token the device token for which to check
+     *
+     * @return the time at which the given token became invalid, or empty if the token is not known to be invalid
+     */
+    synchronized Optional<Instant> getInvalidationTimestamp(final String token) {
+        final long timestamp = invalidTokens.getValue(token, NOT_PRESENT);
+        return timestamp != NOT_PRESENT ? Optional.of(Instant.ofEpochMilli(timestamp)) : Optional.empty();
+    }
+
+    /**
+     * Returns the number of invalid tokens in this registry.
+     *
+     * @return the number of invalid tokens in this registry
+     */
+    synchronized int size() {
+        return invalidTokens.size() - forgottenTokens;
+    }
+
+    /**
+     * Writes any buffered tokens to the registry file.
+     *
+     * @throws IOException if buffered tokens could not be written
+     */
+    synchronized void flush() throws IOException {
+        registryWriter.flush();
+    }
+
+    /**
+     * Writes any buffered tokens to the registry file and closes it.
+     *
+     * @throws IOException if the registry file could not be written or closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        registryWriter.close();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A thread-safe, fixed-memory histogram of latency values. Values are counted in log-linear buckets: each power of
+ * two is divided into 64 equal sub-buckets, so recorded values are tracked with a relative error of less than 2% no
+ * matter how large they are, and the histogram's size depends only on the largest value it can track (not on the
+ * number of values recorded).</p>
+ *
+ * <p>Values are recorded in microseconds. Values larger than the histogram's maximum trackable value are counted as the
+ * maximum trackable value.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class LatencyHistogram {
+
+    private final long maxTrackableValue;
+    private final AtomicLongArray counts;
+
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    static final long DEFAULT_MAX_TRACKABLE_VALUE = TimeUnit.MINUTES.toMicros(10);
+
+    /**
+     * Constructs a new histogram that can track values from zero to the given maximum.
+     *
+     * @param maxTrackableValue the largest value, in microseconds, that can be tracked precisely by this histogram
+     */
+    LatencyHistogram(final long maxTrackableValue) {
+        if (maxTrackableValue < 1) {
+            throw new IllegalArgumentException("Maximum trackable value must be positive.");
+        }
+
+        this.maxTrackableValue = maxTrackableValue;
+        this.counts = new AtomicLongArray(getBucketIndex(maxTrackableValue) + 1);
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param value the value to record, in microseconds
+     */
+    void recordValue(final long value) {
+        final long clampedValue = Math.min(Math.max(value, 0), maxTrackableValue);
+
+        counts.incrementAndGet(getBucketIndex(clampedValue));
+        totalCount.increment();
+        totalValue.add(clampedValue);
+    }
+
+    /**
+     * <p>Records a value and corrects for "coordinated omission." If a value is larger than the interval at which
+     * values are expected to arrive, the operations that <em>would</em> have been measured during the stall were
+     * delayed too, but were never measured. This method records synthetic values for those missing measurements
+     * (linearly decreasing from the given value by the expected interval) so that percentiles reflect what callers
+     * actually experienced.</p>
+     *
+     * @param value the value to record, in microseconds
+     * @param expectedInterval the interval, in microseconds, at which values are expected; if not positive, no
+     * correction is applied
+     */
+    void recordValueWithExpectedInterval(final long value, final long expectedInterval) {
+        recordValue(value);
+
+        if (expectedInterval > 0) {
+            for (long missingValue = value - expectedInterval; missingValue >= expectedInterval; missingValue -= expectedInterval) {
+                recordValue(missingValue);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values recorded by this histogram.
+     *
+     * @return the number of values recorded by this histogram
+     */
+    long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the mean of all recorded values.
+     *
+     * @return the mean of all recorded values in microseconds, or zero if no values have been recorded
+     */
+    double getMean() {
+        final long count = totalCount.sum();
+        return count > 0 ? (double) totalValue.sum() / count : 0;
+    }
+
+    /**
+     * Returns the values at the given percentiles. All percentiles are calculated from a single pass over the
+     * histogram's buckets, and so are consistent with one another even if values are being recorded concurrently.
+     * Returned values are the highest value that would be counted in the same bucket as the true value.
+     *
+     * @param percentiles the percentiles (between 0 and 100) for which to find values
+     *
+     * @return the values at each of the given percentiles, in microseconds; all values will be zero if no values have
+     * been recorded
+     */
+    long[] getValuesAtPercentiles(final double... percentiles) {
+        final long[] countsSnapshot = new long[counts.length()];
+        long total = 0;
+
+        for (int i = 0; i < countsSnapshot.length; i++) {
+            countsSnapshot[i] = counts.get(i);
+            total += countsSnapshot[i];
+        }
+
+        final long[] values = new long[percentiles.length];
+
+        if (total == 0) {
+            return values;
+        }
+
+        for (int p = 0; p < percentiles.length; p++) {
+            final double percentile = Math.min(Math.max(percentiles[p], 0), 100);
+            final long targetCount = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+
+            long cumulativeCount = 0;
+
+            for (int i = 0; i < countsSnapshot.length; i++) {
+                cumulativeCount += countsSnapshot[i];
+
+                if (cumulativeCount >= targetCount) {
+                    values[p] = Math.min(getHighestEquivalentValue(i), maxTrackableValue);
+                    break;
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns the value at the given percentile.
+     *
+     * @param percentile the percentile (between 0 and 100) for which to find a value
+     *
+     * @return the value at the given percentile, in microseconds, or zero if no values have been recorded
+     */
+    long getValueAtPercentile(final double percentile) {
+        return getValuesAtPercentiles(percentile)[0];
+    }
+
+    /**
+     * Discards all recorded values.
+     */
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+
+        totalCount.reset();
+        totalValue.reset();
+    }
+
+    static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT * 2) {
+            // Small values get a bucket of their own
+            return (int) value;
+        }
+
+        // Keep the top SUB_BUCKET_BITS + 1 bits of the value; the highest of those is always set
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT * 2 + ((shift - 1) * SUB_BUCKET_COUNT) + subBucket;
+    }
+
+    static long getHighestEquivalentValue(final int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT * 2) {
+            return bucketIndex;
+        }
+
+        final int shift = ((bucketIndex - SUB_BUCKET_COUNT * 2) / SUB_BUCKET_COUNT) + 1;
+        final long subBucket = ((bucketIndex - SUB_BUCKET_COUNT * 2) % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
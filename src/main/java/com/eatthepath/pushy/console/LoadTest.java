@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Drives a sustained stream of notifications through a send function and measures throughput and latency. Load
+ * tests run in one of two modes:</p>
+ *
+ * <dl>
+ *     <dt>Open loop</dt>
+ *     <dd>Notifications are sent on a fixed schedule at a target rate regardless of how quickly earlier notifications
+ *     are answered. Response times are measured from the moment each notification <em>should</em> have been sent, so
+ *     stalls in the sender or the server are reflected in the results rather than hidden by them.</dd>
+ *
+ *     <dt>Closed loop</dt>
+ *     <dd>A fixed number of notifications are kept in flight at all times; a new notification is sent as soon as an
+ *     earlier one is answered. Response times are corrected for coordinated omission using the median of recent
+ *     response times (refreshed several times per second) as the expected interval between measurements.</dd>
+ * </dl>
+ *
+ * <p>When run from the command line, a load test starts a {@link LocalMockApnsServer} and sends notifications to it
+ * through an {@link ApnsClientPool}, exactly as the console and headless sender would, then writes its results to
+ * standard output as JSON.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+public class LoadTest {
+
+    private final BulkNotificationSender.NotificationSendFunction sendFunction;
+
+    private final LatencyHistogram responseTimeHistogram = new LatencyHistogram(LatencyHistogram.DEFAULT_MAX_TRACKABLE_VALUE);
+    private final LatencyHistogram serviceTimeHistogram = new LatencyHistogram(LatencyHistogram.DEFAULT_MAX_TRACKABLE_VALUE);
+    private final LatencyHistogram recentServiceTimeHistogram = new LatencyHistogram(LatencyHistogram.DEFAULT_MAX_TRACKABLE_VALUE);
+
+    private final LongAdder sentNotifications = new LongAdder();
+    private final LongAdder acceptedNotifications = new LongAdder();
+    private final LongAdder rejectedNotifications = new LongAdder();
+    private final LongAdder failedNotifications = new LongAdder();
+
+    private final AtomicLong lastCompletionNanos = new AtomicLong();
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final int MAX_OUTSTANDING_OPEN_LOOP_NOTIFICATIONS = 100_000;
+    private static final long EXPECTED_INTERVAL_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final String TOPIC = "com.eatthepath.pushy.console.loadtest";
+    private static final String PAYLOAD = "{\"aps\":{\"alert\":\"Load test\"}}";
+
+    // The mock server doesn't care about the token, but it should at least look like a real one
+    private static final String TOKEN = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private static final String USAGE =
+            "Usage: LoadTest [options]\n" +
+            "\n" +
+            "Sends notifications to an embedded mock APNs server and reports throughput and latency.\n" +
+            "\n" +
+            "  --rate <n>                send n notifications per second (open loop)\n" +
+            "  --concurrency <n>         keep n notifications in flight (closed loop; default: 100)\n" +
+            "  --duration <seconds>      length of the measured run (default: 10)\n" +
+            "  --warmup <seconds>        length of the unmeasured warm-up period (default: 2)\n" +
+            "  --connections <n>         number of concurrent connections to the server (default: 1)\n" +
+            "  --help                    show this message\n";
+
+    enum Mode {
+        OPEN_LOOP,
+        CLOSED_LOOP
+    }
+
+    static class Arguments {
+        Mode mode = Mode.CLOSED_LOOP;
+        int rate;
+        int concurrency = 100;
+        int durationSeconds = 10;
+        int warmupSeconds = 2;
+        int connections = 1;
+
+        boolean help = false;
+
+        static Arguments parse(final String... args) {
+            final Arguments arguments = new Arguments();
+            boolean concurrencySet = false;
+
+            for (int i = 0; i < args.length; i++) {
+                final String option = args[i];
+
+                if ("--help".equals(option) || "-h".equals(option)) {
+                    arguments.help = true;
+                    continue;
+                }
+
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                final int value = parsePositiveInt(option, args[++i]);
+
+                switch (option) {
+                    case "--rate":
+                        arguments.mode = Mode.OPEN_LOOP;
+                        arguments.rate = value;
+                        break;
+
+                    case "--concurrency":
+                        concurrencySet = true;
+                        arguments.concurrency = value;
+                        break;
+
+                    case "--duration":
+                        arguments.durationSeconds = value;
+                        break;
+
+                    case "--warmup":
+                        arguments.warmupSeconds = value;
+                        break;
+
+                    case "--connections":
+                        arguments.connections = value;
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("Unrecognized option: " + option);
+                }
+            }
+
+            if (arguments.mode == Mode.OPEN_LOOP && concurrencySet) {
+                throw new IllegalArgumentException("Only one of --rate or --concurrency may be specified.");
+            }
+
+            return arguments;
+        }
+
+        private static int parsePositiveInt(final String option, final String value) {
+            final int parsedValue;
+
+            try {
+                parsedValue = Integer.parseInt(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Value for " + option + " must be an integer: " + value);
+            }
+
+            // A zero-length warm-up is reasonable; zero of anything else isn't
+            if (parsedValue < 0 || (parsedValue == 0 && !"--warmup".equals(option))) {
+                throw new IllegalArgumentException("Value for " + option + " must be positive: " + value);
+            }
+
+            return parsedValue;
+        }
+    }
+
+    /**
+     * The outcome of a load test.
+     */
+    static class Result {
+        private final Mode mode;
+        private final long measuredNanos;
+
+        private final long sent;
+        private final long accepted;
+        private final long rejected;
+        private final long failed;
+
+        private final long[] responseTimes;
+        private final long[] serviceTimes;
+        private final long expectedIntervalMicros;
+
+        private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 100 };
+        private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999", "max" };
+
+        private Result(final LoadTest loadTest, final Mode mode, final long measurementStartNanos, final long expectedIntervalMicros) {
+            this.mode = mode;
+            this.measuredNanos = Math.max(loadTest.lastCompletionNanos.get() - measurementStartNanos, 1);
+
+            this.sent = loadTest.sentNotifications.sum();
+            this.accepted = loadTest.acceptedNotifications.sum();
+            this.rejected = loadTest.rejectedNotifications.sum();
+            this.failed = loadTest.failedNotifications.sum();
+
+            this.responseTimes = loadTest.responseTimeHistogram.getValuesAtPercentiles(PERCENTILES);
+            this.serviceTimes = loadTest.serviceTimeHistogram.getValuesAtPercentiles(PERCENTILES);
+            this.expectedIntervalMicros = expectedIntervalMicros;
+        }
+
+        long getSent() {
+            return sent;
+        }
+
+        long getAccepted() {
+            return accepted;
+        }
+
+        long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the number of notifications answered per second during the measured part of the test.
+         *
+         * @return the number of notifications answered per second
+         */
+        double getThroughput() {
+            return (accepted + rejected) * (double) TimeUnit.SECONDS.toNanos(1) / measuredNanos;
+        }
+
+        /**
+         * Returns the response time (corrected for coordinated omission) at the given percentile.
+         *
+         * @param percentile one of 50, 90, 99, 99.9, or 100
+         *
+         * @return the response time at the given percentile in microseconds
+         */
+        long getResponseTimeMicros(final double percentile) {
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                if (PERCENTILES[i] == percentile) {
+                    return responseTimes[i];
+                }
+            }
+
+            throw new IllegalArgumentException("Unsupported percentile: " + percentile);
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+
+            map.put("mode", mode == Mode.OPEN_LOOP ? "open-loop" : "closed-loop");
+            map.put("measuredMillis", TimeUnit.NANOSECONDS.toMillis(measuredNanos));
+            map.put("sent", sent);
+            map.put("accepted", accepted);
+            map.put("rejected", rejected);
+            map.put("failed", failed);
+            map.put("throughput", Math.round(getThroughput() * 10) / 10.0);
+
+            // Response times include time spent waiting to be sent (open loop) or synthetic, corrected measurements
+            // (closed loop); service times are measured from the moment each notification was actually sent.
+            final Map<String, Object> responseTimeMap = new LinkedHashMap<>();
+            final Map<String, Object> serviceTimeMap = new LinkedHashMap<>();
+
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                responseTimeMap.put(PERCENTILE_NAMES[i], responseTimes[i]);
+                serviceTimeMap.put(PERCENTILE_NAMES[i], serviceTimes[i]);
+            }
+
+            map.put("responseTimeMicros", responseTimeMap);
+            map.put("serviceTimeMicros", serviceTimeMap);
+
+            if (mode == Mode.CLOSED_LOOP) {
+                map.put("expectedIntervalMicros", expectedIntervalMicros);
+            }
+
+            return map;
+        }
+    }
+
+    /**
+     * Constructs a new load test that sends notifications with the given function.
+     *
+     * @param sendFunction the function with which to send each notification
+     */
+    LoadTest(final BulkNotificationSender.NotificationSendFunction sendFunction) {
+        this.sendFunction = sendFunction;
+    }
+
+    /**
+     * Sends notifications at a fixed rate, measuring response times from each notification's scheduled send time.
+     *
+     * @param notificationsPerSecond the rate at which to send notifications
+     * @param warmupNanos the length of the unmeasured warm-up period
+     * @param durationNanos the length of the measured period
+     *
+     * @return the results of the test
+     *
+     * @throws InterruptedException if interrupted while sending notifications
+     */
+    Result runOpenLoop(final int notificationsPerSecond, final long warmupNanos, final long durationNanos) throws InterruptedException {
+        final double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / notificationsPerSecond;
+
+        // Open-loop tests shouldn't wait for responses, but we need *some* limit to avoid running out of memory if the
+        // server stops responding entirely.
+        final Semaphore semaphore = new Semaphore(MAX_OUTSTANDING_OPEN_LOOP_NOTIFICATIONS);
+
+        final long startNanos = System.nanoTime();
+        final long measurementStartNanos = startNanos + warmupNanos;
+        final long endNanos = measurementStartNanos + durationNanos;
+
+        for (long i = 0; ; i++) {
+            final long intendedSendNanos = startNanos + (long) (i * intervalNanos);
+
+            if (intendedSendNanos - endNanos >= 0) {
+                break;
+            }
+
+            for (long now = System.nanoTime(); intendedSendNanos - now > 0; now = System.nanoTime()) {
+                LockSupport.parkNanos(intendedSendNanos - now);
+            }
+
+            semaphore.acquire();
+            sendNotification(intendedSendNanos, intendedSendNanos - measurementStartNanos >= 0, 0, semaphore);
+        }
+
+        semaphore.acquire(MAX_OUTSTANDING_OPEN_LOOP_NOTIFICATIONS);
+
+        return new Result(this, Mode.OPEN_LOOP, measurementStartNanos, 0);
+    }
+
+    /**
+     * Keeps a fixed number of notifications in flight, correcting response times for coordinated omission.
+     *
+     * @param concurrency the number of notifications to keep in flight
+     * @param warmupNanos the length of the unmeasured warm-up period
+     * @param durationNanos the length of the measured period
+     *
+     * @return the results of the test
+     *
+     * @throws InterruptedException if interrupted while sending notifications
+     */
+    Result runClosedLoop(final int concurrency, final long warmupNanos, final long durationNanos) throws InterruptedException {
+        final Semaphore semaphore = new Semaphore(concurrency);
+
+        final long startNanos = System.nanoTime();
+        final long measurementStartNanos = startNanos + warmupNanos;
+        final long endNanos = measurementStartNanos + durationNanos;
+
+        long expectedIntervalMicros = 0;
+        long lastExpectedIntervalUpdateNanos = startNanos;
+
+        while (true) {
+            semaphore.acquire();
+
+            final long now = System.nanoTime();
+
+            if (now - endNanos >= 0) {
+                semaphore.release();
+                break;
+            }
+
+            final boolean measured = now - measurementStartNanos >= 0;
+
+            if (now - lastExpectedIntervalUpdateNanos >= EXPECTED_INTERVAL_UPDATE_NANOS) {
+                // The "expected" interval is a typical response time. Response times tend to fall as connections open
+                // and the JIT compiler does its work, so we only consider recent responses; if nothing has come back
+                // recently, we keep using the previous estimate.
+                if (recentServiceTimeHistogram.getTotalCount() > 0) {
+                    expectedIntervalMicros = recentServiceTimeHistogram.getValueAtPercentile(50);
+                    recentServiceTimeHistogram.reset();
+                }
+
+                lastExpectedIntervalUpdateNanos = now;
+            }
+
+            sendNotification(now, measured, expectedIntervalMicros, semaphore);
+        }
+
+        semaphore.acquire(concurrency);
+
+        return new Result(this, Mode.CLOSED_LOOP, measurementStartNanos, expectedIntervalMicros);
+    }
+
+    private void sendNotification(final long intendedSendNanos, final boolean measured, final long expectedIntervalMicros, final Semaphore semaphore) {
+        final long sendNanos = System.nanoTime();
+
+        CompletableFuture<PushNotificationResponse<ApnsPushNotification>> responseFuture;
+
+        try {
+            responseFuture = sendFunction.sendNotification(new SimpleApnsPushNotification(TOKEN, TOPIC, PAYLOAD));
+        } catch (final Exception e) {
+            responseFuture = CompletableFuture.failedFuture(e);
+        }
+
+        if (measured) {
+            sentNotifications.increment();
+        }
+
+        responseFuture.whenComplete((response, cause) -> {
+            final long completionNanos = System.nanoTime();
+
+            final long serviceTimeMicros = TimeUnit.NANOSECONDS.toMicros(completionNanos - sendNanos);
+            final long responseTimeMicros = TimeUnit.NANOSECONDS.toMicros(completionNanos - intendedSendNanos);
+
+            if (response != null) {
+                recentServiceTimeHistogram.recordValue(serviceTimeMicros);
+            }
+
+            if (measured) {
+                if (response != null) {
+                    if (response.isAccepted()) {
+                        acceptedNotifications.increment();
+                    } else {
+                        rejectedNotifications.increment();
+                    }
+
+                    serviceTimeHistogram.recordValue(serviceTimeMicros);
+                    responseTimeHistogram.recordValueWithExpectedInterval(responseTimeMicros, expectedIntervalMicros);
+                } else {
+                    failedNotifications.increment();
+                }
+
+                lastCompletionNanos.accumulateAndGet(completionNanos, (a, b) -> a - b >= 0 ? a : b);
+            }
+
+            semaphore.release();
+        });
+    }
+
+    /**
+     * Runs a load test against an embedded mock APNs server.
+     *
+     * @param args a list of command-line arguments; pass {@code --help} for details
+     */
+    public static void main(final String... args) {
+        System.exit(run(System.out, System.err, args));
+    }
+
+    static int run(final PrintStream out, final PrintStream err, final String... args) {
+        final Arguments arguments;
+
+        try {
+            arguments = Arguments.parse(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println();
+            err.print(USAGE);
+
+            return EXIT_USAGE;
+        }
+
+        if (arguments.help) {
+            out.print(USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        try (final LocalMockApnsServer mockApnsServer = LocalMockApnsServer.start(Math.max(arguments.concurrency, 1_000))) {
+            final ApnsClientMetrics apnsClientMetrics = new ApnsClientMetrics();
+            final ApnsClientPool apnsClientPool = new ApnsClientPool(ApnsClientPool.DEFAULT_IDLE_TIMEOUT, apnsClientMetrics,
+                    mockApnsServer.getClientBuilderCustomizer()
+                            .andThen(apnsClientBuilder -> apnsClientBuilder.setConcurrentConnections(arguments.connections)));
+
+            try {
+                final ApnsCredentials credentials = LocalMockApnsServer.generateCredentials();
+
+                final LoadTest loadTest = new LoadTest(pushNotification -> apnsClientPool.sendNotification(
+                        LocalMockApnsServer.HOST, mockApnsServer.getPort(), credentials, pushNotification));
+
+                final long warmupNanos = TimeUnit.SECONDS.toNanos(arguments.warmupSeconds);
+                final long durationNanos = TimeUnit.SECONDS.toNanos(arguments.durationSeconds);
+
+                final Result result = arguments.mode == Mode.OPEN_LOOP ?
+                        loadTest.runOpenLoop(arguments.rate, warmupNanos, durationNanos) :
+                        loadTest.runClosedLoop(arguments.concurrency, warmupNanos, durationNanos);
+
+                final Map<String, Object> resultMap = result.toMap();
+                resultMap.put("connectionFailures", apnsClientMetrics.snapshot().getConnectionCreationFailures());
+
+                out.println(JsonSerializer.writeJsonTextAsString(resultMap));
+
+                return EXIT_SUCCESS;
+            } finally {
+                apnsClientPool.close().join();
+            }
+        } catch (final Exception e) {
+            err.println("Load test failed: " + e);
+            return EXIT_ERROR;
+        }
+    }
+}
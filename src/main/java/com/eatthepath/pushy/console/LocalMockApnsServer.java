@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClientBuilder;
+import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
+import com.eatthepath.pushy.apns.server.AcceptAllPushNotificationHandlerFactory;
+import com.eatthepath.pushy.apns.server.MockApnsServer;
+import com.eatthepath.pushy.apns.server.MockApnsServerBuilder;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * <p>A mock APNs server that runs on a local, ephemeral port and accepts every notification it receives. Local mock
+ * servers generate a throwaway, self-signed TLS certificate when they start, and provide credentials and client
+ * configuration that will work with that certificate, so clients can exercise the complete send path (TLS, HTTP/2, and
+ * token authentication) without talking to Apple's servers.</p>
+ *
+ * <p>Local mock servers are intended for load testing, and are not a substitute for testing against the real APNs
+ * development environment.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class LocalMockApnsServer implements Closeable {
+
+    private final MockApnsServer mockApnsServer;
+    private final X509Certificate serverCertificate;
+    private final int port;
+
+    static final String HOST = "localhost";
+
+    private static final String KEY_ID = "LOADTESTKY";
+    private static final String TEAM_ID = "LOADTESTTM";
+
+    private LocalMockApnsServer(final MockApnsServer mockApnsServer, final X509Certificate serverCertificate, final int port) {
+        this.mockApnsServer = mockApnsServer;
+        this.serverCertificate = serverCertificate;
+        this.port = port;
+    }
+
+    /**
+     * Generates a new server certificate and starts a mock server on an ephemeral port.
+     *
+     * @param maxConcurrentStreams the maximum number of concurrent streams the server will allow per connection
+     *
+     * @return a running mock server
+     *
+     * @throws GeneralSecurityException if a certificate could not be generated for any reason
+     * @throws IOException if the server could not be started for any reason
+     */
+    static LocalMockApnsServer start(final int maxConcurrentStreams) throws GeneralSecurityException, IOException {
+        final KeyPair keyPair = generateKeyPair();
+        final X509Certificate serverCertificate = generateSelfSignedCertificate(keyPair);
+
+        final MockApnsServer mockApnsServer = new MockApnsServerBuilder()
+                .setServerCredentials(new X509Certificate[] { serverCertificate }, keyPair.getPrivate(), null)
+                .setHandlerFactory(new AcceptAllPushNotificationHandlerFactory())
+                .setMaxConcurrentStreams(maxConcurrentStreams)
+                .build();
+
+        final int port = mockApnsServer.start(0).join();
+
+        return new LocalMockApnsServer(mockApnsServer, serverCertificate, port);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns a client builder customizer that configures clients to trust this server's self-signed certificate.
+     *
+     * @return a client builder customizer for use with an {@link ApnsClientPool}
+     */
+    Consumer<ApnsClientBuilder> getClientBuilderCustomizer() {
+        return apnsClientBuilder -> apnsClientBuilder.setTrustedServerCertificateChain(serverCertificate);
+    }
+
+    /**
+     * Generates a new set of token-based credentials. Local mock servers accept all notifications, so any signing key
+     * will do.
+     *
+     * @return a new set of credentials
+     *
+     * @throws GeneralSecurityException if a signing key could not be generated for any reason
+     */
+    static ApnsCredentials generateCredentials() throws GeneralSecurityException {
+        return new ApnsCredentials(new ApnsSigningKey(KEY_ID, TEAM_ID, (ECPrivateKey) generateKeyPair().getPrivate()));
+    }
+
+    private static KeyPair generateKeyPair() throws GeneralSecurityException {
+        final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(256);
+
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    private static X509Certificate generateSelfSignedCertificate(final KeyPair keyPair) throws GeneralSecurityException, IOException {
+        final X500Name subject = new X500Name("CN=" + HOST);
+        final Instant now = Instant.now();
+
+        final X509v3CertificateBuilder certificateBuilder = new JcaX509v3CertificateBuilder(subject,
+                BigInteger.valueOf(now.toEpochMilli()),
+                Date.from(now.minus(Duration.ofDays(1))),
+                Date.from(now.plus(Duration.ofDays(1))),
+                subject,
+                keyPair.getPublic());
+
+        // Clients verify that the server's certificate matches the host to which they're connecting
+        certificateBuilder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName[] {
+                new GeneralName(GeneralName.dNSName, HOST),
+                new GeneralName(GeneralName.iPAddress, "127.0.0.1")
+        }));
+
+        try {
+            return new JcaX509CertificateConverter().getCertificate(certificateBuilder.build(
+                    new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+        } catch (final OperatorCreationException e) {
+            throw new GeneralSecurityException(e);
+        }
+    }
+
+    /**
+     * Shuts down this mock server.
+     */
+    @Override
+    public void close() {
+        mockApnsServer.shutdown().join();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.PushType;
+
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Turns push notification responses into pre-rendered {@link NotificationResultRow NotificationResultRows}. Localized
+ * labels are looked up once when the formatter is constructed. Formatters are thread-safe and are intended to be used
+ * off of the JavaFX application thread.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultFormatter {
+
+    private final String immediatePriorityLabel;
+    private final String conservePowerPriorityLabel;
+    private final Map<PushType, String> pushTypeLabels = new EnumMap<>(PushType.class);
+
+    private final String acceptedStatusLabel;
+    private final String rejectedStatusLabel;
+    private final String skippedStatusLabel;
+    private final String acceptedDetails;
+    private final String unknownRejectionReason;
+    private final String expirationDetailsPattern;
+
+    // Replaying a list of dead tokens can skip every token in the list, so unlike expiration details, invalid-token
+    // details are common enough to be worth keeping a (non-thread-safe) MessageFormat around for each thread
+    private final ThreadLocal<MessageFormat> invalidTokenDetailsFormat;
+
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    /**
+     * Constructs a new formatter that draws its labels from the given resource bundle.
+     *
+     * @param resources the resource bundle from which to load localized labels
+     */
+    NotificationResultFormatter(final ResourceBundle resources) {
+        immediatePriorityLabel = resources.getString("delivery-priority.immediate");
+        conservePowerPriorityLabel = resources.getString("delivery-priority.conserve-power");
+
+        for (final PushType pushType : PushType.values()) {
+            final String key = "notification-type." + pushType.name().toLowerCase(Locale.US);
+
+            // Newer versions of Pushy may know about push types we don't have labels for yet
+            pushTypeLabels.put(pushType, resources.containsKey(key) ? resources.getString(key) : pushType.getHeaderValue());
+        }
+
+        acceptedStatusLabel = resources.getString("notification-result.status.accepted");
+        rejectedStatusLabel = resources.getString("notification-result.status.rejected");
+        skippedStatusLabel = resources.getString("notification-result.status.skipped");
+        acceptedDetails = resources.getString("notification-result.details.accepted");
+        unknownRejectionReason = resources.getString("notification-result.status.rejected.reason-unknown");
+        expirationDetailsPattern = resources.getString("notification-result.details.expiration");
+        final String invalidTokenDetailsPattern = resources.getString("notification-result.details.invalid-token");
+        invalidTokenDetailsFormat = ThreadLocal.withInitial(() -> new MessageFormat(invalidTokenDetailsPattern));
+    }
+
+    /**
+     * Renders the given push notification response as a notification result row.
+     *
+     * @param pushNotificationResponse the response to render
+     *
+     * @return a row with display strings for the given response
+     */
+    NotificationResultRow format(final PushNotificationResponse<? extends ApnsPushNotification> pushNotificationResponse) {
+        final ApnsPushNotification pushNotification = pushNotificationResponse.getPushNotification();
+
+        final String details;
+
+        if (pushNotificationResponse.isAccepted()) {
+            details = acceptedDetails;
+        } else {
+            final String rejectionReason = pushNotificationResponse.getRejectionReason().orElse(unknownRejectionReason);
+
+            // MessageFormat instances aren't thread-safe, but token expiration is rare enough that it's not worth
+            // caching one per thread.
+            details = pushNotificationResponse.getTokenInvalidationTimestamp()
+                    .map(expiration -> new MessageFormat(expirationDetailsPattern).format(new Object[] { rejectionReason, Date.from(expiration) }))
+                    .orElse(rejectionReason);
+        }
+
+        return new NotificationResultRow(pushNotification.getTopic(),
+                pushNotification.getToken(),
+                formatPayload(pushNotification.getPayload()),
+                pushNotification.getCollapseId(),
+                formatPriority(pushNotification.getPriority()),
+                formatPushType(pushNotification.getPushType()),
+                pushNotificationResponse.isAccepted(),
+                pushNotificationResponse.isAccepted() ? acceptedStatusLabel : rejectedStatusLabel,
+                details,
+                String.valueOf(pushNotificationResponse.getApnsId()));
+    }
+
+    /**
+     * Renders a notification that was not sent because its token is known to be invalid as a notification result row.
+     *
+     * @param pushNotification the notification that was not sent
+     * @param invalidationTimestamp the time at which the notification's token became invalid
+     *
+     * @return a row with display strings for the skipped notification
+     */
+    NotificationResultRow formatInvalidTokenSkipped(final ApnsPushNotification pushNotification, final Instant invalidationTimestamp) {
+        return new NotificationResultRow(pushNotification.getTopic(),
+                pushNotification.getToken(),
+                formatPayload(pushNotification.getPayload()),
+                pushNotification.getCollapseId(),
+                formatPriority(pushNotification.getPriority()),
+                formatPushType(pushNotification.getPushType()),
+                false,
+                skippedStatusLabel,
+                invalidTokenDetailsFormat.get().format(new Object[] { Date.from(invalidationTimestamp) }),
+                null);
+    }
+
+    static String formatPayload(final String payload) {
+        return payload != null ? WHITESPACE_PATTERN.matcher(payload).replaceAll(" ") : null;
+    }
+
+    String formatPriority(final DeliveryPriority deliveryPriority) {
+        return deliveryPriority == DeliveryPriority.IMMEDIATE ? immediatePriorityLabel : conservePowerPriorityLabel;
+    }
+
+    String formatPushType(final PushType pushType) {
+        return pushType != null ? pushTypeLabels.get(pushType) : null;
+    }
+}
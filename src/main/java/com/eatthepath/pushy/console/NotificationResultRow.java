@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+/**
+ * An immutable, pre-rendered row in the notification result table. All display strings are computed once when the row
+ * is created (usually by a {@link NotificationResultFormatter} on a background thread) so that rendering table cells
+ * never needs to do any formatting work.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultRow {
+
+    private final String topic;
+    private final String token;
+    private final String payload;
+    private final String collapseId;
+    private final String priority;
+    private final String type;
+
+    private final boolean accepted;
+    private final String status;
+    private final String details;
+    private final String apnsId;
+
+    NotificationResultRow(final String topic, final String token, final String payload, final String collapseId,
+                          final String priority, final String type, final boolean accepted, final String status,
+                          final String details, final String apnsId) {
+
+        this.topic = topic;
+        this.token = token;
+        this.payload = payload;
+        this.collapseId = collapseId;
+        this.priority = priority;
+        this.type = type;
+        this.accepted = accepted;
+        this.status = status;
+        this.details = details;
+        this.apnsId = apnsId;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * Returns the notification's payload with all runs of whitespace collapsed to a single space.
+     *
+     * @return the notification's payload, formatted for display on a single line
+     */
+    String getPayload() {
+        return payload;
+    }
+
+    String getCollapseId() {
+        return collapseId;
+    }
+
+    String getPriority() {
+        return priority;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    boolean isAccepted() {
+        return accepted;
+    }
+
+    String getStatus() {
+        return status;
+    }
+
+    String getDetails() {
+        return details;
+    }
+
+    String getApnsId() {
+        return apnsId;
+    }
+}
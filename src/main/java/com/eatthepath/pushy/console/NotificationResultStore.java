@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.collections.ObservableListBase;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+/**
+ * <p>An append-only, observable list of notification results that holds only a fixed number of the most recent rows in
+ * memory. When the in-memory window is full, the oldest row is "spilled" to a compact, append-only file on disk. Strings
+ * that repeat from row to row (payloads, topics, status labels, and so on) are kept in memory once and written to the
+ * file as indices, and tokens are written as raw bytes. Rows that have been spilled to disk are read back in (a page at
+ * a time) only when something asks for them, which, for a {@link javafx.scene.control.TableView}, generally means only
+ * when the user scrolls to them or searches through them.</p>
+ *
+ * <p>Result stores are not thread-safe and should only be used from the JavaFX application thread; the one exception is
+ * searching, which may run on any thread once started with {@link #newSearch(Predicate, int)}. Result stores hold an
+ * open file and should be closed when no longer needed.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultStore extends ObservableListBase<NotificationResultRow> implements Closeable {
+
+    private final NotificationResultRow[] window;
+    private int windowHead = 0;
+    private int windowSize = 0;
+
+    private final Path spillFile;
+    private final FileChannel spillFileChannel;
+    private final ByteArrayOutputStream spillBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream spillOutputStream = new DataOutputStream(spillBuffer);
+    private long spillFileLength = 0;
+
+    private int spilledRows = 0;
+    private long[] spilledRowOffsets = new long[PAGE_SIZE];
+
+    private final List<String> stringTable = new ArrayList<>();
+    private final Map<String, Integer> stringTableIndices = new HashMap<>();
+
+    private final Map<Integer, NotificationResultRow[]> pageCache = new LinkedHashMap<>(MAX_CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, NotificationResultRow[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    static final int DEFAULT_WINDOW_SIZE = 10_000;
+
+    private static final int PAGE_SIZE = 256;
+    private static final int MAX_CACHED_PAGES = 16;
+    private static final int MAX_SPILL_BUFFER_SIZE = 64 * 1024;
+    private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_STRING_TABLE_SIZE = 8192;
+
+    private static final int TOKEN_LENGTH = 32;
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    private static final int FLAG_ACCEPTED = 1;
+    private static final int FLAG_RAW_TOKEN = 1 << 1;
+    private static final int FLAG_RAW_APNS_ID = 1 << 2;
+
+    private static final int NULL_STRING = -1;
+    private static final int INLINE_STRING = -2;
+
+    /**
+     * Constructs a new result store that keeps up to the given number of rows in memory.
+     *
+     * @param windowSize the maximum number of rows to keep in memory
+     *
+     * @throws IOException if a spill file could not be created
+     */
+    NotificationResultStore(final int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive.");
+        }
+
+        this.window = new NotificationResultRow[windowSize];
+
+        this.spillFile = Files.createTempFile("pushy-console-results-", ".bin");
+        this.spillFile.toFile().deleteOnExit();
+
+        this.spillFileChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public NotificationResultRow get(final int index) {
+        Objects.checkIndex(index, size());
+
+        return index >= spilledRows ?
+                window[(windowHead + (index - spilledRows)) % window.length] :
+                getSpilledPage(index / PAGE_SIZE)[index % PAGE_SIZE];
+    }
+
+    @Override
+    public int size() {
+        return spilledRows + windowSize;
+    }
+
+    /**
+     * Appends a row to the end of this store. Only appending is supported; attempting to insert a row anywhere else
+     * will result in an {@link UnsupportedOperationException}.
+     *
+     * @param index the index at which to add the row; must be equal to the current size of this store
+     * @param notificationResultRow the row to add
+     */
+    @Override
+    public void add(final int index, final NotificationResultRow notificationResultRow) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("Notification result stores only support appending rows.");
+        }
+
+        addAll(Collections.singletonList(notificationResultRow));
+    }
+
+    /**
+     * Appends all the given rows to the end of this store, notifying listeners of the change exactly once.
+     *
+     * @param notificationResultRows the rows to add
+     *
+     * @return {@code true} if any rows were added or {@code false} otherwise
+     */
+    @Override
+    public boolean addAll(final Collection<? extends NotificationResultRow> notificationResultRows) {
+        if (notificationResultRows.isEmpty()) {
+            return false;
+        }
+
+        final int start = size();
+
+        for (final NotificationResultRow notificationResultRow : notificationResultRows) {
+            if (windowSize == window.length) {
+                spill(window[windowHead]);
+
+                window[windowHead] = null;
+                windowHead = (windowHead + 1) % window.length;
+                windowSize -= 1;
+            }
+
+            window[(windowHead + windowSize) % window.length] = Objects.requireNonNull(notificationResultRow);
+            windowSize += 1;
+        }
+
+        // Only additions are visible to listeners; moving a row from memory to disk doesn't change what's in the list
+        beginChange();
+        nextAdd(start, size());
+        endChange();
+
+        return true;
+    }
+
+    /**
+     * <p>Prepares a search for the first row at or after the given index that matches the given predicate, wrapping
+     * around to the start of the store if no row after the given index matches. The search covers the rows in this
+     * store at the time this method is called; this method must be called from the JavaFX application thread, but the
+     * returned search may be run on any thread, and should generally be run on a background thread.</p>
+     *
+     * <p>Searches read spilled rows straight through the spill file rather than a page at a time through the page cache,
+     * so searching doesn't push the pages the table is actually showing out of the cache. Searches check for interruption
+     * as they go and will throw an {@link InterruptedException} if interrupted.</p>
+     *
+     * @param predicate the predicate to test against each row
+     * @param fromIndex the index at which to start searching
+     *
+     * @return a search that returns the index of the first matching row, or -1 if no row matches
+     */
+    Callable<Integer> newSearch(final Predicate<NotificationResultRow> predicate, final int fromIndex) {
+        try {
+            flushSpillBuffer();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final int size = size();
+        final int startIndex = Math.min(Math.max(fromIndex, 0), size);
+
+        final int searchSpilledRows = spilledRows;
+        final long startOffset = startIndex < spilledRows ? spilledRowOffsets[startIndex] : spillFileLength;
+
+        // Rows spilled before now only refer to strings already in the table, and the table only ever grows
+        final List<String> searchStringTable = List.copyOf(stringTable);
+
+        final NotificationResultRow[] windowRows = new NotificationResultRow[windowSize];
+
+        for (int i = 0; i < windowSize; i++) {
+            windowRows[i] = window[(windowHead + i) % window.length];
+        }
+
+        return () -> {
+            int matchIndex = searchSpilledRows(predicate, searchStringTable, startIndex, startOffset, searchSpilledRows);
+
+            if (matchIndex < 0) {
+                matchIndex = searchRows(predicate, windowRows, searchSpilledRows, Math.max(startIndex, searchSpilledRows), size);
+            }
+
+            if (matchIndex < 0) {
+                matchIndex = searchSpilledRows(predicate, searchStringTable, 0, 0, Math.min(startIndex, searchSpilledRows));
+            }
+
+            if (matchIndex < 0) {
+                matchIndex = searchRows(predicate, windowRows, searchSpilledRows, searchSpilledRows, startIndex);
+            }
+
+            return matchIndex;
+        };
+    }
+
+    private int searchSpilledRows(final Predicate<NotificationResultRow> predicate, final List<String> stringTable,
+                                  final int startIndex, final long startOffset, final int endIndex)
+            throws IOException, InterruptedException {
+
+        if (startIndex >= endIndex) {
+            return -1;
+        }
+
+        // Use a channel of our own; the store's channel may be written (and positioned) on another thread while we read
+        try (final FileChannel searchChannel = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+            searchChannel.position(startOffset);
+
+            // The file may have grown since the search started, but we'll never read more rows than it had then
+            final DataInputStream dataInputStream = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(searchChannel), SEARCH_BUFFER_SIZE));
+
+            for (int i = startIndex; i < endIndex; i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                if (predicate.test(readRow(dataInputStream, stringTable))) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static int searchRows(final Predicate<NotificationResultRow> predicate, final NotificationResultRow[] rows,
+                                  final int firstRowIndex, final int startIndex, final int endIndex) throws InterruptedException {
+
+        for (int i = startIndex; i < endIndex; i++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (predicate.test(rows[i - firstRowIndex])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    int getSpilledRowCount() {
+        return spilledRows;
+    }
+
+    long getSpillFileLength() {
+        return spillFileLength + spillBuffer.size();
+    }
+
+    private void spill(final NotificationResultRow notificationResultRow) {
+        if (spilledRows == spilledRowOffsets.length) {
+            spilledRowOffsets = Arrays.copyOf(spilledRowOffsets, spilledRowOffsets.length * 2);
+        }
+
+        spilledRowOffsets[spilledRows] = spillFileLength + spillBuffer.size();
+
+        try {
+            final byte[] tokenBytes = encodeToken(notificationResultRow.getToken());
+            final UUID apnsId = parseApnsId(notificationResultRow.getApnsId());
+
+            int flags = 0;
+
+            if (notificationResultRow.isAccepted()) {
+                flags |= FLAG_ACCEPTED;
+            }
+
+            if (tokenBytes != null) {
+                flags |= FLAG_RAW_TOKEN;
+            }
+
+            if (apnsId != null) {
+                flags |= FLAG_RAW_APNS_ID;
+            }
+
+            spillOutputStream.writeByte(flags);
+
+            if (tokenBytes != null) {
+                spillOutputStream.write(tokenBytes);
+            } else {
+                writeNullableString(notificationResultRow.getToken());
+            }
+
+            writeInternedString(notificationResultRow.getTopic());
+            writeInternedString(notificationResultRow.getPayload());
+            writeInternedString(notificationResultRow.getCollapseId());
+            writeInternedString(notificationResultRow.getPriority());
+            writeInternedString(notificationResultRow.getType());
+            writeInternedString(notificationResultRow.getStatus());
+            writeInternedString(notificationResultRow.getDetails());
+
+            if (apnsId != null) {
+                spillOutputStream.writeLong(apnsId.getMostSignificantBits());
+                spillOutputStream.writeLong(apnsId.getLeastSignificantBits());
+            } else {
+                writeNullableString(notificationResultRow.getApnsId());
+            }
+
+            if (spillBuffer.size() >= MAX_SPILL_BUFFER_SIZE) {
+                flushSpillBuffer();
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // The page this row belongs to may be cached in a partially-filled state
+        pageCache.remove(spilledRows / PAGE_SIZE);
+        spilledRows += 1;
+    }
+
+    /**
+     * Writes a string as an index into this store's string table, adding the string to the table if it's not already
+     * there. Most columns (the payload in a bulk send, for example) repeat the same handful of values from row to row,
+     * so this keeps the spill file small. Once the table is full, new strings are written in full instead.
+     */
+    private void writeInternedString(final String string) throws IOException {
+        if (string == null) {
+            spillOutputStream.writeInt(NULL_STRING);
+            return;
+        }
+
+        Integer index = stringTableIndices.get(string);
+
+        if (index == null && stringTable.size() < MAX_STRING_TABLE_SIZE) {
+            index = stringTable.size();
+
+            stringTable.add(string);
+            stringTableIndices.put(string, index);
+        }
+
+        if (index != null) {
+            spillOutputStream.writeInt(index);
+        } else {
+            spillOutputStream.writeInt(INLINE_STRING);
+            writeNullableString(string);
+        }
+    }
+
+    private void writeNullableString(final String string) throws IOException {
+        if (string == null) {
+            spillOutputStream.writeInt(-1);
+        } else {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+            spillOutputStream.writeInt(bytes.length);
+            spillOutputStream.write(bytes);
+        }
+    }
+
+    private void flushSpillBuffer() throws IOException {
+        if (spillBuffer.size() > 0) {
+            final ByteBuffer byteBuffer = ByteBuffer.wrap(spillBuffer.toByteArray());
+
+            while (byteBuffer.hasRemaining()) {
+                spillFileLength += spillFileChannel.write(byteBuffer, spillFileLength);
+            }
+
+            spillBuffer.reset();
+        }
+    }
+
+    private NotificationResultRow[] getSpilledPage(final int page) {
+        NotificationResultRow[] rows = pageCache.get(page);
+
+        if (rows == null) {
+            try {
+                rows = readSpilledPage(page);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            pageCache.put(page, rows);
+        }
+
+        return rows;
+    }
+
+    private NotificationResultRow[] readSpilledPage(final int page) throws IOException {
+        flushSpillBuffer();
+
+        final int firstRow = page * PAGE_SIZE;
+        final int endRow = Math.min(firstRow + PAGE_SIZE, spilledRows);
+
+        final long start = spilledRowOffsets[firstRow];
+        final long end = endRow < spilledRows ? spilledRowOffsets[endRow] : spillFileLength;
+
+        final ByteBuffer byteBuffer = ByteBuffer.allocate(Math.toIntExact(end - start));
+
+        while (byteBuffer.hasRemaining()) {
+            if (spillFileChannel.read(byteBuffer, start + byteBuffer.position()) < 0) {
+                throw new EOFException("Unexpected end of spill file");
+            }
+        }
+
+        final DataInputStream dataInputStream =
+                new DataInputStream(new ByteArrayInputStream(byteBuffer.array()));
+
+        final NotificationResultRow[] rows = new NotificationResultRow[endRow - firstRow];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = readRow(dataInputStream, stringTable);
+        }
+
+        return rows;
+    }
+
+    private static NotificationResultRow readRow(final DataInputStream dataInputStream, final List<String> stringTable)
+            throws IOException {
+
+        final int flags = dataInputStream.readUnsignedByte();
+
+        final String token;
+
+        if ((flags & FLAG_RAW_TOKEN) != 0) {
+            final byte[] tokenBytes = new byte[TOKEN_LENGTH];
+            dataInputStream.readFully(tokenBytes);
+
+            token = HEX_FORMAT.formatHex(tokenBytes);
+        } else {
+            token = readNullableString(dataInputStream);
+        }
+
+        final String topic = readInternedString(dataInputStream, stringTable);
+        final String payload = readInternedString(dataInputStream, stringTable);
+        final String collapseId = readInternedString(dataInputStream, stringTable);
+        final String priority = readInternedString(dataInputStream, stringTable);
+        final String type = readInternedString(dataInputStream, stringTable);
+        final String status = readInternedString(dataInputStream, stringTable);
+        final String details = readInternedString(dataInputStream, stringTable);
+
+        final String apnsId = (flags & FLAG_RAW_APNS_ID) != 0 ?
+                new UUID(dataInputStream.readLong(), dataInputStream.readLong()).toString() :
+                readNullableString(dataInputStream);
+
+        return new NotificationResultRow(topic, token, payload, collapseId, priority, type,
+                (flags & FLAG_ACCEPTED) != 0, status, details, apnsId);
+    }
+
+    private static String readInternedString(final DataInputStream dataInputStream, final List<String> stringTable)
+            throws IOException {
+
+        final int index = dataInputStream.readInt();
+
+        switch (index) {
+            case NULL_STRING:
+                return null;
+
+            case INLINE_STRING:
+                return readNullableString(dataInputStream);
+
+            default:
+                return stringTable.get(index);
+        }
+    }
+
+    /**
+     * Returns the raw bytes of the given token if (and only if) converting those bytes back to a string will produce
+     * exactly the same token; any other token gets written as a string.
+     */
+    private static byte[] encodeToken(final String token) {
+        if (token == null || token.length() != TOKEN_LENGTH * 2) {
+            return null;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            final char c = token.charAt(i);
+
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return null;
+            }
+        }
+
+        return HEX_FORMAT.parseHex(token);
+    }
+
+    private static UUID parseApnsId(final String apnsId) {
+        if (apnsId == null) {
+            return null;
+        }
+
+        try {
+            final UUID uuid = UUID.fromString(apnsId);
+
+            // UUID.fromString is lenient about things like leading zeroes, so make sure we'd get the same string back
+            return uuid.toString().equals(apnsId) ? uuid : null;
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String readNullableString(final DataInputStream dataInputStream) throws IOException {
+        final int length = dataInputStream.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        dataInputStream.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes and deletes this store's spill file.
+     *
+     * @throws IOException if the spill file could not be closed or deleted for any reason
+     */
+    @Override
+    public void close() throws IOException {
+        spillFileChannel.close();
+        Files.deleteIfExists(spillFile);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Sends push notifications and retries those that fail for reasons that are likely to be temporary. Each outcome is
+ * sorted into one of a few {@link Outcome categories}: notifications that APNs rejected because of a problem with the
+ * notification itself (a bad device token, for example) are never retried, while notifications that APNs rejected
+ * because of a problem on its end (like {@code InternalServerError} or {@code ServiceUnavailable}) and notifications
+ * that couldn't be delivered to APNs at all are retried up to a fixed number of times.</p>
+ *
+ * <p>Retries are scheduled on a timer wheel with exponential backoff and "full jitter" (each delay is chosen at random
+ * between zero and the current backoff ceiling) so that a burst of failures doesn't turn into a burst of retries. No
+ * thread ever waits for a retry; callers get a future that completes when a notification has reached its final
+ * outcome. When a retry comes due, the timer hands the attempt off to a separate executor, so a send function that's
+ * slow to return (while building a new client, say) can't hold up every other scheduled retry.</p>
+ *
+ * <p>Retriers are thread-safe. Retriers hold a timer thread and an executor and should be closed when no longer
+ * needed; closing a retrier completes any notifications still waiting to be retried with their most recent
+ * outcome.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationRetrier implements Closeable {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final HashedWheelTimer timer;
+    private final ExecutorService retryExecutorService;
+
+    private final AtomicLong retries = new AtomicLong();
+
+    static final int DEFAULT_MAX_ATTEMPTS = 4;
+    static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 10_000;
+
+    private static final long TICK_DURATION_MILLIS = 10;
+    private static final int MAX_RETRY_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final Set<String> RETRYABLE_REJECTION_REASONS =
+            Set.of("TooManyRequests", "InternalServerError", "ServiceUnavailable", "Shutdown");
+
+    private static final RetryHandler ALWAYS_RETRY = new RetryHandler() {
+
+        @Override
+        public boolean shouldScheduleRetry() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldAttemptRetry() {
+            return true;
+        }
+    };
+
+    /**
+     * The possible outcomes of a single attempt to send a push notification.
+     */
+    enum Outcome {
+        /**
+         * The notification was accepted by APNs.
+         */
+        ACCEPTED,
+
+        /**
+         * The notification was rejected by APNs for a reason that won't change if the notification is sent again.
+         */
+        PERMANENT_REJECTION,
+
+        /**
+         * The notification was rejected by APNs for a reason that may go away on its own.
+         */
+        RETRYABLE_REJECTION,
+
+        /**
+         * The notification could not be delivered to APNs (or APNs' response could not be received).
+         */
+        TRANSPORT_FAILURE
+    }
+
+    /**
+     * Decides whether a single notification may be retried. Handlers are called from whichever thread finished the
+     * notification's most recent attempt (or from the retrier's executor), but never from more than one thread at a time
+     * for the same notification.
+     */
+    interface RetryHandler {
+
+        /**
+         * Called when an attempt has failed for a reason that may be temporary and the notification has attempts to
+         * spare, just before a retry is scheduled.
+         *
+         * @return {@code true} if a retry should be scheduled or {@code false} if the notification should be completed
+         * with the outcome of the attempt that just finished
+         */
+        boolean shouldScheduleRetry();
+
+        /**
+         * Called when a scheduled retry comes due, just before it is attempted.
+         *
+         * @return {@code true} if the retry should be attempted or {@code false} if the notification should be
+         * completed with the outcome of its most recent attempt
+         */
+        boolean shouldAttemptRetry();
+    }
+
+    /**
+     * Constructs a new retrier with default limits.
+     */
+    NotificationRetrier() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructs a new retrier.
+     *
+     * @param maxAttempts the maximum number of times to try to send each notification, including the first attempt
+     * @param baseDelayMillis the backoff ceiling, in milliseconds, for the first retry; the ceiling doubles with each
+     * subsequent retry
+     * @param maxDelayMillis the highest the backoff ceiling may go, in milliseconds
+     */
+    NotificationRetrier(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Maximum number of attempts must be positive.");
+        }
+
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Delays must be non-negative, and the maximum delay must not be less than the base delay.");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+
+        this.timer = new HashedWheelTimer(runnable -> {
+            final Thread thread = new Thread(runnable, "notification-retry");
+            thread.setDaemon(true);
+
+            return thread;
+        }, TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS);
+
+        this.retryExecutorService = ExecutorUtil.newThreadPerTaskExecutor("notification-retry-attempt", MAX_RETRY_THREADS);
+    }
+
+    /**
+     * Classifies the outcome of an attempt to send a push notification.
+     *
+     * @param response the response from the server, if any
+     * @param cause the reason the notification could not be sent, if there was no response
+     *
+     * @return the outcome of the attempt
+     */
+    static Outcome classify(final PushNotificationResponse<?> response, final Throwable cause) {
+        if (response == null) {
+            return Outcome.TRANSPORT_FAILURE;
+        }
+
+        if (response.isAccepted()) {
+            return Outcome.ACCEPTED;
+        }
+
+        final boolean retryable = response.getStatusCode() == 429 ||
+                response.getStatusCode() == 500 ||
+                response.getStatusCode() == 503 ||
+                response.getRejectionReason().map(RETRYABLE_REJECTION_REASONS::contains).orElse(false);
+
+        return retryable ? Outcome.RETRYABLE_REJECTION : Outcome.PERMANENT_REJECTION;
+    }
+
+    /**
+     * Sends the given notification via the given function, retrying as needed. Exceptions thrown directly by the send
+     * function (as opposed to failures reported via the future it returns) mean the notification was never handed off
+     * to a client at all and are not retried.
+     *
+     * @param sendFunction the function with which to send each attempt
+     * @param pushNotification the notification to send
+     *
+     * @return a future that completes with the response to the final attempt, or exceptionally if the final attempt
+     * could not be delivered
+     */
+    CompletableFuture<PushNotificationResponse<ApnsPushNotification>> send(final BulkNotificationSender.NotificationSendFunction sendFunction,
+                                                                           final ApnsPushNotification pushNotification) {
+        return send(sendFunction, pushNotification, ALWAYS_RETRY);
+    }
+
+    /**
+     * Sends the given notification via the given function, retrying as needed and as the given handler allows.
+     *
+     * @param sendFunction the function with which to send each attempt
+     * @param pushNotification the notification to send
+     * @param retryHandler a handler to consult before each retry is scheduled and again before it is sent
+     *
+     * @return a future that completes with the response to the final attempt, or exceptionally if the final attempt
+     * could not be delivered
+     *
+     * @see #send(BulkNotificationSender.NotificationSendFunction, ApnsPushNotification)
+     */
+    CompletableFuture<PushNotificationResponse<ApnsPushNotification>> send(final BulkNotificationSender.NotificationSendFunction sendFunction,
+                                                                           final ApnsPushNotification pushNotification,
+                                                                           final RetryHandler retryHandler) {
+
+        final RetryTask retryTask = new RetryTask(Objects.requireNonNull(sendFunction), Objects.requireNonNull(pushNotification),
+                Objects.requireNonNull(retryHandler));
+
+        retryTask.attempt();
+
+        return retryTask.future;
+    }
+
+    /**
+     * Returns the delay before the given retry.
+     *
+     * @param retry the number of the retry, starting at 1 for the first retry (i.e. the second attempt)
+     *
+     * @return a randomly-chosen delay, in milliseconds, between zero and the backoff ceiling for the given retry
+     */
+    long getRetryDelayMillis(final int retry) {
+        // Avoid overflow for silly numbers of retries; the ceiling will have long since hit the maximum anyhow
+        final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry - 1, 30));
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Returns the total number of retries this retrier has scheduled.
+     *
+     * @return the total number of retries this retrier has scheduled
+     */
+    long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Stops this retrier's timer and completes any notifications waiting to be retried with their most recent
+     * outcomes. Retries that have already come due are still attempted.
+     */
+    @Override
+    public void close() {
+        for (final Timeout timeout : timer.stop()) {
+            ((RetryTask) timeout.task()).complete();
+        }
+
+        retryExecutorService.shutdown();
+    }
+
+    private class RetryTask implements TimerTask {
+
+        private final BulkNotificationSender.NotificationSendFunction sendFunction;
+        private final ApnsPushNotification pushNotification;
+        private final RetryHandler retryHandler;
+
+        private final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> future = new CompletableFuture<>();
+
+        private int attempts = 0;
+
+        private PushNotificationResponse<ApnsPushNotification> lastResponse;
+        private Throwable lastCause;
+
+        private RetryTask(final BulkNotificationSender.NotificationSendFunction sendFunction,
+                          final ApnsPushNotification pushNotification,
+                          final RetryHandler retryHandler) {
+
+            this.sendFunction = sendFunction;
+            this.pushNotification = pushNotification;
+            this.retryHandler = retryHandler;
+        }
+
+        @Override
+        public void run(final Timeout timeout) {
+            // Don't make the attempt on the timer's thread; every other retry is waiting on it
+            try {
+                retryExecutorService.execute(() -> {
+                    if (retryHandler.shouldAttemptRetry()) {
+                        attempt();
+                    } else {
+                        complete();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // The retrier has been closed
+                complete();
+            }
+        }
+
+        private void attempt() {
+            attempts += 1;
+
+            final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> sendFuture;
+
+            try {
+                sendFuture = sendFunction.sendNotification(pushNotification);
+            } catch (final Exception e) {
+                future.completeExceptionally(e);
+                return;
+            }
+
+            sendFuture.whenComplete((response, cause) -> {
+                lastResponse = response;
+                lastCause = unwrap(cause);
+
+                final Outcome outcome = classify(response, cause);
+
+                if ((outcome == Outcome.RETRYABLE_REJECTION || outcome == Outcome.TRANSPORT_FAILURE) &&
+                        attempts < maxAttempts && retryHandler.shouldScheduleRetry()) {
+
+                    try {
+                        timer.newTimeout(this, getRetryDelayMillis(attempts), TimeUnit.MILLISECONDS);
+                        retries.incrementAndGet();
+                    } catch (final IllegalStateException e) {
+                        // The timer has been stopped
+                        complete();
+                    }
+                } else {
+                    complete();
+                }
+            });
+        }
+
+        private void complete() {
+            if (lastResponse != null) {
+                future.complete(lastResponse);
+            } else {
+                future.completeExceptionally(lastCause);
+            }
+        }
+
+        private Throwable unwrap(final Throwable cause) {
+            return (cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null ?
+                    cause.getCause() : cause;
+        }
+    }
+}
@@ -23,18 +23,26 @@
 package com.eatthepath.pushy.console;
 
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 
+import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 /**
  * A simple password input dialog. Shamelessly borrowed from TextInputField.
  *
+ * <p>Verifying a password (for example, by decrypting a PKCS#12 key store) can be slow, so passwords are verified on a
+ * background executor. While a password is being verified, the dialog shows a progress indicator and disables its
+ * "OK" button; choosing "cancel" abandons the verification in progress and closes the dialog.</p>
+ *
  * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
  */
 class PasswordInputDialog extends Dialog<String> {
@@ -44,8 +52,22 @@ class PasswordInputDialog extends Dialog<String> {
     private final PasswordField passwordField;
 
     private final Label incorrectPasswordLabel;
+    private final HBox verifyingPasswordBox;
+
+    private Task<Boolean> verifyPasswordTask;
+    private String verifiedPassword;
+
+    /**
+     * Constructs a new password input dialog.
+     *
+     * @param passwordVerificationFunction a function that returns {@code true} if the given password should be accepted
+     * or {@code false} otherwise; called on a thread provided by the given executor
+     * @param verificationExecutor the executor on which to verify passwords
+     */
+    PasswordInputDialog(final Function<String, Boolean> passwordVerificationFunction, final Executor verificationExecutor) {
+        Objects.requireNonNull(passwordVerificationFunction);
+        Objects.requireNonNull(verificationExecutor);
 
-    PasswordInputDialog(final Function<String, Boolean> passwordVerificationFunction) {
         final DialogPane dialogPane = getDialogPane();
         dialogPane.contentTextProperty().addListener(o -> updateGrid());
 
@@ -66,6 +88,15 @@ class PasswordInputDialog extends Dialog<String> {
         incorrectPasswordLabel.setVisible(false);
         incorrectPasswordLabel.textProperty().addListener(o -> updateGrid());
 
+        final ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(16, 16);
+
+        verifyingPasswordBox = new HBox(8, progressIndicator,
+                createLabel(PushyConsoleApplication.RESOURCE_BUNDLE.getString("password-dialog.verifying-password")));
+
+        verifyingPasswordBox.setAlignment(Pos.CENTER_LEFT);
+        verifyingPasswordBox.setVisible(false);
+
         grid = new GridPane();
         grid.setHgap(10);
         grid.setVgap(8);
@@ -76,12 +107,59 @@ class PasswordInputDialog extends Dialog<String> {
 
         passwordField.textProperty().addListener((observable, oldValue, newValue) -> incorrectPasswordLabel.setVisible(false));
 
-        dialogPane.lookupButton(ButtonType.OK).addEventFilter(ActionEvent.ACTION, event -> {
-            if (!passwordVerificationFunction.apply(passwordField.getText())) {
-                event.consume();
+        final Button okButton = (Button) dialogPane.lookupButton(ButtonType.OK);
+
+        okButton.addEventFilter(ActionEvent.ACTION, event -> {
+            final String password = passwordField.getText();
+
+            if (password.equals(verifiedPassword)) {
+                // We've already checked this password in the background and can let the dialog close.
+                return;
+            }
+
+            event.consume();
+
+            final Task<Boolean> task = new Task<>() {
+                @Override
+                protected Boolean call() {
+                    return passwordVerificationFunction.apply(password);
+                }
+            };
+
+            task.setOnSucceeded(workerStateEvent -> {
+                setVerifying(false);
+
+                if (task.getValue()) {
+                    verifiedPassword = password;
+                    okButton.fire();
+                } else {
+                    incorrectPasswordLabel.setVisible(true);
+                    passwordField.selectAll();
+                    passwordField.requestFocus();
+                }
+            });
+
+            task.setOnFailed(workerStateEvent -> {
+                setVerifying(false);
 
                 incorrectPasswordLabel.setVisible(true);
                 passwordField.selectAll();
+                passwordField.requestFocus();
+            });
+
+            verifyPasswordTask = task;
+
+            setVerifying(true);
+            verificationExecutor.execute(task);
+        });
+
+        okButton.disableProperty().bind(verifyingPasswordBox.visibleProperty());
+
+        // Most verification functions can't actually be interrupted, but cancelling the task at least guarantees that
+        // we'll ignore its result.
+        setOnHidden(event -> {
+            if (verifyPasswordTask != null) {
+                verifyPasswordTask.cancel();
             }
         });
 
@@ -103,6 +181,12 @@ class PasswordInputDialog extends Dialog<String> {
         return label;
     }
 
+    private void setVerifying(final boolean verifying) {
+        incorrectPasswordLabel.setVisible(false);
+        verifyingPasswordBox.setVisible(verifying);
+        passwordField.setDisable(verifying);
+    }
+
     private void updateGrid() {
         grid.getChildren().clear();
 
@@ -110,6 +194,7 @@ class PasswordInputDialog extends Dialog<String> {
         grid.add(passwordField, 1, 0);
 
         grid.add(incorrectPasswordLabel, 0, 1, 2, 1);
+        grid.add(verifyingPasswordBox, 0, 1, 2, 1);
         getDialogPane().setContent(grid);
 
         Platform.runLater(passwordField::requestFocus);
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.PushType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>Checks a composed push notification for problems that would cause APNs to reject it: a payload that isn't a
+ * well-formed JSON object, a payload that's larger than APNs allows for the notification's push type, or a device token
+ * that isn't a string of hexadecimal digits. Problems are reported as a set of flags and are advisory; nothing prevents
+ * a user from sending a notification the validator doesn't like. Blank fields aren't considered problems; those are
+ * already handled by highlighting required fields.</p>
+ *
+ * <p>Validators remember the result of checking the most recent payload so that repeated validation of the same
+ * payload (for example, when only the token or push type has changed) doesn't need to parse it again. Validators are
+ * thread-safe and are intended to be used off of the JavaFX application thread.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class PayloadValidator {
+
+    /**
+     * A problem with a composed push notification.
+     */
+    enum Problem {
+        /**
+         * Indicates that the payload is not a well-formed JSON object.
+         */
+        INVALID_JSON,
+
+        /**
+         * Indicates that the payload, encoded as UTF-8, is larger than APNs allows for the notification's push type.
+         */
+        PAYLOAD_TOO_LARGE,
+
+        /**
+         * Indicates that the device token is not a string of an even number of hexadecimal digits.
+         */
+        INVALID_TOKEN
+    }
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private volatile PayloadCheck lastPayloadCheck;
+
+    static final int MAX_PAYLOAD_SIZE = 4096;
+    static final int MAX_VOIP_PAYLOAD_SIZE = 5120;
+
+    private static class PayloadCheck {
+        private final String payload;
+        private final int utf8Length;
+        private final boolean jsonObject;
+
+        private PayloadCheck(final String payload, final int utf8Length, final boolean jsonObject) {
+            this.payload = payload;
+            this.utf8Length = utf8Length;
+            this.jsonObject = jsonObject;
+        }
+    }
+
+    /**
+     * Checks the given push notification fields for problems.
+     *
+     * @param token the device token to check; may contain whitespace or angle brackets, which are ignored
+     * @param payload the payload to check
+     * @param pushType the notification's push type, which determines the maximum payload size; may be {@code null}
+     *
+     * @return an unmodifiable set of problems with the given fields, which will be empty if no problems were found
+     */
+    Set<Problem> validate(final String token, final String payload, final PushType pushType) {
+        final EnumSet<Problem> problems = EnumSet.noneOf(Problem.class);
+
+        if (StringUtils.isNotBlank(token) && !isValidToken(token)) {
+            problems.add(Problem.INVALID_TOKEN);
+        }
+
+        final PayloadCheck payloadCheck = checkPayload(payload);
+
+        if (StringUtils.isNotBlank(payload) && !payloadCheck.jsonObject) {
+            problems.add(Problem.INVALID_JSON);
+        }
+
+        if (payloadCheck.utf8Length > getMaxPayloadSize(pushType)) {
+            problems.add(Problem.PAYLOAD_TOO_LARGE);
+        }
+
+        return Collections.unmodifiableSet(problems);
+    }
+
+    /**
+     * Returns the largest payload, in bytes, that APNs will accept for notifications with the given push type.
+     *
+     * @param pushType the push type for which to find a maximum payload size; may be {@code null}
+     *
+     * @return the maximum payload size in bytes for the given push type
+     */
+    static int getMaxPayloadSize(final PushType pushType) {
+        return pushType == PushType.VOIP ? MAX_VOIP_PAYLOAD_SIZE : MAX_PAYLOAD_SIZE;
+    }
+
+    private PayloadCheck checkPayload(final String payload) {
+        final PayloadCheck previousCheck = lastPayloadCheck;
+
+        if (previousCheck != null && Objects.equals(previousCheck.payload, payload)) {
+            return previousCheck;
+        }
+
+        final PayloadCheck payloadCheck = payload != null ?
+                new PayloadCheck(payload, getUtf8Length(payload), isJsonObject(payload)) :
+                new PayloadCheck(null, 0, false);
+
+        lastPayloadCheck = payloadCheck;
+
+        return payloadCheck;
+    }
+
+    private boolean isJsonObject(final String payload) {
+        // Stream through the payload rather than building a tree; we only care whether it's well-formed
+        try (final JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+
+            parser.skipChildren();
+
+            // Anything other than the end of input after the closing brace means the payload isn't a single object
+            return parser.nextToken() == null;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    static int getUtf8Length(final CharSequence charSequence) {
+        int length = 0;
+
+        for (int i = 0; i < charSequence.length(); i++) {
+            final char c = charSequence.charAt(i);
+
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < charSequence.length() && Character.isLowSurrogate(charSequence.charAt(i + 1))) {
+                // A surrogate pair encodes a single four-byte code point
+                length += 4;
+                i += 1;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates get replaced with a single '?' when encoded
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    static boolean isValidToken(final String token) {
+        if (token == null) {
+            return false;
+        }
+
+        int digits = 0;
+
+        for (int i = 0; i < token.length(); i++) {
+            final char c = token.charAt(i);
+
+            // TokenUtil.sanitizeTokenString will quietly strip out anything that isn't a hex digit, but only spaces and
+            // angle brackets (as in the output of NSData#description) are there on purpose
+            if (c == '<' || c == '>' || Character.isWhitespace(c)) {
+                continue;
+            }
+
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+
+            digits += 1;
+        }
+
+        return digits > 0 && digits % 2 == 0;
+    }
+}
@@ -28,6 +28,7 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.nio.file.Path;
 import java.util.ResourceBundle;
 
 /**
@@ -43,6 +44,9 @@ public class PushyConsoleApplication extends Application {
     // Based heavily upon https://softwarei18n.org/using-unicode-in-java-resource-bundles-6220776b6099
     static final ResourceBundle RESOURCE_BUNDLE = ResourceBundle.getBundle("com/eatthepath/pushy/console/pushy-console");
 
+    // Histories and other state that should outlive a single session
+    static final Path DEFAULT_DATA_DIRECTORY = Path.of(System.getProperty("user.home"), ".pushy-console");
+
     /**
      * Launches the Pushy Console application.
      *
@@ -23,22 +23,51 @@
 package com.eatthepath.pushy.console;
 
 import com.eatthepath.pushy.apns.*;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.beans.binding.BooleanBinding;
+import javafx.beans.binding.StringBinding;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.*;
-
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.MessageFormat;
-import java.util.Locale;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.prefs.Preferences;
 
 /**
  * A controller for the main pushy console window. The console controller delegates notification composition to a
@@ -53,22 +82,143 @@ public class PushyConsoleController {
 
     @FXML ComposeNotificationController composeNotificationController;
 
-    @FXML TableView<PushNotificationResponse<ApnsPushNotification>> notificationResultTableView;
+    @FXML private Button bulkSendButton;
+    @FXML private Label resultSummaryLabel;
+    @FXML private TextField resultSearchField;
+
+    @FXML TableView<NotificationResultRow> notificationResultTableView;
+    @FXML private MenuItem forgetInvalidTokenMenuItem;
+    @FXML private MenuItem forgetAllInvalidTokensMenuItem;
+
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultTopicColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultTokenColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultPayloadColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultCollapseIdColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultPriorityColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultTypeColumn;
+
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultStatusColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultDetailsColumn;
+    @FXML private TableColumn<NotificationResultRow, String> notificationResultApnsIdColumn;
+
+    @FXML private Label metricsThroughputLabel;
+    @FXML private Label metricsLatencyP50Label;
+    @FXML private Label metricsLatencyP99Label;
+    @FXML private Label metricsLatencyP999Label;
+    @FXML private Label metricsLatencyMaxLabel;
+    @FXML private Label metricsConnectionsLabel;
+    @FXML private Label metricsConnectionFailuresLabel;
+    @FXML private Label metricsWriteFailuresLabel;
+    @FXML private Label metricsConcurrencyLimitLabel;
+    @FXML private Label connectionStatusLabel;
+
+    @FXML private Node errorPanel;
+    @FXML private Label errorSummaryLabel;
+    @FXML private TableView<ErrorAggregator.ErrorGroup> errorGroupTableView;
+    @FXML private TableColumn<ErrorAggregator.ErrorGroup, String> errorGroupCountColumn;
+    @FXML private TableColumn<ErrorAggregator.ErrorGroup, String> errorGroupExceptionColumn;
+    @FXML private TableColumn<ErrorAggregator.ErrorGroup, String> errorGroupCauseColumn;
+    @FXML private TextArea errorStackTraceTextArea;
 
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultTopicColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultTokenColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultPayloadColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultCollapseIdColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultPriorityColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultTypeColumn;
+    private final BooleanProperty readyToSendProperty = new SimpleBooleanProperty();
 
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultStatusColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultDetailsColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultApnsIdColumn;
+    private static final String MAX_CONCURRENT_SENDS_KEY = "maxConcurrentSends";
+    static final int DEFAULT_MAX_CONCURRENT_SENDS = 64;
 
-    private final BooleanProperty readyToSendProperty = new SimpleBooleanProperty();
+    private final int maxConcurrentSends = Math.max(1,
+            Preferences.userNodeForPackage(PushyConsoleController.class).getInt(MAX_CONCURRENT_SENDS_KEY, DEFAULT_MAX_CONCURRENT_SENDS));
+
+    // Each send gets its own (virtual, where available) thread so a slow handshake for one notification doesn't hold
+    // up any others; the semaphore keeps the number of sends in flight at any one time within reason. Without virtual
+    // threads, the executor never starts more platform threads than there are permits, so sends beyond the limit wait
+    // in the executor's queue instead of each holding a blocked thread.
+    private final ExecutorService sendNotificationExecutorService =
+            ExecutorUtil.newThreadPerTaskExecutor("send-notification", maxConcurrentSends);
+    private final Semaphore sendNotificationSemaphore = new Semaphore(maxConcurrentSends);
+
+    // Long-running and occasional work (reading bulk token files, opening connections ahead of time, searching results)
+    // shouldn't take up a thread meant for sending individual notifications
+    private final ExecutorService backgroundExecutorService = ExecutorUtil.newThreadPerTaskExecutor("console-background");
+
+    private final ObjectProperty<BulkNotificationSender> activeBulkSenderProperty = new SimpleObjectProperty<>();
+
+    private final ApnsClientMetrics apnsClientMetrics = new ApnsClientMetrics();
+    private final ApnsClientPool apnsClientPool =
+            new ApnsClientPool(ApnsClientPool.DEFAULT_IDLE_TIMEOUT, apnsClientMetrics);
+
+    private Timeline metricsUpdateTimeline;
+    private ApnsClientMetrics.Snapshot previousMetricsSnapshot;
+    private MessageFormat throughputFormat;
+    private MessageFormat latencyFormat;
+    private MessageFormat countFormat;
+
+    private NotificationResultFormatter notificationResultFormatter;
+    private NotificationResultStore notificationResultStore;
+
+    // Notifications that fail for temporary reasons (a throttled or restarting server, a dropped connection) get a few
+    // more tries with backoff before we report them as failures
+    private final NotificationRetrier notificationRetrier = new NotificationRetrier();
+
+    // May be null if the registry couldn't be opened, in which case we'll just send to every token
+    private InvalidTokenRegistry invalidTokenRegistry;
+    private final Path invalidTokenRegistryFile;
+
+    // Results arrive from send threads at whatever rate the server can manage; rather than posting an event to the FX
+    // thread for each one, we queue them up here and move them into the table in batches at a fixed, modest rate.
+    private final Queue<NotificationResultRow> pendingResultRows = new ConcurrentLinkedQueue<>();
+    private Timeline resultUpdateTimeline;
+
+    private final LongAdder sentNotifications = new LongAdder();
+    private final LongAdder acceptedNotifications = new LongAdder();
+    private final LongAdder rejectedNotifications = new LongAdder();
+    private final LongAdder failedNotifications = new LongAdder();
+
+    private MessageFormat resultSummaryFormat;
+
+    // Only ever touched on the JavaFX application thread
+    private Task<Integer> resultSearchTask;
+    private long displayedResultCount = -1;
+
+    // Failures are grouped rather than reported one at a time; a bulk send to a dead network can fail thousands of times
+    // in exactly the same way, and the error panel only needs to catch up with that a couple of times per second.
+    private final ErrorAggregator errorAggregator = new ErrorAggregator();
+    private Timeline errorUpdateTimeline;
+    private MessageFormat errorSummaryFormat;
+    private MessageFormat errorCauseFormat;
+    private long displayedErrorVersion = 0;
+
+    private static final int ERROR_UPDATES_PER_SECOND = 2;
+
+    // Pushy clients don't connect until they have something to send; we'd rather pay for DNS and the TCP, TLS, and
+    // HTTP/2 handshakes while the user is still writing a notification than when they click "send." Waiting for the
+    // connection settings to settle down keeps us from connecting to every partially-typed server name.
+    private final PauseTransition prewarmPause = new PauseTransition(PREWARM_DELAY);
+    private MessageFormat connectionReadyFormat;
+
+    // Only ever touched on the JavaFX application thread
+    private long prewarmRevision = 0;
+
+    private static final Duration PREWARM_DELAY = Duration.millis(500);
+    private static final long CLIENT_POOL_CLOSE_TIMEOUT_SECONDS = 3;
+
+    private static final int RESULT_UPDATES_PER_SECOND = 10;
+    static final int MAX_ROWS_PER_RESULT_UPDATE = 10_000;
+
+    /**
+     * Constructs a new console controller that keeps its state in the default data directory.
+     */
+    public PushyConsoleController() {
+        this(PushyConsoleApplication.DEFAULT_DATA_DIRECTORY);
+    }
 
-    private final ExecutorService sendNotificationExecutorService = Executors.newSingleThreadExecutor();
+    /**
+     * Constructs a new console controller that keeps its state in the given data directory.
+     *
+     * @param dataDirectory the directory in which to keep state that should outlive a single session
+     */
+    PushyConsoleController(final Path dataDirectory) {
+        invalidTokenRegistryFile = dataDirectory.resolve("invalid-tokens.txt");
+    }
 
     /**
      * Initializes the controller and its various controls and bindings.
@@ -76,56 +226,146 @@ public class PushyConsoleController {
     public void initialize() {
         notificationResultTableView.setPlaceholder(new Label(resources.getString("notification-result.placeholder")));
 
+        notificationResultFormatter = new NotificationResultFormatter(resources);
+
+        // When a credential file is rotated on disk, new sends (including sends from a bulk job already underway) should
+        // switch over to the new credentials, but notifications already in flight should be allowed to finish.
+        composeNotificationController.setOnCredentialsReloaded(apnsClientPool::replaceCredentials);
+
+        // Long bulk runs can produce far more results than we'd want to hold in memory at once; the result store keeps
+        // recent rows in memory and pages older rows in from disk only when the table asks for them.
+        try {
+            notificationResultStore = new NotificationResultStore(NotificationResultStore.DEFAULT_WINDOW_SIZE);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        notificationResultTableView.setItems(notificationResultStore);
+
+        // Once APNs tells us a token is dead, there's no point in spending a request to hear it again
+        try {
+            invalidTokenRegistry = new InvalidTokenRegistry(invalidTokenRegistryFile);
+        } catch (final IOException e) {
+            invalidTokenRegistry = null;
+        }
+
+        // APNs isn't always right about dead tokens (or a token may come back from a backup), so users can take tokens
+        // out of the registry and send to them again
+        forgetInvalidTokenMenuItem.disableProperty().bind(new BooleanBinding() {
+            {
+                super.bind(notificationResultTableView.getSelectionModel().selectedItemProperty());
+            }
+
+            @Override
+            protected boolean computeValue() {
+                return invalidTokenRegistry == null ||
+                        notificationResultTableView.getSelectionModel().getSelectedItem() == null;
+            }
+        });
+
+        forgetAllInvalidTokensMenuItem.setDisable(invalidTokenRegistry == null);
+
+        resultSummaryFormat = new MessageFormat(resources.getString("result-summary.text"));
+
+        resultUpdateTimeline = new Timeline(new KeyFrame(Duration.seconds(1.0 / RESULT_UPDATES_PER_SECOND),
+                actionEvent -> drainPendingResults()));
+
+        resultUpdateTimeline.setCycleCount(Animation.INDEFINITE);
+        resultUpdateTimeline.play();
+
+        throughputFormat = new MessageFormat(resources.getString("metrics.throughput"));
+        latencyFormat = new MessageFormat(resources.getString("metrics.latency"));
+        countFormat = new MessageFormat(resources.getString("metrics.count"));
+
+        updateMetrics();
+
+        connectionReadyFormat = new MessageFormat(resources.getString("connection-status.ready"));
+
+        final ChangeListener<Object> connectionSettingsListener = (observable, oldValue, newValue) -> {
+            prewarmRevision += 1;
+            prewarmPause.playFromStart();
+        };
+
+        composeNotificationController.apnsServerProperty().addListener(connectionSettingsListener);
+        composeNotificationController.apnsPortProperty().addListener(connectionSettingsListener);
+        composeNotificationController.apnsCredentialsProperty().addListener(connectionSettingsListener);
+
+        prewarmPause.setOnFinished(actionEvent -> prewarmConnection());
+
+        // Settings restored from preferences may already be complete
+        prewarmPause.playFromStart();
+
+        metricsUpdateTimeline = new Timeline(new KeyFrame(Duration.seconds(1), actionEvent -> updateMetrics()));
+        metricsUpdateTimeline.setCycleCount(Animation.INDEFINITE);
+        metricsUpdateTimeline.play();
+
+        errorSummaryFormat = new MessageFormat(resources.getString("errors.summary"));
+        errorCauseFormat = new MessageFormat(resources.getString("errors.cause"));
+
+        errorGroupCountColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(countFormat.format(new Object[] { cellDataFeatures.getValue().getCount() })));
+
+        errorGroupExceptionColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getExceptionType()));
+
+        errorGroupCauseColumn.setCellValueFactory(cellDataFeatures -> {
+            final ErrorAggregator.ErrorGroup errorGroup = cellDataFeatures.getValue();
+
+            return new ReadOnlyStringWrapper(errorGroup.getRootCauseMessage() != null ?
+                    errorCauseFormat.format(new Object[] { errorGroup.getRootCauseType(), errorGroup.getRootCauseMessage() }) :
+                    errorGroup.getRootCauseType());
+        });
+
+        errorGroupTableView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) ->
+                errorStackTraceTextArea.setText(newValue != null ? newValue.getSampleStackTrace() : null));
+
+        errorUpdateTimeline = new Timeline(new KeyFrame(Duration.seconds(1.0 / ERROR_UPDATES_PER_SECOND),
+                actionEvent -> updateErrorPanel()));
+
+        errorUpdateTimeline.setCycleCount(Animation.INDEFINITE);
+        errorUpdateTimeline.play();
+
+        // All display strings are computed when each row is created; cell value factories just hand them over.
         notificationResultTopicColumn.setCellValueFactory(cellDataFeatures ->
-                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPushNotification().getTopic()));
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getTopic()));
 
         notificationResultTokenColumn.setCellValueFactory(cellDataFeatures ->
-                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPushNotification().getToken()));
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getToken()));
 
         notificationResultPayloadColumn.setCellValueFactory(cellDataFeatures ->
-                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPushNotification().getPayload()
-                        .replace('\n', ' ')
-                        .replaceAll("\\s+", " ")));
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPayload()));
 
         notificationResultCollapseIdColumn.setCellValueFactory(cellDataFeatures ->
-                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPushNotification().getCollapseId()));
-
-        notificationResultPriorityColumn.setCellValueFactory(cellDataFeatures -> new ReadOnlyStringWrapper(
-                cellDataFeatures.getValue().getPushNotification().getPriority() == DeliveryPriority.IMMEDIATE ?
-                        resources.getString("delivery-priority.immediate") :
-                        resources.getString("delivery-priority.conserve-power")));
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getCollapseId()));
 
-        notificationResultTypeColumn.setCellValueFactory(cellDataFeatures -> new ReadOnlyStringWrapper(
-                resources.getString("notification-type." + cellDataFeatures.getValue().getPushNotification().getPushType().name().toLowerCase(Locale.US))));
+        notificationResultPriorityColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPriority()));
 
-        notificationResultStatusColumn.setCellValueFactory(cellDataFeatures -> new ReadOnlyStringWrapper(
-                cellDataFeatures.getValue().isAccepted() ?
-                        resources.getString("notification-result.status.accepted") :
-                        resources.getString("notification-result.status.rejected")));
+        notificationResultTypeColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getType()));
 
-        notificationResultDetailsColumn.setCellValueFactory(cellDataFeatures -> {
-            final PushNotificationResponse<ApnsPushNotification> pushNotificationResponse = cellDataFeatures.getValue();
+        notificationResultStatusColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getStatus()));
 
-            final String details;
+        notificationResultDetailsColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getDetails()));
 
-            if (pushNotificationResponse.isAccepted()) {
-                details = resources.getString("notification-result.details.accepted");
-            } else {
-                final String rejectionReason = pushNotificationResponse.getRejectionReason()
-                        .orElseGet(() -> resources.getString("notification-result.status.rejected.reason-unknown"));
+        notificationResultApnsIdColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getApnsId()));
 
-                details = pushNotificationResponse.getTokenInvalidationTimestamp().map(expiration ->
-                                new MessageFormat(resources.getString("notification-result.details.expiration"))
-                                        .format(new Object[] {rejectionReason, expiration }))
-                        .orElse(rejectionReason);
+        bulkSendButton.textProperty().bind(new StringBinding() {
+            {
+                super.bind(activeBulkSenderProperty);
             }
 
-            return new ReadOnlyStringWrapper(details);
+            @Override
+            protected String computeValue() {
+                return activeBulkSenderProperty.get() != null ?
+                        resources.getString("fxml.cancel-bulk.label") :
+                        resources.getString("fxml.send-bulk.label");
+            }
         });
 
-        notificationResultApnsIdColumn.setCellValueFactory(cellDataFeatures ->
-                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getApnsId().toString()));
-
         readyToSendProperty.bind(new BooleanBinding() {
             {
                 super.bind(composeNotificationController.apnsCredentialsProperty(),
@@ -142,40 +382,59 @@ public class PushyConsoleController {
 
     @FXML
     void handleSendNotificationButtonAction(final ActionEvent ignored) {
+        composeNotificationController.flushPendingPushNotification();
+
         if (readyToSendProperty.get()) {
             composeNotificationController.handleNotificationSent();
 
-            final Task<PushNotificationResponse<ApnsPushNotification>> sendNotificationTask = new Task<>() {
+            // Capture everything we need while we're still on the UI thread; the user may change things before the task
+            // actually runs.
+            final String server = composeNotificationController.apnsServerProperty().get();
+            final int port = composeNotificationController.apnsPortProperty().get();
+            final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+            final ApnsPushNotification pushNotification = composeNotificationController.pushNotificationProperty().get();
 
-                @Override
-                protected PushNotificationResponse<ApnsPushNotification> call() throws Exception {
-                    final String server = composeNotificationController.apnsServerProperty().get();
-                    final int port = composeNotificationController.apnsPortProperty().get();
-                    final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+            final Optional<Instant> invalidationTimestamp = invalidTokenRegistry != null ?
+                    invalidTokenRegistry.getInvalidationTimestamp(pushNotification.getToken()) : Optional.empty();
+
+            if (invalidationTimestamp.isPresent()) {
+                pendingResultRows.add(notificationResultFormatter.formatInvalidTokenSkipped(pushNotification,
+                        invalidationTimestamp.get()));
 
-                    final ApnsClientBuilder apnsClientBuilder = new ApnsClientBuilder();
-                    apnsClientBuilder.setApnsServer(server, port);
+                return;
+            }
 
-                    credentials.getCertificateAndPrivateKey().ifPresent(certificateAndPrivateKey ->
-                            apnsClientBuilder.setClientCredentials(certificateAndPrivateKey.getKey(), certificateAndPrivateKey.getValue(), null));
+            final Task<Void> sendNotificationTask = new Task<>() {
 
-                    credentials.getSigningKey().ifPresent(apnsClientBuilder::setSigningKey);
+                @Override
+                protected Void call() throws Exception {
+                    final PushNotificationResponse<ApnsPushNotification> response;
 
-                    final ApnsClient apnsClient = apnsClientBuilder.build();
+                    sendNotificationSemaphore.acquire();
 
                     try {
-                        return apnsClient.sendNotification(composeNotificationController.pushNotificationProperty().get()).get();
+                        sentNotifications.increment();
+                        response = notificationRetrier.send(notification ->
+                                apnsClientPool.sendNotification(server, port, credentials, notification), pushNotification).get();
+                    } catch (final Exception e) {
+                        failedNotifications.increment();
+                        throw e;
                     } finally {
-                        apnsClient.close();
+                        sendNotificationSemaphore.release();
+                    }
+
+                    if (invalidTokenRegistry != null && response.getTokenInvalidationTimestamp().isPresent()) {
+                        invalidTokenRegistry.recordInvalidToken(pushNotification.getToken(),
+                                response.getTokenInvalidationTimestamp().get());
                     }
+
+                    queuePushNotificationResponse(response);
+                    return null;
                 }
             };
 
-            sendNotificationTask.setOnSucceeded(workerStateEvent ->
-                    handlePushNotificationResponse(sendNotificationTask.getValue()));
-
             sendNotificationTask.setOnFailed(workerStateEvent ->
-                    reportPushNotificationError(sendNotificationTask.getException()));
+                    errorAggregator.record(sendNotificationTask.getException()));
 
             sendNotificationExecutorService.execute(sendNotificationTask);
         } else {
@@ -183,38 +442,352 @@ public class PushyConsoleController {
         }
     }
 
-    void handlePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> pushNotificationPushNotificationResponse) {
-        notificationResultTableView.getItems().add(pushNotificationPushNotificationResponse);
+    @FXML
+    void handleBulkSendButtonAction(final ActionEvent event) {
+        if (activeBulkSenderProperty.get() != null) {
+            activeBulkSenderProperty.get().cancel();
+            return;
+        }
+
+        composeNotificationController.flushPendingPushNotification();
+
+        if (!readyToSendProperty.get()) {
+            composeNotificationController.setRequiredFieldGroupHighlighted(true);
+            return;
+        }
+
+        final FileChooser fileChooser = new FileChooser();
+
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter(resources.getString("token-chooser.filter.text"), "*.txt"),
+                new FileChooser.ExtensionFilter(resources.getString("token-chooser.filter.all"), "*.*"));
+
+        final File tokenFile = fileChooser.showOpenDialog(((Node) event.getSource()).getScene().getWindow());
+
+        if (tokenFile != null) {
+            sendBulkNotifications(tokenFile);
+        }
     }
 
-    private void reportPushNotificationError(final Throwable exception) {
-        final Alert alert = new Alert(Alert.AlertType.WARNING);
+    void sendBulkNotifications(final File tokenFile) {
+        composeNotificationController.handleNotificationSent();
+
+        final String server = composeNotificationController.apnsServerProperty().get();
+        final int port = composeNotificationController.apnsPortProperty().get();
+        final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+        final ApnsPushNotification templateNotification = composeNotificationController.pushNotificationProperty().get();
+
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification ->
+                apnsClientPool.sendNotification(server, port, credentials, pushNotification),
+                BulkNotificationSender.DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS, invalidTokenRegistry, notificationRetrier);
 
-        alert.setTitle(resources.getString("alert.notification-failed.title"));
-        alert.setHeaderText(resources.getString("alert.notification-failed.header"));
-        alert.setContentText(exception.getLocalizedMessage());
+        final Task<Void> bulkSendTask = new Task<>() {
 
-        final String stackTrace;
-        {
-            final StringWriter stringWriter = new StringWriter();
-            final PrintWriter printWriter = new PrintWriter(stringWriter);
+            @Override
+            protected Void call() throws Exception {
+                try (final BufferedReader tokenReader = Files.newBufferedReader(tokenFile.toPath(), StandardCharsets.UTF_8)) {
+                    bulkNotificationSender.sendNotifications(tokenReader, templateNotification, new BulkNotificationSender.BulkSendListener() {
+
+                        // Count each notification once, not once per attempt; retries aren't new notifications
+                        @Override
+                        public void handlePushNotificationSent(final ApnsPushNotification pushNotification) {
+                            sentNotifications.increment();
+                        }
+
+                        @Override
+                        public void handlePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> response) {
+                            queuePushNotificationResponse(response);
+                        }
+
+                        @Override
+                        public void handleSendFailure(final ApnsPushNotification pushNotification, final Throwable cause) {
+                            failedNotifications.increment();
+                            errorAggregator.record(cause);
+                        }
+
+                        @Override
+                        public void handleInvalidTokenSkipped(final ApnsPushNotification pushNotification, final Instant invalidationTimestamp) {
+                            pendingResultRows.add(notificationResultFormatter.formatInvalidTokenSkipped(pushNotification,
+                                    invalidationTimestamp));
+                        }
+                    });
+                }
 
-            exception.printStackTrace(printWriter);
+                return null;
+            }
+        };
 
-            stackTrace = stringWriter.toString();
+        bulkSendTask.setOnSucceeded(workerStateEvent -> handleBulkSendFinished());
+
+        bulkSendTask.setOnFailed(workerStateEvent -> {
+            handleBulkSendFinished();
+            errorAggregator.record(bulkSendTask.getException());
+        });
+
+        activeBulkSenderProperty.set(bulkNotificationSender);
+        backgroundExecutorService.execute(bulkSendTask);
+    }
+
+    private void handleBulkSendFinished() {
+        activeBulkSenderProperty.set(null);
+    }
+
+    /**
+     * Formats the given response and queues the resulting row to be added to the result table on the next UI update.
+     * This method may be called from any thread.
+     *
+     * @param pushNotificationResponse the response to add to the result table
+     */
+    void queuePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> pushNotificationResponse) {
+        countPushNotificationResponse(pushNotificationResponse);
+        pendingResultRows.add(notificationResultFormatter.format(pushNotificationResponse));
+    }
+
+    private void countPushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> pushNotificationResponse) {
+        if (pushNotificationResponse.isAccepted()) {
+            acceptedNotifications.increment();
+        } else {
+            rejectedNotifications.increment();
+        }
+    }
+
+    /**
+     * Adds up to {@value #MAX_ROWS_PER_RESULT_UPDATE} queued rows to the result table as a single change and updates
+     * the result summary. Called periodically on the JavaFX application thread.
+     */
+    void drainPendingResults() {
+        final List<NotificationResultRow> notificationResultRows = new ArrayList<>();
+
+        while (notificationResultRows.size() < MAX_ROWS_PER_RESULT_UPDATE) {
+            final NotificationResultRow notificationResultRow = pendingResultRows.poll();
+
+            if (notificationResultRow == null) {
+                break;
+            }
+
+            notificationResultRows.add(notificationResultRow);
+        }
+
+        // Adding everything at once means the table only has to process a single change per update
+        notificationResultStore.addAll(notificationResultRows);
+
+        final long sent = sentNotifications.sum();
+        final long accepted = acceptedNotifications.sum();
+        final long rejected = rejectedNotifications.sum();
+        final long failed = failedNotifications.sum();
+
+        if (sent + accepted + rejected + failed != displayedResultCount) {
+            resultSummaryLabel.setText(resultSummaryFormat.format(new Object[] { sent, accepted, rejected, failed }));
+            displayedResultCount = sent + accepted + rejected + failed;
+        }
+    }
+
+    private void updateMetrics() {
+        final ApnsClientMetrics.Snapshot snapshot = apnsClientMetrics.snapshot();
+
+        metricsThroughputLabel.setText(throughputFormat.format(new Object[] { snapshot.getResponsesPerSecond(previousMetricsSnapshot) }));
+        metricsLatencyP50Label.setText(formatLatency(snapshot.getP50LatencyMicros()));
+        metricsLatencyP99Label.setText(formatLatency(snapshot.getP99LatencyMicros()));
+        metricsLatencyP999Label.setText(formatLatency(snapshot.getP999LatencyMicros()));
+        metricsLatencyMaxLabel.setText(formatLatency(snapshot.getMaxLatencyMicros()));
+        metricsConnectionsLabel.setText(countFormat.format(new Object[] { snapshot.getOpenConnections() }));
+        metricsConnectionFailuresLabel.setText(countFormat.format(new Object[] { snapshot.getConnectionCreationFailures() }));
+        metricsWriteFailuresLabel.setText(countFormat.format(new Object[] { snapshot.getWriteFailures() }));
+        metricsConcurrencyLimitLabel.setText(activeBulkSenderProperty.get() != null ?
+                countFormat.format(new Object[] { activeBulkSenderProperty.get().getConcurrencyLimit() }) : "");
+
+        previousMetricsSnapshot = snapshot;
+    }
+
+    private String formatLatency(final long latencyMicros) {
+        return latencyFormat.format(new Object[] { latencyMicros / 1000.0 });
+    }
+
+    @FXML
+    private void handleResultSearchAction(final ActionEvent event) {
+        final String query = resultSearchField.getText().trim().toLowerCase();
+
+        if (query.isEmpty() || notificationResultStore.isEmpty()) {
+            return;
+        }
+
+        final Predicate<NotificationResultRow> matchesQuery = row ->
+                containsIgnoreCase(row.getToken(), query) ||
+                        containsIgnoreCase(row.getTopic(), query) ||
+                        containsIgnoreCase(row.getCollapseId(), query) ||
+                        containsIgnoreCase(row.getDetails(), query) ||
+                        containsIgnoreCase(row.getApnsId(), query);
+
+        // Search forward from the current selection, wrapping around to the top if we don't find anything. Most of the
+        // rows may be on disk, so we search in the background and only come back to the FX thread to show the result.
+        final Callable<Integer> search = notificationResultStore.newSearch(matchesQuery,
+                notificationResultTableView.getSelectionModel().getSelectedIndex() + 1);
+
+        if (resultSearchTask != null) {
+            resultSearchTask.cancel();
         }
 
-        final TextArea stackTraceTextArea = new TextArea(stackTrace);
-        stackTraceTextArea.setEditable(false);
-        stackTraceTextArea.setMaxWidth(Double.MAX_VALUE);
-        stackTraceTextArea.setMaxHeight(Double.MAX_VALUE);
+        final Task<Integer> searchTask = new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                return search.call();
+            }
+        };
+
+        searchTask.setOnSucceeded(workerStateEvent -> {
+            final int matchIndex = searchTask.getValue();
+
+            // The user may have started a newer search while this one was running
+            if (searchTask == resultSearchTask && matchIndex >= 0) {
+                notificationResultTableView.getSelectionModel().clearAndSelect(matchIndex);
+                notificationResultTableView.scrollTo(matchIndex);
+            }
+        });
+
+        searchTask.setOnFailed(workerStateEvent -> errorAggregator.record(searchTask.getException()));
 
-        alert.getDialogPane().setExpandableContent(stackTraceTextArea);
+        resultSearchTask = searchTask;
+        backgroundExecutorService.execute(searchTask);
+    }
 
-        alert.showAndWait();
+    private static boolean containsIgnoreCase(final String string, final String lowerCaseQuery) {
+        return string != null && string.toLowerCase().contains(lowerCaseQuery);
+    }
+
+    private void updateErrorPanel() {
+        final long errorVersion = errorAggregator.getVersion();
+
+        if (errorVersion == displayedErrorVersion) {
+            return;
+        }
+
+        displayedErrorVersion = errorVersion;
+
+        final List<ErrorAggregator.ErrorGroup> errorGroups = errorAggregator.getErrorGroups();
+
+        // Groups live until the aggregator is cleared, so the selected group (if any) is still the same object
+        final ErrorAggregator.ErrorGroup selectedErrorGroup = errorGroupTableView.getSelectionModel().getSelectedItem();
+        errorGroupTableView.getItems().setAll(errorGroups);
+
+        if (selectedErrorGroup != null && errorGroups.contains(selectedErrorGroup)) {
+            errorGroupTableView.getSelectionModel().select(selectedErrorGroup);
+        }
+
+        errorSummaryLabel.setText(errorSummaryFormat.format(new Object[] { errorAggregator.getTotalErrors(), errorGroups.size() }));
+
+        errorPanel.setVisible(!errorGroups.isEmpty());
+        errorPanel.setManaged(!errorGroups.isEmpty());
+    }
+
+    private void prewarmConnection() {
+        final String server = composeNotificationController.apnsServerProperty().get();
+        final int port = composeNotificationController.apnsPortProperty().get();
+        final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+
+        connectionStatusLabel.setTooltip(null);
+
+        if (StringUtils.isBlank(server) || port <= 0 || credentials == null) {
+            connectionStatusLabel.setText(null);
+            return;
+        }
+
+        final long revision = prewarmRevision;
+
+        final Task<Double> prewarmTask = new Task<>() {
+
+            @Override
+            protected Double call() throws Exception {
+                return apnsClientPool.prewarm(server, port, credentials).get().toNanos() / 1_000_000.0;
+            }
+        };
+
+        // The user may have changed the connection settings while we were connecting; if so, a newer prewarm task
+        // will report the status of the newer settings.
+        prewarmTask.setOnSucceeded(workerStateEvent -> {
+            if (revision == prewarmRevision) {
+                connectionStatusLabel.setText(connectionReadyFormat.format(new Object[] { prewarmTask.getValue() }));
+            }
+        });
+
+        prewarmTask.setOnFailed(workerStateEvent -> {
+            if (revision == prewarmRevision) {
+                final Throwable rootCause = Objects.requireNonNullElse(
+                        ExceptionUtils.getRootCause(prewarmTask.getException()), prewarmTask.getException());
+
+                connectionStatusLabel.setText(resources.getString("connection-status.failed"));
+                connectionStatusLabel.setTooltip(new Tooltip(Objects.requireNonNullElse(
+                        rootCause.getLocalizedMessage(), rootCause.getClass().getName())));
+            }
+        });
+
+        connectionStatusLabel.setText(resources.getString("connection-status.connecting"));
+        backgroundExecutorService.execute(prewarmTask);
+    }
+
+    @FXML
+    private void handleForgetInvalidTokenAction(final ActionEvent event) {
+        final NotificationResultRow selectedRow = notificationResultTableView.getSelectionModel().getSelectedItem();
+
+        if (invalidTokenRegistry != null && selectedRow != null && selectedRow.getToken() != null) {
+            try {
+                invalidTokenRegistry.forgetInvalidToken(selectedRow.getToken());
+            } catch (final IOException e) {
+                errorAggregator.record(e);
+            }
+        }
+    }
+
+    @FXML
+    private void handleForgetAllInvalidTokensAction(final ActionEvent event) {
+        if (invalidTokenRegistry != null) {
+            try {
+                invalidTokenRegistry.forgetAllInvalidTokens();
+            } catch (final IOException e) {
+                errorAggregator.record(e);
+            }
+        }
+    }
+
+    @FXML
+    private void handleClearErrorsButtonAction(final ActionEvent event) {
+        errorAggregator.clear();
+        updateErrorPanel();
     }
 
     void stop() {
+        if (activeBulkSenderProperty.get() != null) {
+            activeBulkSenderProperty.get().cancel();
+        }
+
+        composeNotificationController.stop();
+
+        resultUpdateTimeline.stop();
+        metricsUpdateTimeline.stop();
+        errorUpdateTimeline.stop();
+        prewarmPause.stop();
         sendNotificationExecutorService.shutdown();
+        backgroundExecutorService.shutdown();
+        notificationRetrier.close();
+
+        // Give notifications in flight a chance to finish, but don't let a slow or unreachable server keep the app from
+        // quitting; anything that hasn't closed by then goes down with the JVM
+        apnsClientPool.close()
+                .orTimeout(CLIENT_POOL_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .exceptionally(ignored -> null)
+                .join();
+
+        try {
+            notificationResultStore.close();
+        } catch (final IOException ignored) {
+            // The spill file is marked for deletion on exit anyway
+        }
+
+        if (invalidTokenRegistry != null) {
+            try {
+                invalidTokenRegistry.close();
+            } catch (final IOException ignored) {
+                // We'll just have to learn about any unsaved invalid tokens again
+            }
+        }
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.geometry.Side;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Offers type-ahead completion for an editable combo box. As the user types, completions for the text in the combo
+ * box's editor are shown in a popup menu beneath the combo box; choosing a completion sets the combo box's value.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class TypeAheadCompletion {
+
+    private final ComboBox<String> comboBox;
+    private final Function<String, List<String>> completionFunction;
+
+    private final ContextMenu completionMenu = new ContextMenu();
+
+    private boolean applyingCompletion = false;
+
+    /**
+     * Attaches type-ahead completion to the given combo box.
+     *
+     * @param comboBox the combo box to which to attach type-ahead completion
+     * @param completionFunction a function that returns completions for a given prefix; called on the JavaFX
+     * application thread for every change to the combo box's text, and so should be fast
+     */
+    TypeAheadCompletion(final ComboBox<String> comboBox, final Function<String, List<String>> completionFunction) {
+        this.comboBox = comboBox;
+        this.completionFunction = completionFunction;
+
+        comboBox.getEditor().textProperty().addListener((observable, oldValue, newValue) -> updateCompletions(newValue));
+
+        comboBox.getEditor().focusedProperty().addListener((observable, oldValue, newValue) -> {
+            if (!newValue) {
+                completionMenu.hide();
+            }
+        });
+    }
+
+    private void updateCompletions(final String text) {
+        if (applyingCompletion || !comboBox.isEditable() || !comboBox.getEditor().isFocused() || text == null || text.isEmpty()) {
+            completionMenu.hide();
+            return;
+        }
+
+        final List<String> completions = completionFunction.apply(text);
+
+        if (completions.isEmpty() || (completions.size() == 1 && completions.get(0).equals(text))) {
+            completionMenu.hide();
+            return;
+        }
+
+        completionMenu.getItems().setAll(completions.stream().map(completion -> {
+            final MenuItem menuItem = new MenuItem(completion);
+            menuItem.setMnemonicParsing(false);
+            menuItem.setOnAction(event -> applyCompletion(completion));
+
+            return menuItem;
+        }).collect(Collectors.toList()));
+
+        if (!completionMenu.isShowing()) {
+            completionMenu.show(comboBox, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private void applyCompletion(final String completion) {
+        applyingCompletion = true;
+
+        try {
+            comboBox.setValue(completion);
+            comboBox.getEditor().setText(completion);
+            comboBox.getEditor().positionCaret(completion.length());
+        } finally {
+            applyingCompletion = false;
+        }
+    }
+}
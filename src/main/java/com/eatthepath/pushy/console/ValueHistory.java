@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A persistent, searchable history of values (device tokens, topics, and so on) entered by the user. Unlike the
+ * short lists of recent values kept in user preferences, histories have no size limit. Values are stored one per line
+ * in an append-only file and are held in memory in a sorted array, which makes finding all values that start with a
+ * given prefix a matter of a single binary search, even with hundreds of thousands of values.</p>
+ *
+ * <p>Histories are loaded lazily; callers on the JavaFX application thread should {@link #load()} a history on a
+ * background thread and check {@link #isLoaded()} before searching it. Histories are thread-safe.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ValueHistory {
+
+    private final Path historyFile;
+    private final Object historyFileLock = new Object();
+
+    private String[] values = new String[16];
+    private int size = 0;
+
+    private volatile boolean loaded = false;
+
+    /**
+     * Constructs a new history backed by the given file. The file (and its parent directories) will be created when
+     * the first value is added if it doesn't already exist.
+     *
+     * @param historyFile the file in which to store values
+     */
+    ValueHistory(final Path historyFile) {
+        this.historyFile = Objects.requireNonNull(historyFile);
+    }
+
+    /**
+     * Loads this history's values from its file if they haven't been loaded already.
+     *
+     * @throws IOException if the history file exists but could not be read
+     */
+    synchronized void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+
+        final List<String> lines;
+
+        synchronized (historyFileLock) {
+            lines = Files.exists(historyFile) ?
+                    Files.readAllLines(historyFile, StandardCharsets.UTF_8) : Collections.emptyList();
+        }
+
+        final String[] loadedValues = lines.stream()
+                .filter(line -> !line.isBlank())
+                .sorted()
+                .distinct()
+                .toArray(String[]::new);
+
+        values = Arrays.copyOf(loadedValues, Math.max(loadedValues.length * 2, 16));
+        size = loadedValues.length;
+        loaded = true;
+    }
+
+    /**
+     * Indicates whether this history's values have been loaded from its file.
+     *
+     * @return {@code true} if this history has been loaded or {@code false} otherwise
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds a value to this history, loading the history first if necessary. Blank values and values that span more
+     * than one line are ignored.
+     *
+     * @param value the value to add
+     *
+     * @return {@code true} if the value was added or {@code false} if it was already present or could not be added
+     *
+     * @throws IOException if the history could not be loaded or the value could not be written to the history file
+     */
+    boolean add(final String value) throws IOException {
+        if (value == null || value.isBlank() || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return false;
+        }
+
+        synchronized (this) {
+            load();
+
+            final int index = Arrays.binarySearch(values, 0, size, value);
+
+            if (index >= 0) {
+                return false;
+            }
+
+            final int insertionPoint = -(index + 1);
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+
+            System.arraycopy(values, insertionPoint, values, insertionPoint + 1, size - insertionPoint);
+            values[insertionPoint] = value;
+            size += 1;
+        }
+
+        // Searching doesn't need to wait for the value to hit the disk
+        synchronized (historyFileLock) {
+            if (historyFile.getParent() != null) {
+                Files.createDirectories(historyFile.getParent());
+            }
+
+            Files.writeString(historyFile, value + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns values in this history that start with the given prefix, in lexicographical order.
+     *
+     * @param prefix the prefix for which to find values
+     * @param limit the maximum number of values to return
+     *
+     * @return up to {@code limit} values that start with the given prefix; will be empty if this history has not yet
+     * been loaded
+     */
+    synchronized List<String> getValuesWithPrefix(final String prefix, final int limit) {
+        final List<String> matchingValues = new ArrayList<>(Math.min(limit, 16));
+
+        // Every value that starts with the prefix sorts at or after the prefix itself, and all such values are contiguous
+        final int index = Arrays.binarySearch(values, 0, size, prefix);
+
+        for (int i = index >= 0 ? index : -(index + 1); i < size && matchingValues.size() < limit; i++) {
+            if (!values[i].startsWith(prefix)) {
+                break;
+            }
+
+            matchingValues.add(values[i]);
+        }
+
+        return matchingValues;
+    }
+
+    /**
+     * Returns the number of distinct values in this history.
+     *
+     * @return the number of distinct values in this history, or zero if this history has not yet been loaded
+     */
+    synchronized int size() {
+        return size;
+    }
+}
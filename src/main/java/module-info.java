@@ -5,6 +5,11 @@ module pushy.console {
     requires org.bouncycastle.provider;
 
     requires com.eatthepath.pushy.apns;
+    requires io.netty.buffer;
+    requires io.netty.codec.http2;
+    requires io.netty.common;
+    requires io.netty.handler;
+    requires io.netty.transport;
 
     requires com.fasterxml.jackson.databind;
 
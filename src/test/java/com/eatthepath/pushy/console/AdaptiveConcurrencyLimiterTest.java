@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    public void testSlowStart() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 100);
+
+        for (int i = 0; i < 4; i++) {
+            limiter.onSuccess(limiter.acquire(), LATENCY_NANOS);
+        }
+
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testCongestion() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 100);
+
+        final long[] permits = new long[4];
+
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = limiter.acquire();
+        }
+
+        // All of these notifications were sent before the first backoff, so only the first should count
+        for (final long permit : permits) {
+            limiter.onCongestion(permit);
+        }
+
+        assertEquals(8, limiter.getLimit());
+
+        limiter.onCongestion(limiter.acquire());
+        assertEquals(4, limiter.getLimit());
+
+        // After leaving slow start, the limit should grow by about one per limit's worth of successes
+        for (int i = 0; i < 4; i++) {
+            limiter.onSuccess(limiter.acquire(), LATENCY_NANOS);
+        }
+
+        assertEquals(4, limiter.getLimit());
+
+        limiter.onSuccess(limiter.acquire(), LATENCY_NANOS);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testBounds() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 3);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess(limiter.acquire(), LATENCY_NANOS);
+        }
+
+        assertEquals(3, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onCongestion(limiter.acquire());
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testLatencyBackoff() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+
+        limiter.onSuccess(limiter.acquire(), LATENCY_NANOS);
+        assertEquals(11, limiter.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSuccess(limiter.acquire(), LATENCY_NANOS * 10);
+        }
+
+        assertTrue(limiter.getLimit() < 11);
+    }
+
+    @Test
+    public void testTryAcquire() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2);
+
+        final long firstPermit = limiter.tryAcquire();
+        final long secondPermit = limiter.tryAcquire();
+
+        assertNotEquals(AdaptiveConcurrencyLimiter.NO_PERMIT, firstPermit);
+        assertNotEquals(AdaptiveConcurrencyLimiter.NO_PERMIT, secondPermit);
+        assertEquals(AdaptiveConcurrencyLimiter.NO_PERMIT, limiter.tryAcquire());
+
+        limiter.release(firstPermit);
+
+        assertNotEquals(AdaptiveConcurrencyLimiter.NO_PERMIT, limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test(timeout = 10_000)
+    public void testAcquireBlocksAtLimit() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        final long permit = limiter.acquire();
+
+        final CountDownLatch acquiredLatch = new CountDownLatch(1);
+
+        final Thread thread = new Thread(() -> {
+            try {
+                limiter.release(limiter.acquire());
+                acquiredLatch.countDown();
+            } catch (final InterruptedException ignored) {
+            }
+        });
+
+        thread.start();
+
+        assertFalse(acquiredLatch.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.release(permit);
+        acquiredLatch.await();
+
+        thread.join();
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClient;
+import com.eatthepath.pushy.apns.ApnsClientBuilder;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ApnsClientMetricsTest {
+
+    private ApnsClient apnsClient;
+    private ApnsClient otherApnsClient;
+
+    private static final String SIGNING_KEY_FILENAME = "APNsAuthKey_KEYIDKEYID.p8";
+
+    @Before
+    public void setUp() throws Exception {
+        // Clients don't connect until they have something to send, so we can use real clients without a server
+        final ApnsCredentials credentials =
+                new ApnsCredentials(FileUtils.toFile(getClass().getResource(SIGNING_KEY_FILENAME)), "KEYID", "TEAMID");
+
+        apnsClient = new ApnsClientBuilder()
+                .setApnsServer(ApnsClientBuilder.DEVELOPMENT_APNS_HOST)
+                .setSigningKey(credentials.getSigningKey().orElseThrow())
+                .build();
+
+        otherApnsClient = new ApnsClientBuilder()
+                .setApnsServer(ApnsClientBuilder.DEVELOPMENT_APNS_HOST, ApnsClientBuilder.ALTERNATE_APNS_PORT)
+                .setSigningKey(credentials.getSigningKey().orElseThrow())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        apnsClient.close().join();
+        otherApnsClient.close().join();
+    }
+
+    @Test
+    public void testNotificationCounts() {
+        final ApnsClientMetrics metrics = new ApnsClientMetrics();
+
+        metrics.handleConnectionAdded(apnsClient);
+        metrics.handleNotificationSent(apnsClient, 1);
+        metrics.handleNotificationSent(apnsClient, 2);
+        metrics.handleNotificationSent(apnsClient, 3);
+        metrics.handleNotificationAccepted(apnsClient, 1);
+        metrics.handleNotificationRejected(apnsClient, 2);
+        metrics.handleWriteFailure(apnsClient, 3);
+
+        final ApnsClientMetrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(3, snapshot.getSentNotifications());
+        assertEquals(1, snapshot.getAcceptedNotifications());
+        assertEquals(1, snapshot.getRejectedNotifications());
+        assertEquals(1, snapshot.getWriteFailures());
+        assertEquals(1, snapshot.getOpenConnections());
+        assertEquals(0, metrics.getPendingNotificationCount());
+    }
+
+    @Test
+    public void testForgetClientWhenLastConnectionRemoved() {
+        final ApnsClientMetrics metrics = new ApnsClientMetrics();
+
+        metrics.handleConnectionAdded(apnsClient);
+        metrics.handleConnectionAdded(apnsClient);
+        metrics.handleConnectionAdded(otherApnsClient);
+
+        metrics.handleNotificationSent(apnsClient, 1);
+        metrics.handleNotificationSent(otherApnsClient, 1);
+
+        assertEquals(2, metrics.getTrackedClientCount());
+        assertEquals(2, metrics.getPendingNotificationCount());
+
+        // The client still has an open connection, and the notification isn't stale yet
+        metrics.handleConnectionRemoved(apnsClient);
+
+        assertEquals(2, metrics.getTrackedClientCount());
+        assertEquals(2, metrics.getPendingNotificationCount());
+
+        // Notifications in flight when the last connection closes will never be answered
+        metrics.handleConnectionRemoved(apnsClient);
+
+        assertEquals(1, metrics.getTrackedClientCount());
+        assertEquals(1, metrics.getPendingNotificationCount());
+
+        metrics.handleConnectionRemoved(otherApnsClient);
+
+        assertEquals(0, metrics.getTrackedClientCount());
+        assertEquals(0, metrics.getPendingNotificationCount());
+        assertEquals(0, metrics.snapshot().getOpenConnections());
+    }
+}
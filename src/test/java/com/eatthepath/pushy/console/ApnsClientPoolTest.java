@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClient;
+import com.eatthepath.pushy.apns.ApnsClientBuilder;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ApnsClientPoolTest {
+
+    private LocalMockApnsServer mockApnsServer;
+
+    private ApnsClientPool apnsClientPool;
+    private ApnsCredentials credentials;
+
+    private static final ApnsPushNotification PUSH_NOTIFICATION =
+            new SimpleApnsPushNotification("1".repeat(64), "com.example.topic", "{}");
+
+    @Before
+    public void setUp() throws Exception {
+        mockApnsServer = LocalMockApnsServer.start(100);
+
+        apnsClientPool = new ApnsClientPool(Duration.ofMinutes(1), mockApnsServer.getClientBuilderCustomizer());
+        credentials = LocalMockApnsServer.generateCredentials();
+    }
+
+    @After
+    public void tearDown() {
+        apnsClientPool.close().join();
+        mockApnsServer.close();
+    }
+
+    @Test
+    public void testSendNotificationReusesClients() throws Exception {
+        final String server = LocalMockApnsServer.HOST;
+        final int port = mockApnsServer.getPort();
+
+        sendNotification(apnsClientPool, credentials);
+        final ApnsClient client = apnsClientPool.getPooledClient(server, port, credentials).orElseThrow();
+
+        sendNotification(apnsClientPool, credentials);
+        assertSame(client, apnsClientPool.getPooledClient(server, port, credentials).orElseThrow());
+        assertEquals(1, apnsClientPool.size());
+
+        // Nothing's listening on the other port, but the pool should still build a separate client to try it
+        apnsClientPool.sendNotification(server, port + 1, credentials, PUSH_NOTIFICATION);
+        assertNotSame(client, apnsClientPool.getPooledClient(server, port + 1, credentials).orElseThrow());
+
+        final ApnsCredentials otherCredentials = LocalMockApnsServer.generateCredentials();
+
+        sendNotification(apnsClientPool, otherCredentials);
+        assertNotSame(client, apnsClientPool.getPooledClient(server, port, otherCredentials).orElseThrow());
+
+        assertEquals(3, apnsClientPool.size());
+    }
+
+    @Test
+    public void testEvictIdleClients() throws Exception {
+        final ApnsClientPool shortTimeoutClientPool =
+                new ApnsClientPool(Duration.ofNanos(1), mockApnsServer.getClientBuilderCustomizer());
+
+        try {
+            sendNotification(shortTimeoutClientPool, credentials);
+            assertEquals(1, shortTimeoutClientPool.size());
+
+            Thread.sleep(1);
+            shortTimeoutClientPool.evictIdleClients();
+
+            assertEquals(0, shortTimeoutClientPool.size());
+        } finally {
+            shortTimeoutClientPool.close().join();
+        }
+    }
+
+    @Test
+    public void testReplaceCredentials() throws Exception {
+        final String server = LocalMockApnsServer.HOST;
+        final int port = mockApnsServer.getPort();
+
+        final ApnsCredentials replacementCredentials = LocalMockApnsServer.generateCredentials();
+
+        sendNotification(apnsClientPool, credentials);
+        final ApnsClient originalClient = apnsClientPool.getPooledClient(server, port, credentials).orElseThrow();
+
+        // Nothing is in flight, so the original client should close right away
+        apnsClientPool.replaceCredentials(credentials, replacementCredentials).get(10, TimeUnit.SECONDS);
+        assertEquals(0, apnsClientPool.size());
+
+        // Notifications sent with the old credentials should go out with a client for the new ones
+        sendNotification(apnsClientPool, credentials);
+
+        final ApnsClient replacementClient = apnsClientPool.getPooledClient(server, port, replacementCredentials).orElseThrow();
+
+        assertNotSame(originalClient, replacementClient);
+        assertSame(replacementClient, apnsClientPool.getPooledClient(server, port, credentials).orElseThrow());
+        assertEquals(1, apnsClientPool.size());
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        try (final LocalMockApnsServer mockApnsServer = LocalMockApnsServer.start(100)) {
+            final ApnsClientMetrics metrics = new ApnsClientMetrics();
+            final ApnsClientPool mockServerClientPool =
+                    new ApnsClientPool(Duration.ofMinutes(1), metrics, mockApnsServer.getClientBuilderCustomizer());
+
+            try {
+                final ApnsCredentials mockServerCredentials = LocalMockApnsServer.generateCredentials();
+
+                final Duration handshakeTime = mockServerClientPool.prewarm(LocalMockApnsServer.HOST,
+                        mockApnsServer.getPort(), mockServerCredentials).get(10, TimeUnit.SECONDS);
+
+                assertFalse(handshakeTime.isNegative());
+                assertEquals(1, mockServerClientPool.size());
+
+                // Probes shouldn't look like notifications the user sent
+                assertEquals(0, metrics.snapshot().getSentNotifications());
+                assertEquals(0, metrics.snapshot().getRejectedNotifications());
+                assertEquals(0, metrics.snapshot().getAcceptedNotifications());
+                assertEquals(1, metrics.snapshot().getOpenConnections());
+
+                // The pool already has a connected client, so there's nothing to do
+                assertEquals(Duration.ZERO, mockServerClientPool.prewarm(LocalMockApnsServer.HOST,
+                        mockApnsServer.getPort(), mockServerCredentials).get(10, TimeUnit.SECONDS));
+
+                mockServerClientPool.sendNotification(LocalMockApnsServer.HOST, mockApnsServer.getPort(),
+                        mockServerCredentials, new SimpleApnsPushNotification("1".repeat(64), "com.example.topic", "{}"))
+                        .get(10, TimeUnit.SECONDS);
+
+                assertEquals(1, metrics.snapshot().getSentNotifications());
+                assertEquals(1, metrics.snapshot().getOpenConnections());
+            } finally {
+                mockServerClientPool.close().join();
+            }
+        }
+    }
+
+    @Test
+    public void testPrewarmAfterConnectionClosed() throws Exception {
+        final ApnsClientMetrics metrics = new ApnsClientMetrics();
+        final ApnsCredentials mockServerCredentials = LocalMockApnsServer.generateCredentials();
+
+        final LocalMockApnsServer mockApnsServer = LocalMockApnsServer.start(100);
+        final int port = mockApnsServer.getPort();
+
+        final ApnsClientPool mockServerClientPool =
+                new ApnsClientPool(Duration.ofMinutes(1), metrics, mockApnsServer.getClientBuilderCustomizer());
+
+        try {
+            mockServerClientPool.prewarm(LocalMockApnsServer.HOST, port, mockServerCredentials).get(10, TimeUnit.SECONDS);
+            assertEquals(1, metrics.snapshot().getOpenConnections());
+
+            // Shutting down the server closes the pooled client's connection out from under it; Pushy won't notice
+            // until it tries to use the connection again, but the pool should notice right away
+            mockApnsServer.close();
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            CompletableFuture<Duration> prewarmFuture;
+
+            do {
+                prewarmFuture = mockServerClientPool.prewarm(LocalMockApnsServer.HOST, port, mockServerCredentials);
+            } while (isCompletedWithZero(prewarmFuture) && System.nanoTime() < deadline);
+
+            // With no server, the new probe has nowhere to go
+            try {
+                prewarmFuture.get(10, TimeUnit.SECONDS);
+                fail("Prewarming without a server should fail.");
+            } catch (final ExecutionException e) {
+                assertEquals(1, mockServerClientPool.size());
+            }
+        } finally {
+            mockServerClientPool.close().join();
+            mockApnsServer.close();
+        }
+    }
+
+    private static boolean isCompletedWithZero(final CompletableFuture<Duration> future) {
+        return future.isDone() && !future.isCompletedExceptionally() && Duration.ZERO.equals(future.join());
+    }
+
+    @Test
+    public void testPrewarmAfterClose() {
+        apnsClientPool.close().join();
+
+        assertTrue(apnsClientPool.prewarm(ApnsClientBuilder.DEVELOPMENT_APNS_HOST, ApnsClientBuilder.DEFAULT_APNS_PORT,
+                credentials).isCompletedExceptionally());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSendNotificationAfterClose() throws Exception {
+        apnsClientPool.close().join();
+        sendNotification(apnsClientPool, credentials);
+    }
+
+    private void sendNotification(final ApnsClientPool clientPool, final ApnsCredentials credentials) throws Exception {
+        assertTrue(clientPool.sendNotification(LocalMockApnsServer.HOST, mockApnsServer.getPort(), credentials,
+                PUSH_NOTIFICATION).get(10, TimeUnit.SECONDS).isAccepted());
+    }
+}
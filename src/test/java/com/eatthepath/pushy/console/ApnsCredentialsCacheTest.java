@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class ApnsCredentialsCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ApnsCredentialsCache apnsCredentialsCache;
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    private static final String SIGNING_KEY_FILENAME = "signing-key.p8";
+
+    @Before
+    public void setUp() {
+        apnsCredentialsCache = new ApnsCredentialsCache();
+    }
+
+    @Test
+    public void testGetCertificateCredentials() throws Exception {
+        final File certificateFile = FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME));
+
+        final ApnsCredentials credentials =
+                apnsCredentialsCache.getCertificateCredentials(certificateFile, CERTIFICATE_PASSWORD);
+
+        assertTrue(credentials.getCertificateAndPrivateKey().isPresent());
+        assertSame(credentials, apnsCredentialsCache.getCertificateCredentials(certificateFile, CERTIFICATE_PASSWORD));
+
+        final CertificateInspection inspection =
+                apnsCredentialsCache.getCertificateInspection(certificateFile, CERTIFICATE_PASSWORD);
+
+        assertSame(inspection, apnsCredentialsCache.getCertificateInspection(certificateFile, CERTIFICATE_PASSWORD));
+        assertSame(inspection.getCertificate(), credentials.getCertificateAndPrivateKey().orElseThrow().getKey());
+    }
+
+    @Test
+    public void testGetSigningKeyCredentials() throws Exception {
+        final File signingKeyFile = FileUtils.toFile(getClass().getResource(SIGNING_KEY_FILENAME));
+
+        final ApnsCredentials credentials =
+                apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "TEAMID");
+
+        assertTrue(credentials.getSigningKey().isPresent());
+        assertSame(credentials, apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "TEAMID"));
+        assertNotSame(credentials, apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "OTHERTEAM"));
+    }
+
+    @Test
+    public void testGetSigningKeyCredentialsFileChanged() throws Exception {
+        final File signingKeyFile = temporaryFolder.newFile();
+
+        Files.copy(FileUtils.toFile(getClass().getResource(SIGNING_KEY_FILENAME)).toPath(), signingKeyFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        final ApnsCredentials originalCredentials =
+                apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "TEAMID");
+
+        // Touching the file without changing its contents should not invalidate cached credentials
+        Files.setLastModifiedTime(signingKeyFile.toPath(), FileTime.from(Instant.now().plusSeconds(60)));
+
+        assertSame(originalCredentials, apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "TEAMID"));
+
+        // A trailing newline doesn't change the key, but does change the file's contents
+        Files.writeString(signingKeyFile.toPath(), "\n", StandardOpenOption.APPEND);
+
+        Files.setLastModifiedTime(signingKeyFile.toPath(), FileTime.from(Instant.now().plusSeconds(120)));
+
+        final ApnsCredentials updatedCredentials =
+                apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "TEAMID");
+
+        assertNotSame(originalCredentials, updatedCredentials);
+        assertSame(updatedCredentials, apnsCredentialsCache.getSigningKeyCredentials(signingKeyFile, "KEYID", "TEAMID"));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static org.junit.Assert.*;
+
+public class BufferedPreferencesTest {
+
+    private Preferences preferences;
+
+    @Before
+    public void setUp() {
+        preferences = Preferences.userNodeForPackage(getClass()).node("test-" + UUID.randomUUID());
+    }
+
+    @After
+    public void tearDown() throws BackingStoreException {
+        preferences.removeNode();
+    }
+
+    @Test
+    public void testPutAndFlush() {
+        try (final BufferedPreferences bufferedPreferences = new BufferedPreferences(preferences, Long.MAX_VALUE)) {
+            bufferedPreferences.put("server", "first");
+            bufferedPreferences.put("server", "second");
+            bufferedPreferences.putInt("port", 443);
+
+            final List<String> tokens = new ArrayList<>(Arrays.asList("a", "b"));
+            bufferedPreferences.putList("tokens", tokens);
+
+            // Changes to the original list after it's been written shouldn't be visible
+            tokens.add("c");
+
+            assertNull("Values should not be written until the buffer is flushed.", preferences.get("server", null));
+            assertEquals(Arrays.asList("a", "b"), bufferedPreferences.getLists("tokens").get("tokens"));
+
+            bufferedPreferences.flush();
+
+            assertEquals("second", preferences.get("server", null));
+            assertEquals(443, preferences.getInt("port", 0));
+            assertEquals(Arrays.asList("a", "b"), bufferedPreferences.getLists("tokens").get("tokens"));
+        }
+    }
+
+    @Test
+    public void testFlushAfterDelay() throws InterruptedException {
+        try (final BufferedPreferences bufferedPreferences = new BufferedPreferences(preferences, 10)) {
+            bufferedPreferences.put("server", "example.com");
+
+            for (int i = 0; i < 100 && preferences.get("server", null) == null; i++) {
+                Thread.sleep(10);
+            }
+
+            assertEquals("example.com", preferences.get("server", null));
+        }
+    }
+
+    @Test
+    public void testClose() {
+        final BufferedPreferences bufferedPreferences = new BufferedPreferences(preferences, Long.MAX_VALUE);
+        bufferedPreferences.putList("topics", Collections.singletonList("com.example.topic"));
+        bufferedPreferences.close();
+
+        assertEquals(Collections.singletonList("com.example.topic"),
+                new BufferedPreferences(preferences, Long.MAX_VALUE).getLists("topics").get("topics"));
+    }
+
+    @Test
+    public void testPutAfterClose() {
+        final BufferedPreferences bufferedPreferences = new BufferedPreferences(preferences, Long.MAX_VALUE);
+        bufferedPreferences.close();
+
+        bufferedPreferences.put("server", "example.com");
+        bufferedPreferences.putList("topics", Collections.singletonList("com.example.topic"));
+
+        assertEquals("example.com", preferences.get("server", null));
+        assertEquals("[\"com.example.topic\"]", preferences.get("topics", null));
+    }
+
+    @Test
+    public void testPutListTooLarge() {
+        final String largeValue = "x".repeat(Preferences.MAX_VALUE_LENGTH / 3);
+
+        try (final BufferedPreferences bufferedPreferences = new BufferedPreferences(preferences, Long.MAX_VALUE)) {
+            bufferedPreferences.putList("payloads", Arrays.asList("first", largeValue, largeValue, largeValue, "last"));
+            bufferedPreferences.flush();
+
+            assertEquals(Arrays.asList("first", largeValue, largeValue),
+                    bufferedPreferences.getLists("payloads").get("payloads"));
+        }
+    }
+
+    @Test
+    public void testGetLists() {
+        preferences.put("malformed", "this is not JSON");
+        preferences.put("topics", "[\"com.example.topic\"]");
+
+        try (final BufferedPreferences bufferedPreferences = new BufferedPreferences(preferences, Long.MAX_VALUE)) {
+            final Map<String, List<String>> lists = bufferedPreferences.getLists("malformed", "missing", "topics");
+
+            assertEquals(Collections.emptyList(), lists.get("malformed"));
+            assertEquals(Collections.emptyList(), lists.get("missing"));
+            assertEquals(Collections.singletonList("com.example.topic"), lists.get("topics"));
+        }
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BulkNotificationSenderTest {
+
+    private static final ApnsPushNotification TEMPLATE_NOTIFICATION =
+            new SimpleApnsPushNotification("TEMPLATE", "com.example.topic", "{}");
+
+    @Test
+    public void testSendNotifications() throws Exception {
+        final List<String> sentTokens = Collections.synchronizedList(new ArrayList<>());
+
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            sentTokens.add(pushNotification.getToken());
+            return CompletableFuture.completedFuture(buildResponse(pushNotification, !pushNotification.getToken().equals("BBBB")));
+        }, 2);
+
+        final RecordingListener listener = new RecordingListener();
+
+        bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader("<AAAA>\n\n# comment\nBBBB\n CCCC \n")),
+                TEMPLATE_NOTIFICATION, listener);
+
+        assertEquals(Arrays.asList("AAAA", "BBBB", "CCCC"), sentTokens);
+        assertEquals(3, listener.responses.size());
+
+        for (final PushNotificationResponse<ApnsPushNotification> response : listener.responses) {
+            assertEquals(TEMPLATE_NOTIFICATION.getTopic(), response.getPushNotification().getTopic());
+            assertEquals(TEMPLATE_NOTIFICATION.getPayload(), response.getPushNotification().getPayload());
+        }
+
+        assertEquals(3, bulkNotificationSender.getSentNotifications());
+        assertEquals(2, bulkNotificationSender.getAcceptedNotifications());
+        assertEquals(1, bulkNotificationSender.getRejectedNotifications());
+        assertEquals(0, bulkNotificationSender.getFailedNotifications());
+    }
+
+    @Test
+    public void testSendNotificationsWithTopics() throws Exception {
+        final Map<String, String> topicsByToken = new ConcurrentHashMap<>();
+
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            topicsByToken.put(pushNotification.getToken(), pushNotification.getTopic());
+            return CompletableFuture.completedFuture(buildResponse(pushNotification, true));
+        }, 2);
+
+        bulkNotificationSender.sendNotifications(
+                new BufferedReader(new StringReader("AAAA com.example.first\nBBBB,com.example.second.voip\n<CCCC DDDD>\n")),
+                TEMPLATE_NOTIFICATION, new RecordingListener());
+
+        assertEquals(Map.of(
+                "AAAA", "com.example.first",
+                "BBBB", "com.example.second.voip",
+                "CCCCDDDD", TEMPLATE_NOTIFICATION.getTopic()), topicsByToken);
+    }
+
+    @Test
+    public void testSendNotificationsDuplicateTokens() throws Exception {
+        final List<String> sentTokens = Collections.synchronizedList(new ArrayList<>());
+
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            sentTokens.add(pushNotification.getToken() + " " + pushNotification.getTopic());
+            return CompletableFuture.completedFuture(buildResponse(pushNotification, true));
+        }, 2);
+
+        bulkNotificationSender.sendNotifications(
+                new BufferedReader(new StringReader("AAAA\n<aaaa>\nBBBB\nAAAA com.example.other\n")),
+                TEMPLATE_NOTIFICATION, new RecordingListener());
+
+        // Sending from a second source shouldn't repeat anything sent from the first
+        bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader("BBBB\nCCCC\n")),
+                TEMPLATE_NOTIFICATION, new RecordingListener());
+
+        assertEquals(Arrays.asList("AAAA com.example.topic", "BBBB com.example.topic", "AAAA com.example.other",
+                "CCCC com.example.topic"), sentTokens);
+
+        assertEquals(4, bulkNotificationSender.getSentNotifications());
+        assertEquals(2, bulkNotificationSender.getDuplicateTokens());
+    }
+
+    @Test
+    public void testSendNotificationsInvalidTokens() throws Exception {
+        final Path registryFile = Files.createTempFile("pushy-console-invalid-tokens-", ".txt");
+        final Instant invalidationTimestamp = Instant.now();
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            invalidTokenRegistry.recordInvalidToken("BBBB", invalidationTimestamp);
+
+            final List<String> sentTokens = Collections.synchronizedList(new ArrayList<>());
+
+            final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+                sentTokens.add(pushNotification.getToken());
+
+                return CompletableFuture.completedFuture(pushNotification.getToken().equals("CCCC") ?
+                        buildResponse(pushNotification, false, invalidationTimestamp) :
+                        buildResponse(pushNotification, true));
+            }, 2, invalidTokenRegistry);
+
+            final RecordingListener listener = new RecordingListener();
+
+            bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader("AAAA\nBBBB\nCCCC\n")),
+                    TEMPLATE_NOTIFICATION, listener);
+
+            assertEquals(Arrays.asList("AAAA", "CCCC"), sentTokens);
+            assertEquals(Collections.singletonList("BBBB"), listener.skippedTokens);
+            assertEquals(1, bulkNotificationSender.getInvalidTokens());
+
+            // APNs told us CCCC is no longer valid, so it should have been added to the registry
+            assertEquals(Optional.of(invalidationTimestamp.truncatedTo(ChronoUnit.MILLIS)),
+                    invalidTokenRegistry.getInvalidationTimestamp("CCCC"));
+        } finally {
+            Files.deleteIfExists(registryFile);
+        }
+    }
+
+    @Test
+    public void testSendNotificationsFailure() throws Exception {
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            if (pushNotification.getToken().equals("AAAA")) {
+                throw new IOException("Synchronous failure");
+            }
+
+            return CompletableFuture.failedFuture(new IOException("Asynchronous failure"));
+        }, 2);
+
+        final RecordingListener listener = new RecordingListener();
+
+        bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader("AAAA\nBBBB\n")),
+                TEMPLATE_NOTIFICATION, listener);
+
+        assertTrue(listener.responses.isEmpty());
+        assertEquals(2, listener.failures.size());
+        assertEquals(2, bulkNotificationSender.getFailedNotifications());
+    }
+
+    @Test
+    public void testSendNotificationsBoundedConcurrency() throws Exception {
+        final int maxOutstandingNotifications = 4;
+
+        final AtomicInteger outstandingNotifications = new AtomicInteger();
+        final AtomicInteger maxObservedOutstandingNotifications = new AtomicInteger();
+
+        final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(4);
+
+        try {
+            final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+                maxObservedOutstandingNotifications.accumulateAndGet(outstandingNotifications.incrementAndGet(), Math::max);
+
+                final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> future = new CompletableFuture<>();
+
+                executorService.schedule(() -> {
+                    outstandingNotifications.decrementAndGet();
+                    future.complete(buildResponse(pushNotification, true));
+                }, 1, TimeUnit.MILLISECONDS);
+
+                return future;
+            }, maxOutstandingNotifications);
+
+            final StringBuilder tokens = new StringBuilder();
+
+            for (int i = 0; i < 100; i++) {
+                tokens.append(String.format("%04X\n", i));
+            }
+
+            final RecordingListener listener = new RecordingListener();
+
+            bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader(tokens.toString())),
+                    TEMPLATE_NOTIFICATION, listener);
+
+            assertEquals(100, listener.responses.size());
+            assertTrue(maxObservedOutstandingNotifications.get() <= maxOutstandingNotifications);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testSendNotificationsWithRetries() throws Exception {
+        final NotificationRetrier notificationRetrier = new NotificationRetrier(3, 1, 10);
+        final Map<String, AtomicInteger> attemptsByToken = new ConcurrentHashMap<>();
+
+        try {
+            // Every notification fails once before it's accepted
+            final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+                final int attempts = attemptsByToken.computeIfAbsent(pushNotification.getToken(), ignored -> new AtomicInteger())
+                        .incrementAndGet();
+
+                return attempts > 1 ?
+                        CompletableFuture.completedFuture(buildResponse(pushNotification, true)) :
+                        CompletableFuture.failedFuture(new IOException("Connection reset"));
+            }, BulkNotificationSender.DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS, null, notificationRetrier);
+
+            final RecordingListener listener = new RecordingListener();
+
+            bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader("AAAA\nBBBB\nCCCC\n")),
+                    TEMPLATE_NOTIFICATION, listener);
+
+            // Listeners should hear about each notification once, no matter how many attempts it took
+            assertEquals(3, listener.sentNotifications.get());
+            assertEquals(3, listener.responses.size());
+            assertEquals(3, bulkNotificationSender.getSentNotifications());
+            assertEquals(6, attemptsByToken.values().stream().mapToInt(AtomicInteger::get).sum());
+        } finally {
+            notificationRetrier.close();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testSendNotificationsBusyTopicDoesNotBlockOtherTopics() throws Exception {
+        final String busyTopic = "com.example.busy";
+
+        final Queue<CompletableFuture<PushNotificationResponse<ApnsPushNotification>>> busyFutures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch otherTopicLatch = new CountDownLatch(5);
+
+        // Notifications for the busy topic don't get answers until we say so, so its limiter stays full
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            if (busyTopic.equals(pushNotification.getTopic())) {
+                final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> future = new CompletableFuture<>();
+                busyFutures.add(future);
+
+                return future;
+            }
+
+            otherTopicLatch.countDown();
+            return CompletableFuture.completedFuture(buildResponse(pushNotification, true));
+        }, BulkNotificationSender.DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS);
+
+        final StringBuilder tokens = new StringBuilder();
+
+        for (int i = 0; i < AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT * 2; i++) {
+            tokens.append(String.format("%04X %s\n", i, busyTopic));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            tokens.append(String.format("%04X\n", i));
+        }
+
+        final RecordingListener listener = new RecordingListener();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            final Future<?> sendFuture = executorService.submit(() -> {
+                bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader(tokens.toString())),
+                        TEMPLATE_NOTIFICATION, listener);
+
+                return null;
+            });
+
+            otherTopicLatch.await();
+
+            assertEquals(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, busyFutures.size());
+            assertFalse(sendFuture.isDone());
+
+            // Answer busy notifications as they arrive until the deferred ones have all been sent
+            while (listener.responses.size() < AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT * 2 + 5) {
+                final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> busyFuture = busyFutures.poll();
+
+                if (busyFuture != null) {
+                    busyFuture.complete(buildResponse(null, true));
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            sendFuture.get();
+            assertEquals(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT * 2 + 5, bulkNotificationSender.getSentNotifications());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testSendNotificationsCancelledWithDeferredNotifications() throws Exception {
+        final String busyTopic = "com.example.busy";
+
+        final Queue<CompletableFuture<PushNotificationResponse<ApnsPushNotification>>> busyFutures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch otherTopicLatch = new CountDownLatch(5);
+
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            if (busyTopic.equals(pushNotification.getTopic())) {
+                final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> future = new CompletableFuture<>();
+                busyFutures.add(future);
+
+                return future;
+            }
+
+            otherTopicLatch.countDown();
+            return CompletableFuture.completedFuture(buildResponse(pushNotification, true));
+        }, BulkNotificationSender.DEFAULT_MAX_OUTSTANDING_NOTIFICATIONS);
+
+        final StringBuilder tokens = new StringBuilder();
+
+        for (int i = 0; i < AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT * 2; i++) {
+            tokens.append(String.format("%04X %s\n", i, busyTopic));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            tokens.append(String.format("%04X\n", i));
+        }
+
+        final RecordingListener listener = new RecordingListener();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            final Future<?> sendFuture = executorService.submit(() -> {
+                bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader(tokens.toString())),
+                        TEMPLATE_NOTIFICATION, listener);
+
+                return null;
+            });
+
+            // Half of the busy topic's notifications are in flight, and the other half are waiting for room
+            otherTopicLatch.await();
+            bulkNotificationSender.cancel();
+
+            while (!sendFuture.isDone()) {
+                final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> busyFuture = busyFutures.poll();
+
+                if (busyFuture != null) {
+                    busyFuture.complete(buildResponse(null, true));
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            sendFuture.get();
+
+            assertEquals(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT + 5, listener.responses.size());
+            assertEquals(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, listener.failures.size());
+
+            for (final Throwable failure : listener.failures) {
+                assertTrue(failure instanceof CancellationException);
+            }
+
+            // Every token read should be accounted for one way or another
+            assertEquals(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT + 5, bulkNotificationSender.getSentNotifications());
+            assertEquals(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, bulkNotificationSender.getFailedNotifications());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testSendNotificationsWaitingRetriesDoNotBlockNewNotifications() throws Exception {
+        final int maxOutstandingNotifications = 4;
+        final int freshNotifications = 20;
+
+        // Long enough that retries are still waiting when the fresh notifications finish
+        final NotificationRetrier notificationRetrier = new NotificationRetrier(2, 60_000, 60_000);
+
+        final Map<String, AtomicInteger> attemptsByToken = new ConcurrentHashMap<>();
+        final Queue<CompletableFuture<PushNotificationResponse<ApnsPushNotification>>> retryFutures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch freshNotificationLatch = new CountDownLatch(freshNotifications);
+
+        // Tokens starting with "EEEE" fail for a temporary reason the first time and never hear back after that; everything
+        // else is accepted right away
+        final BulkNotificationSender bulkNotificationSender = new BulkNotificationSender(pushNotification -> {
+            if (!pushNotification.getToken().startsWith("EEEE")) {
+                freshNotificationLatch.countDown();
+                return CompletableFuture.completedFuture(buildResponse(pushNotification, true));
+            }
+
+            if (attemptsByToken.computeIfAbsent(pushNotification.getToken(), ignored -> new AtomicInteger()).incrementAndGet() == 1) {
+                return CompletableFuture.completedFuture(buildResponse(pushNotification, 503, "ServiceUnavailable", null));
+            }
+
+            final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> future = new CompletableFuture<>();
+            retryFutures.add(future);
+
+            return future;
+        }, maxOutstandingNotifications, null, notificationRetrier);
+
+        final StringBuilder tokens = new StringBuilder();
+
+        for (int i = 0; i < maxOutstandingNotifications; i++) {
+            tokens.append(String.format("EEEE%04X\n", i));
+        }
+
+        for (int i = 0; i < freshNotifications; i++) {
+            tokens.append(String.format("%04X\n", i));
+        }
+
+        final RecordingListener listener = new RecordingListener();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            final Future<?> sendFuture = executorService.submit(() -> {
+                bulkNotificationSender.sendNotifications(new BufferedReader(new StringReader(tokens.toString())),
+                        TEMPLATE_NOTIFICATION, listener);
+
+                return null;
+            });
+
+            // Every slot was taken by a notification waiting to be retried, but fresh notifications should still go out
+            freshNotificationLatch.await();
+            assertFalse(sendFuture.isDone());
+
+            // Give up on the retries that are still waiting, and answer any that already went out
+            notificationRetrier.close();
+
+            while (!sendFuture.isDone()) {
+                final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> retryFuture = retryFutures.poll();
+
+                if (retryFuture != null) {
+                    retryFuture.complete(buildResponse(null, true));
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            sendFuture.get();
+
+            assertEquals(maxOutstandingNotifications + freshNotifications, listener.responses.size());
+            assertEquals(maxOutstandingNotifications + freshNotifications, bulkNotificationSender.getSentNotifications());
+        } finally {
+            executorService.shutdown();
+            notificationRetrier.close();
+        }
+    }
+
+    private static PushNotificationResponse<ApnsPushNotification> buildResponse(final ApnsPushNotification pushNotification, final boolean accepted) {
+        return buildResponse(pushNotification, accepted, null);
+    }
+
+    private static PushNotificationResponse<ApnsPushNotification> buildResponse(final ApnsPushNotification pushNotification,
+                                                                                final boolean accepted,
+                                                                                final Instant tokenInvalidationTimestamp) {
+        return accepted ?
+                buildResponse(pushNotification, 200, null, tokenInvalidationTimestamp) :
+                buildResponse(pushNotification, 400, "BadDeviceToken", tokenInvalidationTimestamp);
+    }
+
+    private static PushNotificationResponse<ApnsPushNotification> buildResponse(final ApnsPushNotification pushNotification,
+                                                                                final int statusCode,
+                                                                                final String rejectionReason,
+                                                                                final Instant tokenInvalidationTimestamp) {
+        return new PushNotificationResponse<>() {
+
+            @Override
+            public ApnsPushNotification getPushNotification() {
+                return pushNotification;
+            }
+
+            @Override
+            public boolean isAccepted() {
+                return statusCode == 200;
+            }
+
+            @Override
+            public UUID getApnsId() {
+                return UUID.randomUUID();
+            }
+
+            @Override
+            public int getStatusCode() {
+                return statusCode;
+            }
+
+            @Override
+            public Optional<String> getRejectionReason() {
+                return Optional.ofNullable(rejectionReason);
+            }
+
+            @Override
+            public Optional<Instant> getTokenInvalidationTimestamp() {
+                return Optional.ofNullable(tokenInvalidationTimestamp);
+            }
+        };
+    }
+
+    private static class RecordingListener implements BulkNotificationSender.BulkSendListener {
+        private final AtomicInteger sentNotifications = new AtomicInteger();
+        private final List<PushNotificationResponse<ApnsPushNotification>> responses = Collections.synchronizedList(new ArrayList<>());
+        private final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> skippedTokens = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void handlePushNotificationSent(final ApnsPushNotification pushNotification) {
+            sentNotifications.incrementAndGet();
+        }
+
+        @Override
+        public void handlePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> response) {
+            responses.add(response);
+        }
+
+        @Override
+        public void handleSendFailure(final ApnsPushNotification pushNotification, final Throwable cause) {
+            failures.add(cause);
+        }
+
+        @Override
+        public void handleInvalidTokenSkipped(final ApnsPushNotification pushNotification, final Instant invalidationTimestamp) {
+            skippedTokens.add(pushNotification.getToken());
+        }
+    }
+}
@@ -27,12 +27,13 @@ import org.junit.Test;
 
 import java.io.File;
 import java.security.KeyStore;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 public class CertificateUtilTest {
 
@@ -59,4 +60,19 @@ public class CertificateUtilTest {
 
         assertEquals(expectedTopics, topics);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testInspect() throws Exception {
+        final File certificateFile = FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME));
+        final CertificateInspection inspection = CertificateUtil.inspect(certificateFile, CERTIFICATE_PASSWORD);
+
+        assertEquals(Arrays.asList("com.eatthepath.pushy", "com.eatthepath.pushy.complication", "com.eatthepath.pushy.voip"),
+                new ArrayList<>(inspection.getTopics()));
+
+        assertSame(inspection.getPrivateKeyEntry().getCertificate(), inspection.getCertificate());
+        assertEquals(CertificateInspection.Environment.UNIVERSAL, inspection.getEnvironment());
+        assertTrue(inspection.getNotBefore().isBefore(inspection.getNotAfter()));
+        assertTrue(inspection.isValidAt(Instant.parse("2022-01-01T00:00:00Z")));
+        assertFalse(inspection.isValidAt(Instant.parse("2020-01-01T00:00:00Z")));
+    }
+}
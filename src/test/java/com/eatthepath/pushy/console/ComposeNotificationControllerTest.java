@@ -32,6 +32,7 @@ import javafx.stage.Stage;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 
 import javax.swing.*;
 import java.io.File;
@@ -62,6 +63,9 @@ public class ComposeNotificationControllerTest {
     @Rule
     public JavaFXThreadRule javaFXThreadRule = new JavaFXThreadRule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @BeforeClass
     public static void setUpBeforeClass() throws InvocationTargetException, InterruptedException {
         // We need to make sure JavaFX is initialized before doing anything else.
@@ -75,6 +79,7 @@ public class ComposeNotificationControllerTest {
         final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
 
         final FXMLLoader loader = new FXMLLoader(getClass().getResource("compose-notification.fxml"), resourceBundle);
+        loader.setControllerFactory(controllerClass -> new ComposeNotificationController(temporaryFolder.getRoot().toPath()));
 
         final Parent root = loader.load();
         composeNotificationController = loader.getController();
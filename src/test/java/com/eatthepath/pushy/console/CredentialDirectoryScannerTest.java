@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class CredentialDirectoryScannerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.getRoot().toPath();
+
+        final Path certificatePath = FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)).toPath();
+
+        Files.createDirectories(directory.resolve("apps/first"));
+        Files.copy(certificatePath, directory.resolve("apps/first/production.p12"));
+        Files.copy(certificatePath, directory.resolve("locked.p12"));
+        Files.writeString(directory.resolve("apps/corrupt.p12"), "This is not a key store.", StandardCharsets.UTF_8);
+        Files.writeString(directory.resolve("apps/notes.txt"), "Not a credential file", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        try (final CredentialDirectoryScanner scanner = new CredentialDirectoryScanner(directory,
+                List.of(new CredentialDirectoryScanner.PasswordMapping("apps/**.p12", CERTIFICATE_PASSWORD)), 2)) {
+
+            final CredentialDirectoryScanner.Report report = scanner.scan();
+            assertEquals(3, report.getInspectedFiles());
+
+            final Instant now = Instant.parse("2022-01-01T00:00:00Z");
+
+            final Map<Path, CredentialDirectoryScanner.Status> statusesByPath = report.getEntries().stream()
+                    .collect(Collectors.toMap(CredentialDirectoryScanner.Entry::getPath,
+                            entry -> entry.getStatus(now, CredentialDirectoryScanner.DEFAULT_EXPIRATION_WARNING_PERIOD)));
+
+            assertEquals(Map.of(
+                    Paths.get("apps/first/production.p12"), CredentialDirectoryScanner.Status.VALID,
+                    Paths.get("locked.p12"), CredentialDirectoryScanner.Status.INCORRECT_PASSWORD,
+                    Paths.get("apps/corrupt.p12"), CredentialDirectoryScanner.Status.INVALID), statusesByPath);
+
+            final CredentialDirectoryScanner.Entry validEntry =
+                    report.getEntries(CredentialDirectoryScanner.SortOrder.NOT_AFTER).get(2);
+
+            assertEquals(Paths.get("apps/first/production.p12"), validEntry.getPath());
+            assertTrue(validEntry.getTopics().contains("com.eatthepath.pushy"));
+            assertEquals(CertificateInspection.Environment.UNIVERSAL, validEntry.getEnvironment());
+
+            assertEquals(CredentialDirectoryScanner.Status.EXPIRING,
+                    validEntry.getStatus(validEntry.getNotAfter().minus(Duration.ofDays(1)), Duration.ofDays(30)));
+
+            assertEquals(CredentialDirectoryScanner.Status.EXPIRED,
+                    validEntry.getStatus(validEntry.getNotAfter().plusSeconds(1), Duration.ofDays(30)));
+        }
+    }
+
+    @Test
+    public void testScanIncremental() throws Exception {
+        try (final CredentialDirectoryScanner scanner = new CredentialDirectoryScanner(directory,
+                List.of(new CredentialDirectoryScanner.PasswordMapping("**.p12", CERTIFICATE_PASSWORD)), 2)) {
+
+            assertEquals(3, scanner.scan().getInspectedFiles());
+            assertEquals(0, scanner.scan().getInspectedFiles());
+
+            Files.setLastModifiedTime(directory.resolve("locked.p12"), FileTime.from(Instant.now().plusSeconds(60)));
+            Files.delete(directory.resolve("apps/corrupt.p12"));
+
+            final CredentialDirectoryScanner.Report report = scanner.scan();
+
+            assertEquals(1, report.getInspectedFiles());
+            assertEquals(List.of(Paths.get("apps/first/production.p12"), Paths.get("locked.p12")),
+                    report.getEntries(CredentialDirectoryScanner.SortOrder.PATH).stream()
+                            .map(CredentialDirectoryScanner.Entry::getPath)
+                            .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testLoadPasswordMappings() throws Exception {
+        final List<CredentialDirectoryScanner.PasswordMapping> passwordMappings =
+                CredentialDirectoryScanner.PasswordMapping.load(new StringReader(
+                        "# Passwords by app\nzzz/**.p12=first\naaa/**.p12=second\n**.p12 = third\n"));
+
+        assertEquals(List.of("zzz/**.p12", "aaa/**.p12", "**.p12"), passwordMappings.stream()
+                .map(CredentialDirectoryScanner.PasswordMapping::getPattern)
+                .collect(Collectors.toList()));
+
+        assertTrue(passwordMappings.get(0).matches(Paths.get("zzz/app/production.p12")));
+        assertFalse(passwordMappings.get(0).matches(Paths.get("aaa/app/production.p12")));
+    }
+
+    @Test
+    public void testLoadPasswordMappingsContinuationsAndEscapes() throws Exception {
+        final List<CredentialDirectoryScanner.PasswordMapping> passwordMappings =
+                CredentialDirectoryScanner.PasswordMapping.load(new StringReader(
+                        "b/**.p12=long\\\n    password\n! another comment\na\\ b/**.p12:spaced\nc/**.p12=ends with \\\\\n"));
+
+        assertEquals(List.of("b/**.p12", "a b/**.p12", "c/**.p12"), passwordMappings.stream()
+                .map(CredentialDirectoryScanner.PasswordMapping::getPattern)
+                .collect(Collectors.toList()));
+
+        assertTrue(passwordMappings.get(1).matches(Paths.get("a b/production.p12")));
+    }
+}
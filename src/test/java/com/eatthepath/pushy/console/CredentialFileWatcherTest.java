@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CredentialFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final BlockingQueue<Path> changedFiles = new LinkedBlockingQueue<>();
+    private CredentialFileWatcher credentialFileWatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        credentialFileWatcher = new CredentialFileWatcher(changedFiles::add, 50);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        credentialFileWatcher.close();
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        final Path watchedFile = temporaryFolder.newFile("watched.p8").toPath();
+        final Path otherFile = temporaryFolder.newFile("other.p8").toPath();
+
+        credentialFileWatcher.watch(watchedFile);
+
+        Files.writeString(watchedFile, "first", StandardCharsets.UTF_8);
+        Files.writeString(watchedFile, "second", StandardCharsets.UTF_8);
+
+        // Several changes in quick succession should produce a single report
+        assertEquals(watchedFile.toAbsolutePath(), changedFiles.poll(30, TimeUnit.SECONDS));
+        assertNull(changedFiles.poll(500, TimeUnit.MILLISECONDS));
+
+        credentialFileWatcher.unwatch(watchedFile);
+
+        Files.writeString(watchedFile, "third", StandardCharsets.UTF_8);
+        Files.writeString(otherFile, "other", StandardCharsets.UTF_8);
+
+        assertNull(changedFiles.poll(500, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class CredentialRegistryTest {
+
+    private CredentialRegistry credentialRegistry;
+
+    private File certificateFile;
+    private File signingKeyFile;
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    private static final String SIGNING_KEY_FILENAME = "signing-key.p8";
+
+    @Before
+    public void setUp() {
+        credentialRegistry = new CredentialRegistry(new ApnsCredentialsCache());
+
+        certificateFile = FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME));
+        signingKeyFile = FileUtils.toFile(getClass().getResource(SIGNING_KEY_FILENAME));
+    }
+
+    @Test
+    public void testGetCredentials() throws Exception {
+        final ApnsCredentials certificateCredentials =
+                credentialRegistry.addCertificate(certificateFile, CERTIFICATE_PASSWORD);
+
+        final ApnsCredentials firstSigningKeyCredentials =
+                credentialRegistry.addSigningKey(signingKeyFile, "KEYID", "TEAMID", List.of("com.example.first"));
+
+        final ApnsCredentials secondSigningKeyCredentials =
+                credentialRegistry.addSigningKey(signingKeyFile, "KEYID", "OTHERTEAM", List.of("com.example.second"));
+
+        assertSame(certificateCredentials, credentialRegistry.getCredentials("com.eatthepath.pushy"));
+        assertSame(certificateCredentials, credentialRegistry.getCredentials("com.eatthepath.pushy.voip"));
+        assertSame(firstSigningKeyCredentials, credentialRegistry.getCredentials("com.example.first"));
+        assertSame(firstSigningKeyCredentials, credentialRegistry.getCredentials("com.example.first.complication"));
+        assertSame(secondSigningKeyCredentials, credentialRegistry.getCredentials("com.example.second"));
+
+        assertEquals(Optional.of(secondSigningKeyCredentials), credentialRegistry.getCredentialsForTeam("OTHERTEAM"));
+        assertEquals(List.of(certificateCredentials, firstSigningKeyCredentials, secondSigningKeyCredentials),
+                credentialRegistry.getAllCredentials());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetCredentialsNoMatch() throws Exception {
+        credentialRegistry.addCertificate(certificateFile, CERTIFICATE_PASSWORD);
+        credentialRegistry.addSigningKey(signingKeyFile, "KEYID", "TEAMID", List.of("com.example.first"));
+        credentialRegistry.addSigningKey(signingKeyFile, "KEYID", "OTHERTEAM", List.of("com.example.second"));
+
+        credentialRegistry.getCredentials("com.example.unknown");
+    }
+
+    @Test
+    public void testGetCredentialsSingleSigningKey() throws Exception {
+        credentialRegistry.addCertificate(certificateFile, CERTIFICATE_PASSWORD);
+
+        final ApnsCredentials signingKeyCredentials =
+                credentialRegistry.addSigningKey(signingKeyFile, "KEYID", "TEAMID", Collections.emptyList());
+
+        // A signing key can send to any of its team's apps, so it's a reasonable fallback for unrecognized topics
+        assertSame(signingKeyCredentials, credentialRegistry.getCredentials("com.example.unknown"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class DeviceTokenSetTest {
+
+    private static final String TOKEN = "740f4707bebcf74f9b7c25d48e3358945f6aa01da5ddb387462c7eaf61bb78ad";
+
+    @Test
+    public void testAddAndContains() {
+        final DeviceTokenSet deviceTokenSet = new DeviceTokenSet();
+
+        assertFalse(deviceTokenSet.contains(TOKEN));
+        assertTrue(deviceTokenSet.add(TOKEN));
+        assertTrue(deviceTokenSet.contains(TOKEN));
+
+        // Formatting and case shouldn't matter
+        assertFalse(deviceTokenSet.add("<740F4707 BEBCF74F 9B7C25D4 8E335894 5F6AA01D A5DDB387 462C7EAF 61BB78AD>"));
+
+        // Neither should length
+        assertTrue(deviceTokenSet.add("AAAA"));
+        assertFalse(deviceTokenSet.add("<aaaa>"));
+        assertTrue(deviceTokenSet.contains("aaaa"));
+        assertTrue(deviceTokenSet.add(TOKEN + "00"));
+
+        // An all-zero token can't be told apart from an empty slot in the table, so it gets special treatment
+        final String zeroToken = "0".repeat(64);
+
+        assertFalse(deviceTokenSet.contains(zeroToken));
+        assertTrue(deviceTokenSet.add(zeroToken));
+        assertFalse(deviceTokenSet.add(zeroToken));
+        assertTrue(deviceTokenSet.contains(zeroToken));
+
+        assertEquals(4, deviceTokenSet.size());
+
+        final Set<String> tokens = new HashSet<>();
+        deviceTokenSet.forEach(tokens::add);
+
+        assertEquals(Set.of(TOKEN, "aaaa", TOKEN + "00", zeroToken), tokens);
+    }
+
+    @Test
+    public void testPutAndGetValue() {
+        final DeviceTokenSet deviceTokenSet = new DeviceTokenSet(2);
+
+        assertEquals(-1, deviceTokenSet.getValue(TOKEN, -1));
+
+        // Tokens added without a value have a value of zero
+        assertTrue(deviceTokenSet.add(TOKEN));
+        assertEquals(0, deviceTokenSet.getValue(TOKEN, -1));
+
+        assertFalse(deviceTokenSet.put(TOKEN, 17));
+        assertTrue(deviceTokenSet.put("AAAA", 23));
+
+        // Make sure values survive the table growing
+        for (int i = 0; i < 16; i++) {
+            deviceTokenSet.put(String.format("%064x", i + 1), i);
+        }
+
+        assertEquals(17, deviceTokenSet.getValue(TOKEN.toUpperCase(), -1));
+        assertEquals(23, deviceTokenSet.getValue("aaaa", -1));
+        assertEquals(15, deviceTokenSet.getValue(String.format("%064x", 16), -1));
+
+        final Map<String, Long> values = new HashMap<>();
+        deviceTokenSet.forEachWithValue(values::put);
+
+        assertEquals(18, values.size());
+        assertEquals(Long.valueOf(17), values.get(TOKEN));
+    }
+
+    @Test
+    public void testManyTokens() {
+        final DeviceTokenSet deviceTokenSet = new DeviceTokenSet(16);
+        final Set<String> expectedTokens = new HashSet<>();
+
+        final Random random = new Random(17);
+        final byte[] tokenBytes = new byte[32];
+
+        for (int i = 0; i < 100_000; i++) {
+            random.nextBytes(tokenBytes);
+
+            final String token = HexFormat.of().formatHex(tokenBytes);
+
+            assertEquals(expectedTokens.add(token), deviceTokenSet.add(token));
+        }
+
+        assertEquals(expectedTokens.size(), deviceTokenSet.size());
+
+        for (final String token : expectedTokens) {
+            assertTrue(deviceTokenSet.contains(token.toUpperCase()));
+        }
+
+        final Set<String> tokens = new HashSet<>();
+        deviceTokenSet.forEach(tokens::add);
+
+        assertEquals(expectedTokens, tokens);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ErrorAggregatorTest {
+
+    @Test
+    public void testRecord() {
+        final ErrorAggregator errorAggregator = new ErrorAggregator();
+        final long initialVersion = errorAggregator.getVersion();
+
+        for (int i = 0; i < 3; i++) {
+            errorAggregator.record(new IOException("Write failed", new ConnectException("Connection refused: " + i)));
+        }
+
+        // Wrapped exceptions should land in the same group as their unwrapped equivalents
+        errorAggregator.record(new ExecutionException(new IOException("Write failed", new ConnectException("Connection refused"))));
+        errorAggregator.record(new CompletionException(new IllegalStateException("Client closed")));
+
+        assertEquals(5, errorAggregator.getTotalErrors());
+        assertNotEquals(initialVersion, errorAggregator.getVersion());
+
+        final List<ErrorAggregator.ErrorGroup> errorGroups = errorAggregator.getErrorGroups();
+        assertEquals(2, errorGroups.size());
+
+        final ErrorAggregator.ErrorGroup mostFrequentGroup = errorGroups.get(0);
+        assertEquals(4, mostFrequentGroup.getCount());
+        assertEquals(IOException.class.getName(), mostFrequentGroup.getExceptionType());
+        assertEquals(ConnectException.class.getName(), mostFrequentGroup.getRootCauseType());
+        assertEquals("Connection refused: 0", mostFrequentGroup.getRootCauseMessage());
+        assertTrue(mostFrequentGroup.getSampleStackTrace().contains("Write failed"));
+        assertNotNull(mostFrequentGroup.getLastSeen());
+
+        final ErrorAggregator.ErrorGroup leastFrequentGroup = errorGroups.get(1);
+        assertEquals(1, leastFrequentGroup.getCount());
+        assertEquals(IllegalStateException.class.getName(), leastFrequentGroup.getExceptionType());
+        assertEquals(IllegalStateException.class.getName(), leastFrequentGroup.getRootCauseType());
+    }
+
+    @Test
+    public void testClear() {
+        final ErrorAggregator errorAggregator = new ErrorAggregator();
+        errorAggregator.record(new IOException());
+
+        final long version = errorAggregator.getVersion();
+        errorAggregator.clear();
+
+        assertNotEquals(version, errorAggregator.getVersion());
+        assertEquals(0, errorAggregator.getTotalErrors());
+        assertTrue(errorAggregator.getErrorGroups().isEmpty());
+    }
+}
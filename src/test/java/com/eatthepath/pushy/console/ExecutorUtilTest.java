@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ExecutorUtilTest {
+
+    @Test
+    public void testNewThreadPerTaskExecutor() throws Exception {
+        final ExecutorService executorService = ExecutorUtil.newThreadPerTaskExecutor("test");
+
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            executorService.execute(latch::countDown);
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testNewPlatformThreadExecutorBounded() throws Exception {
+        final int maxThreads = 2;
+        final ExecutorService executorService = ExecutorUtil.newPlatformThreadExecutor("test", maxThreads);
+
+        final AtomicInteger runningTasks = new AtomicInteger();
+        final AtomicInteger maxRunningTasks = new AtomicInteger();
+        final AtomicInteger unexpectedThreads = new AtomicInteger();
+        final CountDownLatch finishedLatch = new CountDownLatch(10);
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                executorService.execute(() -> {
+                    final int running = runningTasks.incrementAndGet();
+                    maxRunningTasks.accumulateAndGet(running, Math::max);
+
+                    if (!Thread.currentThread().isDaemon() || !Thread.currentThread().getName().startsWith("test-")) {
+                        unexpectedThreads.incrementAndGet();
+                    }
+
+                    try {
+                        Thread.sleep(10);
+                    } catch (final InterruptedException ignored) {
+                    }
+
+                    runningTasks.decrementAndGet();
+                    finishedLatch.countDown();
+                });
+            }
+
+            assertTrue(finishedLatch.await(10, TimeUnit.SECONDS));
+            assertTrue(maxRunningTasks.get() <= maxThreads);
+            assertEquals(0, unexpectedThreads.get());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNewThreadPerTaskExecutorNoThreads() {
+        ExecutorUtil.newThreadPerTaskExecutor("test", 0);
+    }
+}
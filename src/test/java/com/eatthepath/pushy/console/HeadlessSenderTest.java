@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClientBuilder;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushType;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class HeadlessSenderTest {
+
+    @Test
+    public void testParseArguments() {
+        final HeadlessSender.Arguments arguments = HeadlessSender.Arguments.parse(
+                "--server", ApnsClientBuilder.DEVELOPMENT_APNS_HOST,
+                "--port", "2197",
+                "--signing-key", "key.p8",
+                "--key-id", "KEYID",
+                "--team-id", "TEAMID",
+                "--topic", "com.example.topic",
+                "--push-type", "background",
+                "--priority", "conserve-power",
+                "--payload", "payload.json",
+                "--token", "AAAA",
+                "--token", "BBBB",
+                "--metrics");
+
+        assertEquals(ApnsClientBuilder.DEVELOPMENT_APNS_HOST, arguments.server);
+        assertEquals(ApnsClientBuilder.ALTERNATE_APNS_PORT, arguments.port);
+        assertTrue(arguments.certificates.isEmpty());
+        assertEquals(1, arguments.signingKeys.size());
+        assertEquals(new File("key.p8"), arguments.signingKeys.get(0).file);
+        assertEquals("KEYID", arguments.signingKeys.get(0).keyId);
+        assertEquals("TEAMID", arguments.signingKeys.get(0).teamId);
+        assertEquals("com.example.topic", arguments.topic);
+        assertEquals(PushType.BACKGROUND, arguments.pushType);
+        assertEquals(DeliveryPriority.CONSERVE_POWER, arguments.deliveryPriority);
+        assertEquals(Arrays.asList("AAAA", "BBBB"), arguments.tokens);
+        assertTrue(arguments.metrics);
+    }
+
+    @Test
+    public void testParseArgumentsMultipleCredentials() {
+        final HeadlessSender.Arguments arguments = HeadlessSender.Arguments.parse(
+                "--certificate", "first.p12",
+                "--password", "first-password",
+                "--certificate", "second.p12",
+                "--signing-key", "key.p8",
+                "--key-id", "KEYID",
+                "--team-id", "TEAMID",
+                "--bundle-id", "com.example.first",
+                "--bundle-id", "com.example.second",
+                "--topic", "com.example.topic",
+                "--payload", "payload.json",
+                "--tokens", "tokens.txt");
+
+        assertEquals(2, arguments.certificates.size());
+        assertEquals(new File("first.p12"), arguments.certificates.get(0).file);
+        assertEquals("first-password", arguments.certificates.get(0).password);
+        assertEquals(new File("second.p12"), arguments.certificates.get(1).file);
+        assertEquals("", arguments.certificates.get(1).password);
+
+        assertEquals(1, arguments.signingKeys.size());
+        assertEquals(Arrays.asList("com.example.first", "com.example.second"), arguments.signingKeys.get(0).bundleIds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseArgumentsKeyIdWithoutSigningKey() {
+        HeadlessSender.Arguments.parse("--key-id", "KEYID", "--signing-key", "key.p8", "--team-id", "TEAMID",
+                "--topic", "com.example.topic", "--payload", "payload.json", "--token", "AAAA");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseArgumentsMissingCredentials() {
+        HeadlessSender.Arguments.parse("--topic", "com.example.topic", "--payload", "payload.json", "--token", "AAAA");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseArgumentsMissingValue() {
+        HeadlessSender.Arguments.parse("--topic");
+    }
+
+    @Test
+    public void testRunWithBadArguments() {
+        final ByteArrayOutputStream errorOutputStream = new ByteArrayOutputStream();
+
+        assertEquals(HeadlessSender.EXIT_USAGE, HeadlessSender.run(
+                new PrintStream(new ByteArrayOutputStream()), new PrintStream(errorOutputStream), "--bogus", "value"));
+
+        assertTrue(errorOutputStream.toString().contains("Usage"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class InvalidTokenRegistryTest {
+
+    private Path registryFile;
+
+    private static final String TOKEN = "740f4707bebcf74f9b7c25d48e3358945f6aa01da5ddb387462c7eaf61bb78ad";
+
+    @Before
+    public void setUp() throws IOException {
+        registryFile = Files.createTempFile("pushy-console-invalid-tokens-", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(registryFile);
+    }
+
+    @Test
+    public void testRecordInvalidToken() throws IOException {
+        final Instant invalidationTimestamp = Instant.ofEpochMilli(1_600_000_000_000L);
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(Optional.empty(), invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+
+            invalidTokenRegistry.recordInvalidToken(TOKEN.toUpperCase(), invalidationTimestamp);
+            invalidTokenRegistry.recordInvalidToken("<AAAA>", invalidationTimestamp);
+
+            // Older timestamps shouldn't replace newer ones
+            invalidTokenRegistry.recordInvalidToken(TOKEN, invalidationTimestamp.minusSeconds(60));
+
+            assertEquals(Optional.of(invalidationTimestamp), invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+            assertEquals(Optional.of(invalidationTimestamp), invalidTokenRegistry.getInvalidationTimestamp("aaaa"));
+            assertEquals(2, invalidTokenRegistry.size());
+        }
+
+        assertEquals(2, Files.readAllLines(registryFile).size());
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        final Instant invalidationTimestamp = Instant.ofEpochMilli(1_600_000_000_000L);
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            invalidTokenRegistry.recordInvalidToken(TOKEN, invalidationTimestamp.minusSeconds(60));
+            invalidTokenRegistry.recordInvalidToken(TOKEN, invalidationTimestamp);
+        }
+
+        Files.writeString(registryFile, "garbage\nBBBB not-a-number\n", StandardOpenOption.APPEND);
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(1, invalidTokenRegistry.size());
+            assertEquals(Optional.of(invalidationTimestamp), invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+        }
+    }
+
+    @Test
+    public void testForgetInvalidToken() throws IOException {
+        final Instant invalidationTimestamp = Instant.ofEpochMilli(1_600_000_000_000L);
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            assertFalse(invalidTokenRegistry.forgetInvalidToken(TOKEN));
+
+            invalidTokenRegistry.recordInvalidToken(TOKEN, invalidationTimestamp);
+            invalidTokenRegistry.recordInvalidToken("aaaa", invalidationTimestamp);
+
+            assertTrue(invalidTokenRegistry.forgetInvalidToken(TOKEN.toUpperCase()));
+            assertFalse(invalidTokenRegistry.forgetInvalidToken(TOKEN));
+
+            assertEquals(Optional.empty(), invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+            assertEquals(1, invalidTokenRegistry.size());
+        }
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(Optional.empty(), invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+            assertEquals(1, invalidTokenRegistry.size());
+
+            // Even an old invalidation should bring a forgotten token back
+            invalidTokenRegistry.recordInvalidToken(TOKEN, invalidationTimestamp.minusSeconds(60));
+
+            assertEquals(Optional.of(invalidationTimestamp.minusSeconds(60)),
+                    invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+
+            assertEquals(2, invalidTokenRegistry.size());
+        }
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(Optional.of(invalidationTimestamp.minusSeconds(60)),
+                    invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+
+            assertEquals(2, invalidTokenRegistry.size());
+        }
+    }
+
+    @Test
+    public void testForgetAllInvalidTokens() throws IOException {
+        final Instant invalidationTimestamp = Instant.ofEpochMilli(1_600_000_000_000L);
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            invalidTokenRegistry.recordInvalidToken(TOKEN, invalidationTimestamp);
+            invalidTokenRegistry.recordInvalidToken("aaaa", invalidationTimestamp);
+            invalidTokenRegistry.flush();
+
+            invalidTokenRegistry.forgetAllInvalidTokens();
+
+            assertEquals(0, invalidTokenRegistry.size());
+            assertEquals(Optional.empty(), invalidTokenRegistry.getInvalidationTimestamp(TOKEN));
+
+            invalidTokenRegistry.recordInvalidToken("bbbb", invalidationTimestamp);
+        }
+
+        assertEquals(1, Files.readAllLines(registryFile).size());
+
+        try (final InvalidTokenRegistry invalidTokenRegistry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(1, invalidTokenRegistry.size());
+            assertEquals(Optional.of(invalidationTimestamp), invalidTokenRegistry.getInvalidationTimestamp("bbbb"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testGetBucketIndex() {
+        for (long value = 0; value < 1_000_000; value++) {
+            final long highestEquivalentValue = LatencyHistogram.getHighestEquivalentValue(LatencyHistogram.getBucketIndex(value));
+
+            assertTrue(highestEquivalentValue >= value);
+            assertTrue((highestEquivalentValue - value) / (double) Math.max(value, 1) < 0.02);
+        }
+    }
+
+    @Test
+    public void testGetValuesAtPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.DEFAULT_MAX_TRACKABLE_VALUE);
+
+        assertArrayEquals(new long[] { 0, 0 }, histogram.getValuesAtPercentiles(50, 99));
+
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.recordValue(i);
+        }
+
+        assertEquals(10_000, histogram.getTotalCount());
+        assertEquals(5000.5, histogram.getMean(), 0.01);
+
+        final long[] values = histogram.getValuesAtPercentiles(50, 99, 99.9, 100);
+
+        assertEquals(5000, values[0], 5000 * 0.02);
+        assertEquals(9900, values[1], 9900 * 0.02);
+        assertEquals(9990, values[2], 9990 * 0.02);
+        assertEquals(10_000, values[3], 10_000 * 0.02);
+    }
+
+    @Test
+    public void testRecordValueClamped() {
+        final LatencyHistogram histogram = new LatencyHistogram(1000);
+
+        histogram.recordValue(1_000_000);
+        histogram.recordValue(-1);
+
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testRecordValueWithExpectedInterval() {
+        final LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.DEFAULT_MAX_TRACKABLE_VALUE);
+
+        // A single 1,000-microsecond stall when we expected a value every 100 microseconds hides nine other delayed
+        // measurements
+        histogram.recordValueWithExpectedInterval(1000, 100);
+
+        assertEquals(10, histogram.getTotalCount());
+        assertEquals(500, histogram.getValueAtPercentile(50), 10);
+
+        histogram.reset();
+        histogram.recordValueWithExpectedInterval(50, 100);
+
+        assertEquals(1, histogram.getTotalCount());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LoadTestTest {
+
+    private ScheduledExecutorService scheduledExecutorService;
+
+    @Before
+    public void setUp() {
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduledExecutorService.shutdownNow();
+    }
+
+    @Test
+    public void testRunOpenLoop() throws Exception {
+        final LoadTest loadTest = new LoadTest(pushNotification -> respondAfter(pushNotification, 1));
+        final LoadTest.Result result = loadTest.runOpenLoop(1000, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(500, result.getSent(), 50);
+        assertEquals(result.getSent(), result.getAccepted());
+        assertEquals(0, result.getFailed());
+        assertTrue(result.getResponseTimeMicros(50) >= 1000);
+    }
+
+    @Test
+    public void testRunClosedLoopCorrectsForCoordinatedOmission() throws Exception {
+        final AtomicInteger sendCount = new AtomicInteger();
+
+        // Every so often, the "server" stalls for much longer than usual
+        final LoadTest loadTest = new LoadTest(pushNotification ->
+                respondAfter(pushNotification, sendCount.incrementAndGet() % 20 == 0 ? 100 : 2));
+
+        final LoadTest.Result result = loadTest.runClosedLoop(1, TimeUnit.MILLISECONDS.toNanos(200), TimeUnit.SECONDS.toNanos(1));
+
+        assertTrue(result.getSent() > 0);
+        assertEquals(result.getSent(), result.getAccepted());
+
+        // Uncorrected, fewer than 5% of measurements would be stalls. Corrected, the measurements a client would have
+        // made during each stall push the 90th percentile well above the usual response time.
+        assertTrue(result.getResponseTimeMicros(90) > 20_000);
+    }
+
+    @Test
+    public void testRunClosedLoopFailure() throws Exception {
+        final LoadTest loadTest = new LoadTest(pushNotification -> {
+            throw new RejectedExecutionException();
+        });
+
+        final LoadTest.Result result = loadTest.runClosedLoop(4, 0, TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertTrue(result.getSent() > 0);
+        assertEquals(result.getSent(), result.getFailed());
+    }
+
+    @Test
+    public void testParseArguments() {
+        assertEquals(LoadTest.Mode.CLOSED_LOOP, LoadTest.Arguments.parse().mode);
+        assertEquals(LoadTest.Mode.OPEN_LOOP, LoadTest.Arguments.parse("--rate", "1000").mode);
+        assertEquals(0, LoadTest.Arguments.parse("--warmup", "0").warmupSeconds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseArgumentsConflictingModes() {
+        LoadTest.Arguments.parse("--rate", "1000", "--concurrency", "10");
+    }
+
+    private CompletableFuture<PushNotificationResponse<ApnsPushNotification>> respondAfter(final ApnsPushNotification pushNotification, final long delayMillis) {
+        final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> future = new CompletableFuture<>();
+
+        scheduledExecutorService.schedule(() -> future.complete(new PushNotificationResponse<>() {
+            @Override
+            public ApnsPushNotification getPushNotification() {
+                return pushNotification;
+            }
+
+            @Override
+            public boolean isAccepted() {
+                return true;
+            }
+
+            @Override
+            public UUID getApnsId() {
+                return UUID.randomUUID();
+            }
+
+            @Override
+            public int getStatusCode() {
+                return 200;
+            }
+
+            @Override
+            public Optional<String> getRejectionReason() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Instant> getTokenInvalidationTimestamp() {
+                return Optional.empty();
+            }
+        }), delayMillis, TimeUnit.MILLISECONDS);
+
+        return future;
+    }
+}
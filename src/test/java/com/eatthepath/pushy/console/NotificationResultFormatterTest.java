@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.PushType;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class NotificationResultFormatterTest {
+
+    private ResourceBundle resources;
+    private NotificationResultFormatter notificationResultFormatter;
+
+    @Before
+    public void setUp() {
+        resources = ResourceBundle.getBundle("com/eatthepath/pushy/console/pushy-console");
+        notificationResultFormatter = new NotificationResultFormatter(resources);
+    }
+
+    @Test
+    public void testFormatAccepted() {
+        final UUID apnsId = UUID.randomUUID();
+
+        final ApnsPushNotification pushNotification = new SimpleApnsPushNotification("TOKEN", "com.example.topic",
+                "{\n    \"aps\": {\n        \"alert\": \"Hello\"\n    }\n}", Instant.now(), DeliveryPriority.CONSERVE_POWER,
+                PushType.BACKGROUND, "collapse");
+
+        final NotificationResultRow row = notificationResultFormatter.format(
+                buildResponse(pushNotification, true, apnsId, null, null));
+
+        assertEquals("com.example.topic", row.getTopic());
+        assertEquals("TOKEN", row.getToken());
+        assertEquals("{ \"aps\": { \"alert\": \"Hello\" } }", row.getPayload());
+        assertEquals("collapse", row.getCollapseId());
+        assertEquals(resources.getString("delivery-priority.conserve-power"), row.getPriority());
+        assertEquals(resources.getString("notification-type.background"), row.getType());
+        assertTrue(row.isAccepted());
+        assertEquals(resources.getString("notification-result.status.accepted"), row.getStatus());
+        assertEquals(resources.getString("notification-result.details.accepted"), row.getDetails());
+        assertEquals(apnsId.toString(), row.getApnsId());
+    }
+
+    @Test
+    public void testFormatRejected() {
+        final ApnsPushNotification pushNotification = new SimpleApnsPushNotification("TOKEN", "com.example.topic", "{}");
+
+        final NotificationResultRow unknownReasonRow = notificationResultFormatter.format(
+                buildResponse(pushNotification, false, UUID.randomUUID(), null, null));
+
+        assertFalse(unknownReasonRow.isAccepted());
+        assertEquals(resources.getString("notification-result.status.rejected"), unknownReasonRow.getStatus());
+        assertEquals(resources.getString("notification-result.status.rejected.reason-unknown"), unknownReasonRow.getDetails());
+
+        final NotificationResultRow expiredTokenRow = notificationResultFormatter.format(
+                buildResponse(pushNotification, false, UUID.randomUUID(), "Unregistered", Instant.now()));
+
+        assertTrue(expiredTokenRow.getDetails().startsWith("Unregistered ("));
+    }
+
+    @Test
+    public void testFormatInvalidTokenSkipped() {
+        final ApnsPushNotification pushNotification = new SimpleApnsPushNotification("TOKEN", "com.example.topic", "{}");
+        final Instant invalidationTimestamp = Instant.now();
+
+        final NotificationResultRow row =
+                notificationResultFormatter.formatInvalidTokenSkipped(pushNotification, invalidationTimestamp);
+
+        assertFalse(row.isAccepted());
+        assertEquals(resources.getString("notification-result.status.skipped"), row.getStatus());
+        assertEquals(row.getDetails(),
+                notificationResultFormatter.formatInvalidTokenSkipped(pushNotification, invalidationTimestamp).getDetails());
+        assertNull(row.getApnsId());
+    }
+
+    private static PushNotificationResponse<ApnsPushNotification> buildResponse(final ApnsPushNotification pushNotification,
+                                                                                final boolean accepted,
+                                                                                final UUID apnsId,
+                                                                                final String rejectionReason,
+                                                                                final Instant tokenInvalidationTimestamp) {
+        return new PushNotificationResponse<>() {
+
+            @Override
+            public ApnsPushNotification getPushNotification() {
+                return pushNotification;
+            }
+
+            @Override
+            public boolean isAccepted() {
+                return accepted;
+            }
+
+            @Override
+            public UUID getApnsId() {
+                return apnsId;
+            }
+
+            @Override
+            public int getStatusCode() {
+                return accepted ? 200 : 410;
+            }
+
+            @Override
+            public Optional<String> getRejectionReason() {
+                return Optional.ofNullable(rejectionReason);
+            }
+
+            @Override
+            public Optional<Instant> getTokenInvalidationTimestamp() {
+                return Optional.ofNullable(tokenInvalidationTimestamp);
+            }
+        };
+    }
+}
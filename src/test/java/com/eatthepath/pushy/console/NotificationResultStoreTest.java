@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.collections.ListChangeListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class NotificationResultStoreTest {
+
+    private NotificationResultStore notificationResultStore;
+
+    private static final int WINDOW_SIZE = 16;
+
+    @Before
+    public void setUp() throws IOException {
+        notificationResultStore = new NotificationResultStore(WINDOW_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        notificationResultStore.close();
+    }
+
+    @Test
+    public void testAddAndGet() {
+        final int rowCount = 1000;
+
+        for (int i = 0; i < rowCount; i++) {
+            notificationResultStore.add(buildRow(i));
+        }
+
+        assertEquals(rowCount, notificationResultStore.size());
+        assertEquals(rowCount - WINDOW_SIZE, notificationResultStore.getSpilledRowCount());
+
+        // Read back out of order to make sure spilled pages get loaded (and reloaded) correctly
+        for (final int i : new int[] { 999, 0, 500, 255, 256, 983, 984, 1, 998 }) {
+            final NotificationResultRow row = notificationResultStore.get(i);
+
+            assertEquals("token-" + i, row.getToken());
+            assertEquals(i % 2 == 0, row.isAccepted());
+            assertEquals(i % 3 == 0 ? null : "collapse-" + i, row.getCollapseId());
+            assertEquals("{\"aps\": {\"alert\": \"Héllo, №" + i + "\"}}", row.getPayload());
+        }
+
+        // A page that was only partially spilled when it was first read should pick up rows spilled after that
+        notificationResultStore.add(buildRow(rowCount));
+        assertEquals("token-" + (rowCount - WINDOW_SIZE), notificationResultStore.get(rowCount - WINDOW_SIZE).getToken());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testInsert() {
+        notificationResultStore.add(buildRow(0));
+        notificationResultStore.add(0, buildRow(1));
+    }
+
+    @Test
+    public void testAddAllNotifiesOnce() {
+        final List<ListChangeListener.Change<? extends NotificationResultRow>> changes = new ArrayList<>();
+
+        notificationResultStore.addListener((ListChangeListener<NotificationResultRow>) change -> {
+            while (change.next()) {
+                assertTrue(change.wasAdded());
+                assertEquals(0, change.getFrom());
+                assertEquals(WINDOW_SIZE * 2, change.getTo());
+                changes.add(change);
+            }
+        });
+
+        final List<NotificationResultRow> rows = new ArrayList<>();
+
+        for (int i = 0; i < WINDOW_SIZE * 2; i++) {
+            rows.add(buildRow(i));
+        }
+
+        notificationResultStore.addAll(rows);
+
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            notificationResultStore.add(buildRow(i));
+        }
+
+        // Spilled rows
+        assertEquals(42, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-42"), 0).call());
+        assertEquals(42, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-42"), 43).call());
+
+        // Rows still in memory
+        assertEquals(95, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-95"), 0).call());
+        assertEquals(95, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-95"), 96).call());
+
+        assertEquals(Arrays.asList(0, 3, 99, 0), Arrays.asList(
+                notificationResultStore.newSearch(row -> row.getCollapseId() == null, 0).call(),
+                notificationResultStore.newSearch(row -> row.getCollapseId() == null, 1).call(),
+                notificationResultStore.newSearch(row -> row.getCollapseId() == null, 97).call(),
+                notificationResultStore.newSearch(row -> row.getCollapseId() == null, 100).call()));
+
+        assertEquals(-1, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-100"), 0).call());
+    }
+
+    @Test
+    public void testSearchCoversRowsPresentWhenStarted() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            notificationResultStore.add(buildRow(i));
+        }
+
+        final Callable<Integer> search = notificationResultStore.newSearch(row -> row.getToken().equals("token-100"), 0);
+
+        for (int i = 100; i < 200; i++) {
+            notificationResultStore.add(buildRow(i));
+        }
+
+        assertEquals(-1, (int) search.call());
+        assertEquals(100, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-100"), 0).call());
+    }
+
+    @Test
+    public void testSpillFileIsCompact() throws Exception {
+        final String payload = "{\"aps\": {\"alert\": \"" + "x".repeat(2048) + "\"}}";
+        final int rowCount = 10_000;
+
+        for (int i = 0; i < rowCount; i++) {
+            notificationResultStore.add(new NotificationResultRow("com.example.topic", buildToken(i), payload, null,
+                    "Immediate", "Alert", true, "Accepted", "Details", new UUID(0, i).toString()));
+        }
+
+        // Each spilled row should cost about as much as its token and APNs ID, not its (much larger) payload
+        assertTrue(notificationResultStore.getSpillFileLength() < (long) rowCount * 128);
+
+        for (final int i : new int[] { 0, 1234, rowCount - WINDOW_SIZE - 1 }) {
+            final NotificationResultRow row = notificationResultStore.get(i);
+
+            assertEquals(buildToken(i), row.getToken());
+            assertEquals(payload, row.getPayload());
+            assertNull(row.getCollapseId());
+            assertEquals(new UUID(0, i).toString(), row.getApnsId());
+        }
+
+        assertEquals(1234, (int) notificationResultStore.newSearch(row -> row.getToken().equals(buildToken(1234)), 0).call());
+    }
+
+    @Test
+    public void testSpillMoreDistinctStringsThanFitInStringTable() throws Exception {
+        final int rowCount = 20_000;
+
+        for (int i = 0; i < rowCount; i++) {
+            notificationResultStore.add(buildRow(i));
+        }
+
+        for (final int i : new int[] { 0, 8191, 8192, 15_000, rowCount - WINDOW_SIZE - 1 }) {
+            final NotificationResultRow row = notificationResultStore.get(i);
+
+            assertEquals("token-" + i, row.getToken());
+            assertEquals(buildRow(i).getPayload(), row.getPayload());
+            assertEquals("apns-id-" + i, row.getApnsId());
+        }
+
+        assertEquals(15_000, (int) notificationResultStore.newSearch(row -> row.getToken().equals("token-15000"), 0).call());
+    }
+
+    private static String buildToken(final int i) {
+        return String.format("%064x", i);
+    }
+
+    private static NotificationResultRow buildRow(final int i) {
+        return new NotificationResultRow("com.example.topic", "token-" + i,
+                "{\"aps\": {\"alert\": \"Héllo, №" + i + "\"}}", i % 3 == 0 ? null : "collapse-" + i,
+                "Immediate", "Alert", i % 2 == 0, "Accepted", "Details", "apns-id-" + i);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NotificationRetrierTest {
+
+    private NotificationRetrier notificationRetrier;
+
+    private static final ApnsPushNotification PUSH_NOTIFICATION =
+            new SimpleApnsPushNotification("1234", "com.example.topic", "{}");
+
+    @Before
+    public void setUp() {
+        notificationRetrier = new NotificationRetrier(3, 1, 10);
+    }
+
+    @After
+    public void tearDown() {
+        notificationRetrier.close();
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(NotificationRetrier.Outcome.ACCEPTED,
+                NotificationRetrier.classify(buildResponse(200, null), null));
+
+        assertEquals(NotificationRetrier.Outcome.PERMANENT_REJECTION,
+                NotificationRetrier.classify(buildResponse(400, "BadDeviceToken"), null));
+
+        assertEquals(NotificationRetrier.Outcome.PERMANENT_REJECTION,
+                NotificationRetrier.classify(buildResponse(410, "Unregistered"), null));
+
+        assertEquals(NotificationRetrier.Outcome.RETRYABLE_REJECTION,
+                NotificationRetrier.classify(buildResponse(429, "TooManyRequests"), null));
+
+        assertEquals(NotificationRetrier.Outcome.RETRYABLE_REJECTION,
+                NotificationRetrier.classify(buildResponse(500, "InternalServerError"), null));
+
+        assertEquals(NotificationRetrier.Outcome.RETRYABLE_REJECTION,
+                NotificationRetrier.classify(buildResponse(503, "Shutdown"), null));
+
+        assertEquals(NotificationRetrier.Outcome.TRANSPORT_FAILURE,
+                NotificationRetrier.classify(null, new IOException()));
+    }
+
+    @Test
+    public void testSendRetryableRejection() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final PushNotificationResponse<ApnsPushNotification> response = notificationRetrier.send(pushNotification ->
+                CompletableFuture.completedFuture(attempts.incrementAndGet() < 3 ?
+                        buildResponse(503, "ServiceUnavailable") : buildResponse(200, null)), PUSH_NOTIFICATION).get();
+
+        assertTrue(response.isAccepted());
+        assertEquals(3, attempts.get());
+        assertEquals(2, notificationRetrier.getRetries());
+    }
+
+    @Test
+    public void testRetriesLeaveTimerThread() throws Exception {
+        final List<String> attemptThreadNames = Collections.synchronizedList(new ArrayList<>());
+
+        notificationRetrier.send(pushNotification -> {
+            attemptThreadNames.add(Thread.currentThread().getName());
+
+            return CompletableFuture.completedFuture(attemptThreadNames.size() < 3 ?
+                    buildResponse(503, "ServiceUnavailable") : buildResponse(200, null));
+        }, PUSH_NOTIFICATION).get();
+
+        assertEquals(3, attemptThreadNames.size());
+        assertFalse(attemptThreadNames.contains("notification-retry"));
+    }
+
+    @Test
+    public void testSendPermanentRejection() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final PushNotificationResponse<ApnsPushNotification> response = notificationRetrier.send(pushNotification -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(buildResponse(400, "BadDeviceToken"));
+        }, PUSH_NOTIFICATION).get();
+
+        assertFalse(response.isAccepted());
+        assertEquals(1, attempts.get());
+        assertEquals(0, notificationRetrier.getRetries());
+    }
+
+    @Test
+    public void testSendTransportFailure() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            notificationRetrier.send(pushNotification -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(new IOException("Connection reset"));
+            }, PUSH_NOTIFICATION).get();
+
+            fail("Sending should have failed.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testSendSynchronousException() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            notificationRetrier.send(pushNotification -> {
+                attempts.incrementAndGet();
+                throw new IllegalArgumentException();
+            }, PUSH_NOTIFICATION).get();
+
+            fail("Sending should have failed.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testSendRetryNotPermitted() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final PushNotificationResponse<ApnsPushNotification> response = notificationRetrier.send(pushNotification -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(buildResponse(500, "InternalServerError"));
+        }, PUSH_NOTIFICATION, new NotificationRetrier.RetryHandler() {
+
+            @Override
+            public boolean shouldScheduleRetry() {
+                return false;
+            }
+
+            @Override
+            public boolean shouldAttemptRetry() {
+                return false;
+            }
+        }).get();
+
+        assertEquals(500, response.getStatusCode());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testGetRetryDelayMillis() {
+        final NotificationRetrier retrier = new NotificationRetrier(10, 100, 1000);
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                assertTrue(retrier.getRetryDelayMillis(1) <= 100);
+                assertTrue(retrier.getRetryDelayMillis(3) <= 400);
+                assertTrue(retrier.getRetryDelayMillis(100) <= 1000);
+                assertTrue(retrier.getRetryDelayMillis(100) >= 0);
+            }
+        } finally {
+            retrier.close();
+        }
+    }
+
+    private static PushNotificationResponse<ApnsPushNotification> buildResponse(final int statusCode, final String rejectionReason) {
+        return new PushNotificationResponse<>() {
+
+            @Override
+            public ApnsPushNotification getPushNotification() {
+                return PUSH_NOTIFICATION;
+            }
+
+            @Override
+            public boolean isAccepted() {
+                return statusCode == 200;
+            }
+
+            @Override
+            public UUID getApnsId() {
+                return UUID.randomUUID();
+            }
+
+            @Override
+            public int getStatusCode() {
+                return statusCode;
+            }
+
+            @Override
+            public Optional<String> getRejectionReason() {
+                return Optional.ofNullable(rejectionReason);
+            }
+
+            @Override
+            public Optional<Instant> getTokenInvalidationTimestamp() {
+                return Optional.empty();
+            }
+        };
+    }
+}
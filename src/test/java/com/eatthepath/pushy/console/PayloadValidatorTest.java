@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.PushType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class PayloadValidatorTest {
+
+    private PayloadValidator payloadValidator;
+
+    private static final String TOKEN = "<5ba3e37e 5f2b1a80 8e7d1ee8 0c7b3f28 6fcb3bcc 0e0a2b6e 4c52df4b 3a4eb1f1>";
+    private static final String PAYLOAD = "{ \"aps\": { \"alert\": \"Hello\" } }";
+
+    @Before
+    public void setUp() {
+        payloadValidator = new PayloadValidator();
+    }
+
+    @Test
+    public void testValidate() {
+        assertTrue(payloadValidator.validate(TOKEN, PAYLOAD, PushType.ALERT).isEmpty());
+
+        // Blank fields are handled elsewhere
+        assertTrue(payloadValidator.validate(null, null, null).isEmpty());
+        assertTrue(payloadValidator.validate("", "  ", PushType.ALERT).isEmpty());
+
+        assertEquals(EnumSet.of(PayloadValidator.Problem.INVALID_TOKEN),
+                payloadValidator.validate("3C3C1D119440927", PAYLOAD, PushType.ALERT));
+
+        assertEquals(EnumSet.of(PayloadValidator.Problem.INVALID_TOKEN),
+                payloadValidator.validate("not-a-token", PAYLOAD, PushType.ALERT));
+
+        assertEquals(EnumSet.of(PayloadValidator.Problem.INVALID_JSON),
+                payloadValidator.validate(TOKEN, "{ \"aps\": { \"alert\": \"Hello\" }", PushType.ALERT));
+
+        assertEquals(EnumSet.of(PayloadValidator.Problem.INVALID_JSON),
+                payloadValidator.validate(TOKEN, "[]", PushType.ALERT));
+
+        assertEquals(EnumSet.of(PayloadValidator.Problem.INVALID_JSON),
+                payloadValidator.validate(TOKEN, "{} {}", PushType.ALERT));
+    }
+
+    @Test
+    public void testValidatePayloadSize() {
+        final String largePayload = "{\"data\": \"" + "a".repeat(4500) + "\"}";
+
+        assertEquals(EnumSet.of(PayloadValidator.Problem.PAYLOAD_TOO_LARGE),
+                payloadValidator.validate(TOKEN, largePayload, PushType.ALERT));
+
+        // The same payload should be fine as a VoIP notification, and validating it again shouldn't change anything
+        assertTrue(payloadValidator.validate(TOKEN, largePayload, PushType.VOIP).isEmpty());
+        assertEquals(EnumSet.of(PayloadValidator.Problem.PAYLOAD_TOO_LARGE),
+                payloadValidator.validate(TOKEN, largePayload, PushType.BACKGROUND));
+    }
+
+    @Test
+    public void testGetUtf8Length() {
+        for (final String string : new String[] { "", "Hello", "Caf\u00e9", "\u20ac100", "\uD83D\uDE00 emoji", "\uD800 unpaired", "unpaired \uDC00" }) {
+            assertEquals(string, string.getBytes(StandardCharsets.UTF_8).length, PayloadValidator.getUtf8Length(string));
+        }
+    }
+
+    @Test
+    public void testIsValidToken() {
+        assertTrue(PayloadValidator.isValidToken(TOKEN));
+        assertTrue(PayloadValidator.isValidToken("abcdef0123456789"));
+
+        assertFalse(PayloadValidator.isValidToken(null));
+        assertFalse(PayloadValidator.isValidToken("<>"));
+        assertFalse(PayloadValidator.isValidToken("abc"));
+        assertFalse(PayloadValidator.isValidToken("abcdefgh"));
+    }
+}
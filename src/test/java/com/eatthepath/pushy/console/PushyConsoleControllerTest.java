@@ -32,14 +32,17 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import org.apache.commons.io.FileUtils;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 
 import javax.swing.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -55,6 +58,9 @@ public class PushyConsoleControllerTest {
     @Rule
     public JavaFXThreadRule javaFXThreadRule = new JavaFXThreadRule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @BeforeClass
     public static void setUpBeforeClass() throws InvocationTargetException, InterruptedException {
         // We need to make sure JavaFX is initialized before doing anything else.
@@ -69,6 +75,12 @@ public class PushyConsoleControllerTest {
 
         final FXMLLoader loader = new FXMLLoader(getClass().getResource("main.fxml"), resourceBundle);
 
+        // Keep histories and the invalid token registry out of the real user's home directory
+        final Path dataDirectory = temporaryFolder.getRoot().toPath();
+
+        loader.setControllerFactory(controllerClass -> controllerClass == PushyConsoleController.class ?
+                new PushyConsoleController(dataDirectory) : new ComposeNotificationController(dataDirectory));
+
         final Parent root = loader.load();
         pushyConsoleController = loader.getController();
 
@@ -116,11 +128,33 @@ public class PushyConsoleControllerTest {
     }
 
     @Test
-    public void testHandlePushNotificationResponse() {
+    public void testQueueAndDrainPushNotificationResponses() {
         assertTrue("Notification table should be empty before receiving push notification response.",
                 pushyConsoleController.notificationResultTableView.getItems().isEmpty());
 
-        pushyConsoleController.handlePushNotificationResponse(new PushNotificationResponse<>() {
+        final int responseCount = PushyConsoleController.MAX_ROWS_PER_RESULT_UPDATE + 1;
+
+        for (int i = 0; i < responseCount; i++) {
+            pushyConsoleController.queuePushNotificationResponse(buildAcceptedResponse());
+        }
+
+        assertTrue("Queued responses should not reach the notification table until the next drain.",
+                pushyConsoleController.notificationResultTableView.getItems().isEmpty());
+
+        pushyConsoleController.drainPendingResults();
+
+        assertEquals("A single drain should add no more than the maximum number of rows per update.",
+                PushyConsoleController.MAX_ROWS_PER_RESULT_UPDATE,
+                pushyConsoleController.notificationResultTableView.getItems().size());
+
+        pushyConsoleController.drainPendingResults();
+
+        assertEquals("The next drain should add the remaining rows.",
+                responseCount, pushyConsoleController.notificationResultTableView.getItems().size());
+    }
+
+    private static PushNotificationResponse<ApnsPushNotification> buildAcceptedResponse() {
+        return new PushNotificationResponse<>() {
 
             @Override
             public ApnsPushNotification getPushNotification() {
@@ -151,9 +185,6 @@ public class PushyConsoleControllerTest {
             public Optional<Instant> getTokenInvalidationTimestamp() {
                 return Optional.empty();
             }
-        });
-
-        assertFalse("Notification table should not be empty after receiving push notification response.",
-                pushyConsoleController.notificationResultTableView.getItems().isEmpty());
+        };
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ValueHistoryTest {
+
+    private Path historyFile;
+
+    @Before
+    public void setUp() throws IOException {
+        historyFile = Files.createTempFile("pushy-console-history-", ".txt");
+        Files.delete(historyFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(historyFile);
+    }
+
+    @Test
+    public void testAddAndGetValuesWithPrefix() throws IOException {
+        final ValueHistory valueHistory = new ValueHistory(historyFile);
+
+        assertTrue(valueHistory.add("com.example.app"));
+        assertTrue(valueHistory.add("com.example.app.voip"));
+        assertTrue(valueHistory.add("org.example.app"));
+        assertTrue(valueHistory.add("com.example.another"));
+
+        assertFalse("Duplicate values should not be added.", valueHistory.add("com.example.app"));
+        assertFalse("Blank values should not be added.", valueHistory.add(" "));
+        assertFalse("Multi-line values should not be added.", valueHistory.add("com.example\napp"));
+
+        assertTrue(valueHistory.isLoaded());
+        assertEquals(4, valueHistory.size());
+
+        assertEquals(Arrays.asList("com.example.another", "com.example.app", "com.example.app.voip"),
+                valueHistory.getValuesWithPrefix("com.", 10));
+
+        assertEquals(Arrays.asList("com.example.app", "com.example.app.voip"),
+                valueHistory.getValuesWithPrefix("com.example.app", 10));
+
+        assertEquals(Collections.singletonList("com.example.another"), valueHistory.getValuesWithPrefix("com.", 1));
+        assertEquals(Collections.emptyList(), valueHistory.getValuesWithPrefix("net.", 10));
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        {
+            final ValueHistory valueHistory = new ValueHistory(historyFile);
+            valueHistory.add("b");
+            valueHistory.add("a");
+        }
+
+        Files.writeString(historyFile, "c\n\na\n", StandardOpenOption.APPEND);
+
+        final ValueHistory valueHistory = new ValueHistory(historyFile);
+
+        assertFalse(valueHistory.isLoaded());
+        assertEquals(Collections.emptyList(), valueHistory.getValuesWithPrefix("", 10));
+
+        valueHistory.load();
+
+        assertTrue(valueHistory.isLoaded());
+        assertEquals(Arrays.asList("a", "b", "c"), valueHistory.getValuesWithPrefix("", 10));
+    }
+
+    @Test
+    public void testGetValuesWithPrefixLargeHistory() throws IOException {
+        final Random random = new Random(17);
+        final StringBuilder historyBuilder = new StringBuilder();
+
+        for (int i = 0; i < 100_000; i++) {
+            final byte[] tokenBytes = new byte[32];
+            random.nextBytes(tokenBytes);
+
+            historyBuilder.append(HexFormat.of().formatHex(tokenBytes)).append('\n');
+        }
+
+        Files.writeString(historyFile, historyBuilder);
+
+        final ValueHistory valueHistory = new ValueHistory(historyFile);
+        valueHistory.load();
+
+        assertEquals(100_000, valueHistory.size());
+
+        final List<String> completions = valueHistory.getValuesWithPrefix("ab", 10);
+
+        assertEquals(10, completions.size());
+
+        for (int i = 0; i < completions.size(); i++) {
+            assertTrue(completions.get(i).startsWith("ab"));
+
+            if (i > 0) {
+                assertTrue(completions.get(i - 1).compareTo(completions.get(i)) < 0);
+            }
+        }
+    }
+}